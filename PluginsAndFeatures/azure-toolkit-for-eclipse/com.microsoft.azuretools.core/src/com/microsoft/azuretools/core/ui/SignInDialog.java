@@ -65,6 +65,7 @@ import com.microsoft.azuretools.authmanage.interact.AuthMethod;
 import com.microsoft.azuretools.authmanage.models.AuthMethodDetails;
 import com.microsoft.azuretools.authmanage.models.SubscriptionDetail;
 import com.microsoft.azuretools.core.Activator;
+import com.microsoft.azuretools.core.utils.UpdateProgressIndicator;
 import com.microsoft.azuretools.sdkmanage.AccessTokenAzureManager;
 import org.eclipse.swt.widgets.Link;
 
@@ -309,7 +310,7 @@ public class SignInDialog extends TitleAreaDialog {
             public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
                 monitor.beginTask("Signing In...", IProgressMonitor.UNKNOWN);
                 try {
-                    AdAuthManager.getInstance().signIn();
+                    AdAuthManager.getInstance().signIn(new UpdateProgressIndicator(monitor));
                 } catch (AuthCanceledException ex) {
                     System.out.println(ex.getMessage());
                 } catch (IOException ex) {
@@ -345,7 +345,7 @@ public class AppServiceCreateDialog extends AzureDialogWrapper {
     }
 
     protected void fillSubscriptions() {
-        if (AzureModel.getInstance().getSubscriptionToResourceGroupMap() == null) {
+        if (!AzureModel.getInstance().isSubscriptionMapsLoaded()) {
             updateAndFillSubscriptions();
         } else {
             doFillSubscriptions();
@@ -36,6 +36,7 @@ import com.microsoft.azuretools.authmanage.SubscriptionManager;
 import com.microsoft.azuretools.authmanage.interact.AuthMethod;
 import com.microsoft.azuretools.authmanage.models.AuthMethodDetails;
 import com.microsoft.azuretools.authmanage.models.SubscriptionDetail;
+import com.microsoft.azuretools.ijidea.utility.UpdateProgressIndicator;
 import com.microsoft.azuretools.sdkmanage.AccessTokenAzureManager;
 import com.microsoft.intellij.ui.components.AzureDialogWrapper;
 import org.jdesktop.swingx.JXHyperlink;
@@ -224,7 +225,7 @@ public class SignInWindow extends AzureDialogWrapper {
                     indicator.setIndeterminate(true);
                     indicator.setText("Signing In...");
                     try {
-                        AdAuthManager.getInstance().signIn();
+                        AdAuthManager.getInstance().signIn(new UpdateProgressIndicator(indicator));
                     } catch (AuthCanceledException ex) {
                         System.out.println(ex.getMessage());
                     } catch (Exception ex) {
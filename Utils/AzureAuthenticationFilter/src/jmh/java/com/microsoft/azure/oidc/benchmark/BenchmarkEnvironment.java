@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.Filter;
+import javax.servlet.ServletException;
+
+import com.microsoft.azure.oidc.filter.impl.SimpleAuthenticationFilter;
+
+/**
+ * Starts the stub identity provider, points the application settings at it
+ * and initialises the filter. Each JMH fork gets its own environment, since
+ * the filter's services are singletons.
+ */
+public final class BenchmarkEnvironment {
+	public static final String EXCLUDED_URI = "/public/index.html";
+	public static final String AUTHORISED_URI = "/members/index.html";
+
+	private static final String AUTHENTICATION_RESOURCE = "/WEB-INF/configuration/authentication.json";
+	private static final String ALGORITHM_RESOURCE = "/WEB-INF/configuration/algorithm.json";
+	private static final String AUTHENTICATION_CONFIGURATION = "{\"exclusionUriPatterns\":[\"/public/*\"],"
+			+ "\"authorisationUriPatterns\":[{\"uriPattern\":\"/members/*\",\"roles\":[\"%s\"]}]}";
+	private static final String ALGORITHM_CONFIGURATION = "{\"algorithms\":[{\"name\":\"RS256\",\"javaName\":\"SHA256withRSA\"}],"
+			+ "\"algorithmClasses\":[{\"name\":\"RS256\",\"className\":\"RSA\"}]}";
+
+	private final StubIdentityProvider identityProvider;
+	private final Filter filter;
+
+	private BenchmarkEnvironment(final StubIdentityProvider identityProvider, final Filter filter) {
+		this.identityProvider = identityProvider;
+		this.filter = filter;
+	}
+
+	public static BenchmarkEnvironment start(final Map<String, String> initParameters)
+			throws IOException, ServletException {
+		final StubIdentityProvider identityProvider = new StubIdentityProvider();
+		identityProvider.start();
+		configure(identityProvider);
+		final Map<String, String> parameters = new HashMap<String, String>(initParameters);
+		parameters.putAll(getConfigurationParameters());
+		final Filter filter = new SimpleAuthenticationFilter();
+		filter.init(ServletFixtures.filterConfig(parameters, getConfigurationResources()));
+		return new BenchmarkEnvironment(identityProvider, filter);
+	}
+
+	/**
+	 * Points the application settings at the stub. Only the end-points can
+	 * be set from inside the JVM; the stub's tenant, policy and application
+	 * ID have to be in the environment already, as the build sets them.
+	 */
+	public static void configure(final StubIdentityProvider identityProvider) {
+		checkEnvironment("AAD_TENANT", StubIdentityProvider.TENANT);
+		checkEnvironment("AAD_OIDC_POLICY", StubIdentityProvider.POLICY);
+		checkEnvironment("AAD_APPLICATION_ID", TokenFixtures.AUDIENCE);
+		System.setProperty("com.microsoft.azure.oidc.test.allowInsecureEndPoints", "true");
+		System.setProperty("AAD_AUTHORITY_URL", identityProvider.getURL());
+		System.setProperty("AAD_GRAPH_URL", identityProvider.getURL());
+	}
+
+	private static void checkEnvironment(final String name, final String expected) {
+		if (!expected.equals(System.getenv(name))) {
+			throw new IllegalStateException(String.format("Set %s=%s in the environment", name, expected));
+		}
+	}
+
+	/**
+	 * The init-params naming the configuration resources.
+	 */
+	public static Map<String, String> getConfigurationParameters() {
+		final Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("authenticationConfiguration", AUTHENTICATION_RESOURCE);
+		parameters.put("algorithmConfiguration", ALGORITHM_RESOURCE);
+		return parameters;
+	}
+
+	/**
+	 * The configuration resources' contents, keyed by path.
+	 */
+	public static Map<String, String> getConfigurationResources() {
+		final Map<String, String> resources = new HashMap<String, String>();
+		resources.put(AUTHENTICATION_RESOURCE,
+				String.format(AUTHENTICATION_CONFIGURATION, StubIdentityProvider.MEMBER_ROLE));
+		resources.put(ALGORITHM_RESOURCE, ALGORITHM_CONFIGURATION);
+		return resources;
+	}
+
+	public Filter getFilter() {
+		return filter;
+	}
+
+	public StubIdentityProvider getIdentityProvider() {
+		return identityProvider;
+	}
+
+	public void stop() {
+		filter.destroy();
+		identityProvider.stop();
+	}
+}
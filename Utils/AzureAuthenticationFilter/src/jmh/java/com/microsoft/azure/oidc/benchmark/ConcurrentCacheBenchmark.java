@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
+import com.microsoft.azure.oidc.concurrent.cache.impl.FrequencyConcurrentCache;
+
+/**
+ * The role cache under contention. Twice as many keys are in play as the
+ * cache can hold, so writers go through admission and eviction while readers
+ * see a mix of hits and misses.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentCacheBenchmark {
+	private static final int MAXIMUM_SIZE = 1024;
+	private static final int KEYS = MAXIMUM_SIZE * 2;
+
+	@State(Scope.Benchmark)
+	public static class CacheState {
+		final String[] keys = new String[KEYS];
+		ConcurrentCache<String, Boolean> cache;
+
+		@Setup
+		public void setup() {
+			cache = new FrequencyConcurrentCache<String, Boolean>("benchmark", 30L, TimeUnit.MINUTES, (long) MAXIMUM_SIZE);
+			for (int i = 0; i < KEYS; i++) {
+				keys[i] = String.format("00000000-0000-0000-0000-%012d:%s", i, StubIdentityProvider.MEMBER_ROLE);
+				cache.putIfAbsent(keys[i], Boolean.TRUE);
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			cache.shutdownNow();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int index = (int) (Thread.currentThread().getId() * 7919);
+
+		String next(final String[] keys) {
+			index = (index + 1) % keys.length;
+			return keys[index];
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Boolean read(final CacheState state, final Cursor cursor) {
+		return state.cache.get(cursor.next(state.keys));
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public Boolean mixedRead(final CacheState state, final Cursor cursor) {
+		return state.cache.get(cursor.next(state.keys));
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public Boolean mixedWrite(final CacheState state, final Cursor cursor) {
+		return state.cache.putIfAbsent(cursor.next(state.keys), Boolean.TRUE);
+	}
+}
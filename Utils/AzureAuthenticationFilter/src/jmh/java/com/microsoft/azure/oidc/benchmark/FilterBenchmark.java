@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.microsoft.azure.oidc.benchmark.ServletFixtures.CountingFilterChain;
+
+/**
+ * The whole doFilter path against the stub identity provider:
+ * <ul>
+ * <li>anonymous - no token on a protected URI, answered with a redirect to
+ * sign in</li>
+ * <li>excluded - no token on an excluded URI</li>
+ * <li>cachedRole - a verified token whose role check is cached</li>
+ * <li>uncachedRole - verified tokens whose role check goes to the Graph API
+ * every time, because the role cache only has room for one entry</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+	private static final int USERS = 1024;
+
+	@State(Scope.Benchmark)
+	public static class CachedState {
+		BenchmarkEnvironment environment;
+		HttpServletRequest anonymousRequest;
+		HttpServletRequest excludedRequest;
+		HttpServletRequest authorisedRequest;
+		HttpServletResponse response;
+		CountingFilterChain chain;
+
+		@Setup
+		public void setup() throws IOException, ServletException {
+			environment = BenchmarkEnvironment.start(Collections.<String, String>emptyMap());
+			anonymousRequest = ServletFixtures.request(BenchmarkEnvironment.AUTHORISED_URI, null);
+			excludedRequest = ServletFixtures.request(BenchmarkEnvironment.EXCLUDED_URI, null);
+			authorisedRequest = ServletFixtures.request(BenchmarkEnvironment.AUTHORISED_URI,
+					TokenFixtures.signedToken("00000000-0000-0000-0000-0000000000aa"));
+			response = ServletFixtures.response();
+			chain = new CountingFilterChain();
+			environment.getFilter().doFilter(authorisedRequest, response, chain);
+			environment.getFilter().doFilter(anonymousRequest, response, chain);
+			if (chain.getCount() != 1) {
+				throw new IllegalStateException("Filter did not authorise the benchmark request");
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			environment.stop();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class UncachedState {
+		BenchmarkEnvironment environment;
+		HttpServletRequest[] requests;
+		HttpServletResponse response;
+		CountingFilterChain chain;
+
+		@Setup
+		public void setup() throws IOException, ServletException {
+			final Map<String, String> initParameters = new HashMap<String, String>();
+			initParameters.put("securityCacheSize", "1");
+			initParameters.put("tokenCacheSize", String.valueOf(USERS * 2));
+			environment = BenchmarkEnvironment.start(initParameters);
+			requests = new HttpServletRequest[USERS];
+			for (int i = 0; i < USERS; i++) {
+				requests[i] = ServletFixtures.request(BenchmarkEnvironment.AUTHORISED_URI,
+						TokenFixtures.signedToken(String.format("00000000-0000-0000-0000-%012d", i)));
+			}
+			response = ServletFixtures.response();
+			chain = new CountingFilterChain();
+			for (final HttpServletRequest request : requests) {
+				environment.getFilter().doFilter(request, response, chain);
+			}
+			if (chain.getCount() != USERS) {
+				throw new IllegalStateException("Filter did not authorise the benchmark requests");
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			environment.stop();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int index;
+
+		int next() {
+			index = (index + 1) % USERS;
+			return index;
+		}
+	}
+
+	@Benchmark
+	public void anonymous(final CachedState state) throws IOException, ServletException {
+		state.environment.getFilter().doFilter(state.anonymousRequest, state.response, state.chain);
+	}
+
+	@Benchmark
+	public void excluded(final CachedState state) throws IOException, ServletException {
+		state.environment.getFilter().doFilter(state.excludedRequest, state.response, state.chain);
+	}
+
+	@Benchmark
+	public void cachedRole(final CachedState state) throws IOException, ServletException {
+		state.environment.getFilter().doFilter(state.authorisedRequest, state.response, state.chain);
+	}
+
+	@Benchmark
+	public void uncachedRole(final UncachedState state, final Cursor cursor) throws IOException, ServletException {
+		state.environment.getFilter().doFilter(state.requests[cursor.next()], state.response, state.chain);
+	}
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.microsoft.azure.oidc.filter.impl.SimpleAuthenticationFilter;
+
+/**
+ * Runs the filter inside an embedded Jetty against the stub identity provider
+ * and drives it with concurrent simulated users. Options are given as
+ * key=value arguments:
+ * <ul>
+ * <li>users - concurrent simulated users (default 32)</li>
+ * <li>accounts - distinct accounts the users sign in as (default 1000)</li>
+ * <li>duration - length of the run in seconds (default 30)</li>
+ * <li>containerThreads - maximum Jetty request threads (default 64)</li>
+ * <li>metadataLatency, graphLatency - delay added by the stub, in
+ * milliseconds (default 0)</li>
+ * <li>errorRate - share of stub calls answered with 503 (default 0)</li>
+ * <li>keyRotation - seconds between signing key rotations, 0 for none
+ * (default 0)</li>
+ * <li>filter.&lt;name&gt; - passed to the filter as init-param
+ * &lt;name&gt;</li>
+ * </ul>
+ * Throughput, latency percentiles, response codes and the calls made to each
+ * stub end-point are printed at the end.
+ */
+public final class LoadTest {
+	private static final String FILTER_PREFIX = "filter.";
+
+	private final Map<String, String> options;
+	private final Map<String, String> initParameters = new HashMap<String, String>();
+	private final ConcurrentMap<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<Integer, AtomicLong>();
+	private final AtomicLong failureCount = new AtomicLong();
+	private final List<long[]> latencies = new ArrayList<long[]>();
+	private volatile AtomicReferenceArray<String> tokens;
+
+	private LoadTest(final Map<String, String> options) {
+		this.options = options;
+		for (final Map.Entry<String, String> entry : options.entrySet()) {
+			if (entry.getKey().startsWith(FILTER_PREFIX)) {
+				initParameters.put(entry.getKey().substring(FILTER_PREFIX.length()), entry.getValue());
+			}
+		}
+		initParameters.putAll(BenchmarkEnvironment.getConfigurationParameters());
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Map<String, String> options = new HashMap<String, String>();
+		for (final String arg : args) {
+			final int index = arg.indexOf('=');
+			if (index <= 0) {
+				throw new IllegalArgumentException(String.format("Expected key=value: %s", arg));
+			}
+			options.put(arg.substring(0, index), arg.substring(index + 1));
+		}
+		new LoadTest(options).run();
+		System.exit(0);
+	}
+
+	private void run() throws Exception {
+		final int users = getInteger("users", 32);
+		final int accounts = getInteger("accounts", 1000);
+		final long keyRotation = getInteger("keyRotation", 0);
+		System.setProperty("http.maxConnections", String.valueOf(users));
+
+		final StubIdentityProvider identityProvider = new StubIdentityProvider();
+		identityProvider.setMetadataLatency(getInteger("metadataLatency", 0));
+		identityProvider.setGraphLatency(getInteger("graphLatency", 0));
+		identityProvider.setErrorRate(Double.parseDouble(getOption("errorRate", "0")));
+		identityProvider.start();
+		BenchmarkEnvironment.configure(identityProvider);
+		tokens = new AtomicReferenceArray<String>(accounts);
+
+		final Server server = startServer(getInteger("containerThreads", 64));
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		if (keyRotation > 0) {
+			scheduler.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					identityProvider.rotateKeys();
+					tokens = new AtomicReferenceArray<String>(accounts);
+				}
+			}, keyRotation, keyRotation, TimeUnit.SECONDS);
+		}
+		try {
+			final URL url = new URL(String.format("http://127.0.0.1:%s%s",
+					((ServerConnector) server.getConnectors()[0]).getLocalPort(), BenchmarkEnvironment.AUTHORISED_URI));
+			final long duration = TimeUnit.SECONDS.toNanos(getInteger("duration", 30));
+			final long start = System.nanoTime();
+			drive(url, users, accounts, identityProvider, start + duration);
+			report(System.nanoTime() - start, identityProvider);
+		} finally {
+			scheduler.shutdownNow();
+			server.stop();
+			identityProvider.stop();
+		}
+	}
+
+	private Server startServer(final int containerThreads) throws Exception {
+		final Path webRoot = Files.createTempDirectory("oidc-load-test");
+		for (final Map.Entry<String, String> resource : BenchmarkEnvironment.getConfigurationResources().entrySet()) {
+			final Path path = webRoot.resolve(resource.getKey().substring(1));
+			Files.createDirectories(path.getParent());
+			Files.write(path, resource.getValue().getBytes(StandardCharsets.UTF_8));
+		}
+		final Server server = new Server(new QueuedThreadPool(containerThreads));
+		final ServerConnector connector = new ServerConnector(server);
+		connector.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+		server.addConnector(connector);
+		final ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+		context.setResourceBase(webRoot.toString());
+		final FilterHolder filterHolder = new FilterHolder(SimpleAuthenticationFilter.class);
+		filterHolder.setInitParameters(initParameters);
+		filterHolder.setAsyncSupported(true);
+		context.addFilter(filterHolder, "/*", EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+		final ServletHolder servletHolder = new ServletHolder(new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+					throws IOException {
+				response.setContentType("text/plain");
+				response.getWriter().write("OK");
+			}
+		});
+		servletHolder.setAsyncSupported(true);
+		context.addServlet(servletHolder, "/*");
+		server.setHandler(context);
+		server.start();
+		return server;
+	}
+
+	private void drive(final URL url, final int users, final int accounts, final StubIdentityProvider identityProvider,
+			final long deadline) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(users);
+		for (int i = 0; i < users; i++) {
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long[] samples = new long[1024];
+					int count = 0;
+					try {
+						while (System.nanoTime() < deadline) {
+							final String token = getToken(ThreadLocalRandom.current().nextInt(accounts),
+									identityProvider);
+							final long start = System.nanoTime();
+							send(url, token);
+							if (count == samples.length) {
+								samples = Arrays.copyOf(samples, count * 2);
+							}
+							samples[count++] = System.nanoTime() - start;
+						}
+					} finally {
+						synchronized (latencies) {
+							latencies.add(Arrays.copyOf(samples, count));
+						}
+						done.countDown();
+					}
+				}
+			}, String.format("load-test-user-%s", i));
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+	}
+
+	private String getToken(final int account, final StubIdentityProvider identityProvider) {
+		final AtomicReferenceArray<String> current = tokens;
+		final String token = current.get(account);
+		if (token != null) {
+			return token;
+		}
+		final String result = identityProvider.issueToken(String.format("00000000-0000-0000-0000-%012d", account));
+		current.compareAndSet(account, null, result);
+		return result;
+	}
+
+	private void send(final URL url, final String token) {
+		try {
+			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setInstanceFollowRedirects(false);
+			connection.setRequestProperty("Cookie", String.format("id_token=%s", token));
+			final int status = connection.getResponseCode();
+			final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if (in != null) {
+				try {
+					final byte[] buffer = new byte[4096];
+					while (in.read(buffer) >= 0) {
+					}
+				} finally {
+					in.close();
+				}
+			}
+			AtomicLong statusCount = statusCounts.get(status);
+			if (statusCount == null) {
+				statusCounts.putIfAbsent(status, new AtomicLong());
+				statusCount = statusCounts.get(status);
+			}
+			statusCount.incrementAndGet();
+		} catch (IOException e) {
+			failureCount.incrementAndGet();
+		}
+	}
+
+	private void report(final long elapsed, final StubIdentityProvider identityProvider) {
+		int total = 0;
+		for (final long[] samples : latencies) {
+			total += samples.length;
+		}
+		final long[] all = new long[total];
+		int offset = 0;
+		for (final long[] samples : latencies) {
+			System.arraycopy(samples, 0, all, offset, samples.length);
+			offset += samples.length;
+		}
+		Arrays.sort(all);
+		System.out.println(String.format("Requests:    %s in %.1f s", total, elapsed / 1e9));
+		System.out.println(String.format("Throughput:  %.1f requests/s", total / (elapsed / 1e9)));
+		for (final double percentile : new double[] { 50, 90, 99, 99.9 }) {
+			System.out.println(String.format("p%-10s  %.2f ms", percentile, getPercentile(all, percentile) / 1e6));
+		}
+		System.out.println(String.format("max          %.2f ms", total == 0 ? 0 : all[total - 1] / 1e6));
+		System.out.println(String.format("Responses:   %s", new TreeMap<Integer, AtomicLong>(statusCounts)));
+		System.out.println(String.format("Failures:    %s", failureCount.get()));
+		System.out.println(String.format("Stub calls:  %s", identityProvider.getCallCounts()));
+	}
+
+	private long getPercentile(final long[] sorted, final double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+	private String getOption(final String name, final String defaultValue) {
+		final String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	private int getInteger(final String name, final int defaultValue) {
+		return Integer.parseInt(getOption(name, String.valueOf(defaultValue)));
+	}
+}
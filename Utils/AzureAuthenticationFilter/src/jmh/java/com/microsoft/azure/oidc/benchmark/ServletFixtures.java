@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal servlet container objects for driving the filter without a
+ * container. Requests and responses are dynamic proxies that answer only what
+ * the filter asks for; every other call returns a default value.
+ */
+public final class ServletFixtures {
+	private static final String TOKEN_NAME = "id_token";
+
+	private ServletFixtures() {
+	}
+
+	public static FilterConfig filterConfig(final Map<String, String> initParameters,
+			final Map<String, String> resources) {
+		final ServletContext servletContext = proxy(ServletContext.class, new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				if (method.getName().equals("getResourceAsStream") && resources.containsKey(args[0])) {
+					return new ByteArrayInputStream(resources.get(args[0]).getBytes(StandardCharsets.UTF_8));
+				}
+				return getDefaultValue(method);
+			}
+		});
+		return new FilterConfig() {
+			@Override
+			public String getFilterName() {
+				return "authenticationFilter";
+			}
+
+			@Override
+			public ServletContext getServletContext() {
+				return servletContext;
+			}
+
+			@Override
+			public String getInitParameter(final String name) {
+				return initParameters.get(name);
+			}
+
+			@Override
+			public Enumeration<String> getInitParameterNames() {
+				return Collections.enumeration(initParameters.keySet());
+			}
+		};
+	}
+
+	/**
+	 * A GET request for the given URI, carrying the token as a cookie when it is
+	 * not null.
+	 */
+	public static HttpServletRequest request(final String requestURI, final String tokenString) {
+		final Cookie[] cookies = tokenString == null ? null : new Cookie[] { new Cookie(TOKEN_NAME, tokenString) };
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		return proxy(HttpServletRequest.class, new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				switch (method.getName()) {
+				case "getRequestURI":
+					return requestURI;
+				case "getContextPath":
+					return "";
+				case "getMethod":
+					return "GET";
+				case "getServerName":
+					return "localhost";
+				case "getCookies":
+					return cookies;
+				case "getDispatcherType":
+					return DispatcherType.REQUEST;
+				case "getAttribute":
+					return attributes.get(args[0]);
+				case "setAttribute":
+					attributes.put((String) args[0], args[1]);
+					return null;
+				default:
+					return getDefaultValue(method);
+				}
+			}
+		});
+	}
+
+	/**
+	 * A response that discards everything written to it.
+	 */
+	public static HttpServletResponse response() {
+		return proxy(HttpServletResponse.class, new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				return getDefaultValue(method);
+			}
+		});
+	}
+
+	/**
+	 * The end of the filter chain, counting the requests that get through.
+	 */
+	public static final class CountingFilterChain implements FilterChain {
+		private final AtomicLong count = new AtomicLong();
+
+		@Override
+		public void doFilter(final ServletRequest request, final ServletResponse response) {
+			count.incrementAndGet();
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+	}
+
+	private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(ServletFixtures.class.getClassLoader(), new Class<?>[] { type },
+				handler));
+	}
+
+	private static Object getDefaultValue(final Method method) {
+		final Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateCrtKey;
+
+/**
+ * An RS256 signing key and its JWKS entry.
+ */
+public final class SigningKey {
+	private final String keyID;
+	private final RSAPrivateCrtKey privateKey;
+
+	public SigningKey(final String keyID, final RSAPrivateCrtKey privateKey) {
+		this.keyID = keyID;
+		this.privateKey = privateKey;
+	}
+
+	public static SigningKey generate(final String keyID) {
+		try {
+			final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+			generator.initialize(2048);
+			return new SigningKey(keyID, (RSAPrivateCrtKey) generator.generateKeyPair().getPrivate());
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public String getKeyID() {
+		return keyID;
+	}
+
+	public String sign(final String signingInput) {
+		try {
+			final Signature signature = Signature.getInstance("SHA256withRSA");
+			signature.initSign(privateKey);
+			signature.update(signingInput.getBytes(StandardCharsets.UTF_8));
+			return TokenFixtures.encode(signature.sign());
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public String toJwk() {
+		return String.format("{\"kid\":\"%s\",\"use\":\"sig\",\"kty\":\"RSA\",\"n\":\"%s\",\"e\":\"%s\"}", keyID,
+				TokenFixtures.encode(toUnsignedBytes(privateKey.getModulus().toByteArray())),
+				TokenFixtures.encode(toUnsignedBytes(privateKey.getPublicExponent().toByteArray())));
+	}
+
+	private static byte[] toUnsignedBytes(final byte[] value) {
+		if (value.length > 1 && value[0] == 0) {
+			final byte[] result = new byte[value.length - 1];
+			System.arraycopy(value, 1, result, 0, result.length);
+			return result;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the Azure AD B2C and Graph API end-points the filter
+ * calls, bound to the loopback interface. Tokens are signed with the fixed key
+ * in {@link TokenFixtures} until the keys are rotated, and every user is a
+ * member of {@link #MEMBER_ROLE} and of no other group.
+ * <p>
+ * For load tests each response can be delayed, a share of them can fail with
+ * 503, and the calls to each end-point are counted.
+ */
+public final class StubIdentityProvider {
+	public static final String TENANT = "benchmark.onmicrosoft.com";
+	public static final String POLICY = "B2C_1_signin";
+	public static final String MEMBER_ROLE = "Members";
+
+	public enum Route {
+		WELL_KNOWN, KEYS, TOKEN, GROUPS, IS_MEMBER_OF, MEMBER_GROUPS
+	}
+
+	private final Map<Route, AtomicLong> callCounts = new EnumMap<Route, AtomicLong>(Route.class);
+	private final AtomicInteger keyGeneration = new AtomicInteger();
+	private volatile SigningKey signingKey = TokenFixtures.getSigningKey();
+	private volatile List<SigningKey> publishedKeys = Collections.singletonList(signingKey);
+	private volatile long metadataLatency;
+	private volatile long graphLatency;
+	private volatile double errorRate;
+	private volatile Route failingRoute;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final ExecutorService executorService;
+	private final HttpServer server;
+
+	public StubIdentityProvider() throws IOException {
+		// without this every response waits out the client's delayed ACK
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					StubIdentityProvider.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		executorService = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "stub-identity-provider");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executorService);
+		for (final Route route : Route.values()) {
+			callCounts.put(route, new AtomicLong());
+		}
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executorService.shutdownNow();
+	}
+
+	public String getURL() {
+		return String.format("http://%s:%s", server.getAddress().getHostString(), server.getAddress().getPort());
+	}
+
+	/**
+	 * Delay for the well-known and JWKS end-points, in milliseconds.
+	 */
+	public void setMetadataLatency(final long metadataLatency) {
+		this.metadataLatency = metadataLatency;
+	}
+
+	/**
+	 * Delay for the token and Graph API end-points, in milliseconds.
+	 */
+	public void setGraphLatency(final long graphLatency) {
+		this.graphLatency = graphLatency;
+	}
+
+	/**
+	 * Share of calls, between 0 and 1, answered with 503.
+	 */
+	public void setErrorRate(final double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * End-point answered with 503 on every call, or null for none.
+	 */
+	public void setFailingRoute(final Route failingRoute) {
+		this.failingRoute = failingRoute;
+	}
+
+	/**
+	 * Starts signing with a new key. The previous key stays published so
+	 * that tokens already issued remain valid.
+	 */
+	public void rotateKeys() {
+		final SigningKey previous = signingKey;
+		final SigningKey next = SigningKey.generate(String.format("rotated-key-%s", keyGeneration.incrementAndGet()));
+		publishedKeys = Arrays.asList(previous, next);
+		signingKey = next;
+	}
+
+	public String issueToken(final String userID) {
+		return TokenFixtures.signedToken(signingKey, userID);
+	}
+
+	public Map<Route, Long> getCallCounts() {
+		final Map<Route, Long> result = new EnumMap<Route, Long>(Route.class);
+		for (final Map.Entry<Route, AtomicLong> entry : callCounts.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		final byte[] body = read(exchange.getRequestBody());
+		final Route route = getRoute(exchange.getRequestURI().getPath());
+		if (route == null) {
+			respond(exchange, 404, "{}");
+			return;
+		}
+		callCounts.get(route).incrementAndGet();
+		delay(route == Route.WELL_KNOWN || route == Route.KEYS ? metadataLatency : graphLatency);
+		if (route == failingRoute || errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			respond(exchange, 503, "{}");
+			return;
+		}
+		switch (route) {
+		case WELL_KNOWN:
+			respond(exchange, 200, getWellKnownConfiguration());
+			break;
+		case KEYS:
+			respond(exchange, 200, TokenFixtures.keys(publishedKeys));
+			break;
+		case TOKEN:
+			respond(exchange, 200, "{\"token_type\":\"Bearer\",\"expires_in\":3600,\"access_token\":\"stub-token\"}");
+			break;
+		case GROUPS:
+			respond(exchange, 200, String.format("{\"value\":[{\"objectId\":\"%s\"}]}",
+					getGroupID(getDisplayName(exchange.getRequestURI().getRawQuery()))));
+			break;
+		case IS_MEMBER_OF:
+			respond(exchange, 200, String.format("{\"value\":%s}",
+					getGroupID(MEMBER_ROLE).equals(mapper.readTree(body).path("groupId").asText())));
+			break;
+		case MEMBER_GROUPS:
+			respond(exchange, 200, String.format("{\"value\":[\"%s\"]}", getGroupID(MEMBER_ROLE)));
+			break;
+		}
+	}
+
+	private Route getRoute(final String path) {
+		if (path.endsWith("/.well-known/openid-configuration")) {
+			return Route.WELL_KNOWN;
+		}
+		if (path.endsWith("/discovery/v2.0/keys")) {
+			return Route.KEYS;
+		}
+		if (path.endsWith("/oauth2/token")) {
+			return Route.TOKEN;
+		}
+		if (path.endsWith("/groups")) {
+			return Route.GROUPS;
+		}
+		if (path.endsWith("/isMemberOf")) {
+			return Route.IS_MEMBER_OF;
+		}
+		if (path.endsWith("/getMemberGroups")) {
+			return Route.MEMBER_GROUPS;
+		}
+		return null;
+	}
+
+	private void delay(final long latency) {
+		if (latency <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.MILLISECONDS.sleep(latency);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private String getWellKnownConfiguration() {
+		final String authority = String.format("%s/%s", getURL(), TENANT);
+		return String.format("{\"issuer\":\"%s\",\"jwks_uri\":\"%s/discovery/v2.0/keys?p=%s\","
+				+ "\"authorization_endpoint\":\"%s/oauth2/v2.0/authorize?p=%s\","
+				+ "\"end_session_endpoint\":\"%s/oauth2/v2.0/logout?p=%s\","
+				+ "\"id_token_signing_alg_values_supported\":[\"RS256\"]}", TokenFixtures.ISSUER, authority, POLICY,
+				authority, POLICY, authority, POLICY);
+	}
+
+	private String getDisplayName(final String query) throws IOException {
+		final String decoded = URLDecoder.decode(query, "UTF-8");
+		final int start = decoded.indexOf('\'');
+		final int end = decoded.lastIndexOf('\'');
+		return start < 0 || end <= start ? "" : decoded.substring(start + 1, end);
+	}
+
+	private String getGroupID(final String displayName) {
+		return String.format("group-%s", displayName);
+	}
+
+	private void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+		final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (final OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private byte[] read(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Encoded id_tokens shaped like the ones issued by Azure AD B2C, signed with a
+ * fixed RSA key so that runs are repeatable and need no network access.
+ */
+public final class TokenFixtures {
+	public static final String ISSUER = "https://login.microsoftonline.com/00000000-0000-0000-0000-000000000001/v2.0/";
+	public static final String AUDIENCE = "00000000-0000-0000-0000-000000000002";
+	public static final String KEY_ID = "benchmark-key";
+
+	private static final String PRIVATE_KEY = "MIIEvQIBADANBgkqhkiG9w0BAQEFAASCBKcwggSjAgEAAoIBAQCRRViKZju7CXL5Gr5Bn463odCCtEcTIOICtM66stW79qtHJY3r"
+			+ "uqTrM2rwR/NhcOBw7a2E+Cxz9P6U4py45irx6/EcYepimAcuhut+yKhompISi7gvt6Hm3knW1gsyXEtDbZM8v0GI5Anj40bsszIN"
+			+ "2rh3v+WtH6qhXrCISA54CQH4Zt/te18qLAJ3LtEkCmVEbQc72414EmEmk6cN1stJ+7frgume514Do+7fC2eHWc1z8JEnEEYsxV3g"
+			+ "J7+NerGulL0S3ulVEA/POsRtf0ktjzZ+s2CMrq+MzJIuh09WrN6k+xwb/ey3LceFMUdwZ/ieyzjg28dukZapPPYK/Z1TAgMBAAEC"
+			+ "ggEADXxOWbFfi8o270ixbxPEor0K8gnnQS9/xk2KQAr4TBXRf5jNDHGL/BOOsqs954acJzpBLe4Ak8EjXac4ckes++lHEuHvaWNV"
+			+ "41aosjZ8FRMoSpVy2JHSSJrLvahVa2w68RGme0YBQO0eZ+vXeoNbZa2EtgUik/LecFLYeMZA+u6DSHUYFrOzvtHiR5EYBK5T/Eiq"
+			+ "46gFG8Z0Y1Ju8uW3qo2kKUORBOF7SwliDeOmdVUT3KhF0DU7+iLgxxODQDQt12/Viq9/PMPJ7Yk67MHsUQZuAuXEVFGwGB1dBG3B"
+			+ "J/aa4HPK9SmS4qYr95+MI7lOng/LjUkFndDuSedktadH8QKBgQDLJoTWp7TX+bC1d6XCuZ3mE1K8gZq3cBc1Cv2nFygK1ImH5oNf"
+			+ "bcov38wGkbNQvf4bLTWLJ8EpRreTNckdugKP8WYE2vSzh9lzTCgNiLXSiLVyp1P6hS4xG2/dEn9d+FsyFWB4ZqNtHr7LORmzRQGJ"
+			+ "uM7Xc3+wdKRO8NDT3vN5QwKBgQC3ECTDnqsqQ7v272rjqL+27WmhjrLWVZe7vvM6WROlm7CPbhZXcnZUq1m8zy72pWoX2fq7W4Iw"
+			+ "TWmP3pH0VVWOIQHEMi0wUDekJk+XCJo0tzxXBNkaC6cpMU5aYemQwOYFuS9LHQ/u0jntJod54w/gfQnFVvpNi5D/QPXRPRbCsQKB"
+			+ "gQCc3uavFxu3txD0YCr4/fpnAr7d37rIMd9Jz23ljCUYj9yPu7nwg8ggRdG3tOTh0YSaGcQB67XmGLyDCYJ+2PdHjeH4l9djluCc"
+			+ "fs9i/BFjPLvYiEt55UOxGf28mZ8OwkwxlX5EGwXRqm8sYLBu1TeF0NawWnjcmoWSi7TGFqCuHwKBgBN1PdMlLGBjrrkCncPxDd+t"
+			+ "wIqRlmS92FD2bPgIu9PghpXYR7unyPga9oDhLMa+slYyrzn28hGcSNon+C+WWm+vBncKNk9qV1+1SsRs/6cWyu0c8M6Z6nywZvmo"
+			+ "aqEeP9Tf6Cz9u9HQuqOAcun7vpZH9B/rrNNNQG5BQ1+oNKEhAoGAdoIRQnV7qtbDJWAQgcB8t3RTKgMwuBEyDXSvv9ujDwhTjNW0"
+			+ "GDCjTXOWjSxLn3M/f47zRqDJJljItPTj86CUqoFR5OwIBQicj5x6Lk3BcLyS9bftL+wU+FBEv71symfYOlHrfAKLotVXIxZyWxcc"
+			+ "gTxKKiuuK6vmaqbU33RB97g=";
+
+	private static final SigningKey SIGNING_KEY = new SigningKey(KEY_ID, loadPrivateKey());
+
+	private TokenFixtures() {
+	}
+
+	public static String header(final String keyID) {
+		return String.format("{\"typ\":\"JWT\",\"alg\":\"RS256\",\"kid\":\"%s\"}", keyID);
+	}
+
+	public static String body(final String userID, final long issuedAt, final long expiration) {
+		return String.format("{\"exp\":%s,\"nbf\":%s,\"ver\":\"1.0\",\"iss\":\"%s\",\"sub\":\"%s\",\"aud\":\"%s\","
+				+ "\"nonce\":\"defaultNonce\",\"iat\":%s,\"auth_time\":%s,\"oid\":\"%s\",\"given_name\":\"Bench\","
+				+ "\"family_name\":\"Mark\",\"name\":\"Bench Mark\",\"emails\":[\"%s@example.com\"],"
+				+ "\"tfp\":\"B2C_1_signin\"}", expiration, issuedAt, ISSUER, userID, AUDIENCE, issuedAt, issuedAt,
+				userID, userID);
+	}
+
+	public static String signingInput(final String header, final String body) {
+		return String.format("%s.%s", encode(header.getBytes(StandardCharsets.UTF_8)),
+				encode(body.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	public static String unsignedToken(final String userID) {
+		final long now = System.currentTimeMillis() / 1000;
+		final byte[] signature = new byte[256];
+		return String.format("%s.%s", signingInput(header(KEY_ID), body(userID, now, now + 3600)), encode(signature));
+	}
+
+	public static String signedToken(final String userID) {
+		return signedToken(SIGNING_KEY, userID);
+	}
+
+	public static String signedToken(final SigningKey signingKey, final String userID) {
+		final long now = System.currentTimeMillis() / 1000;
+		final String signingInput = signingInput(header(signingKey.getKeyID()), body(userID, now - 60, now + 3600));
+		return String.format("%s.%s", signingInput, signingKey.sign(signingInput));
+	}
+
+	public static SigningKey getSigningKey() {
+		return SIGNING_KEY;
+	}
+
+	/**
+	 * The public half of the fixed signing key as a JWKS document.
+	 */
+	public static String keys() {
+		return keys(Collections.singletonList(SIGNING_KEY));
+	}
+
+	public static String keys(final Collection<SigningKey> signingKeys) {
+		final StringBuilder builder = new StringBuilder("{\"keys\":[");
+		for (final SigningKey signingKey : signingKeys) {
+			if (builder.charAt(builder.length() - 1) == '}') {
+				builder.append(',');
+			}
+			builder.append(signingKey.toJwk());
+		}
+		return builder.append("]}").toString();
+	}
+
+	public static String encode(final byte[] value) {
+		return Base64.encodeBase64URLSafeString(value);
+	}
+
+	private static RSAPrivateCrtKey loadPrivateKey() {
+		try {
+			final PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(Base64.decodeBase64(PRIVATE_KEY));
+			return (RSAPrivateCrtKey) KeyFactory.getInstance("RSA").generatePrivate(keySpec);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.microsoft.azure.oidc.token.Token;
+import com.microsoft.azure.oidc.token.TokenValidator;
+import com.microsoft.azure.oidc.token.impl.SimpeTokenParser;
+import com.microsoft.azure.oidc.token.impl.SimpleTokenValidator;
+
+/**
+ * Validates a signed id_token against keys fetched from the stub identity
+ * provider. The configuration is loaded once in setup, so this measures the
+ * claim and RS256 signature checks only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenValidatorBenchmark {
+	private final TokenValidator tokenValidator = SimpleTokenValidator.getInstance();
+
+	private BenchmarkEnvironment environment;
+
+	private Token token;
+
+	@Setup
+	public void setup() throws IOException, ServletException {
+		environment = BenchmarkEnvironment.start(Collections.<String, String>emptyMap());
+		token = SimpeTokenParser.getInstance().getToken(TokenFixtures.signedToken("00000000-0000-0000-0000-0000000000aa"));
+		if (!tokenValidator.validateCommon(token)) {
+			throw new IllegalStateException("Benchmark token failed validation");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		environment.stop();
+	}
+
+	@Benchmark
+	public Boolean validateCommon() {
+		return tokenValidator.validateCommon(token);
+	}
+
+	@Benchmark
+	public Boolean validateSignature() {
+		return tokenValidator.validateSignature(token);
+	}
+}
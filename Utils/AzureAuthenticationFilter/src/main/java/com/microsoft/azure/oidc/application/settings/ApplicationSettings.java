@@ -22,6 +22,7 @@
 package com.microsoft.azure.oidc.application.settings;
 
 import com.microsoft.azure.oidc.common.id.ID;
+import com.microsoft.azure.oidc.configuration.endpoint.EndPoint;
 
 public interface ApplicationSettings {
 
@@ -39,6 +40,10 @@ public interface ApplicationSettings {
 
 	Policy getOIDCPolicy();
 
+	EndPoint getAuthorityEndPoint();
+
+	EndPoint getGraphEndPoint();
+
 	boolean equals(Object object);
 
 	int hashCode();
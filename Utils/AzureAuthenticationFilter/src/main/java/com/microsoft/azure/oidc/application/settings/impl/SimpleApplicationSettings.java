@@ -29,6 +29,10 @@ import com.microsoft.azure.oidc.application.settings.Tenant;
 import com.microsoft.azure.oidc.common.id.ID;
 import com.microsoft.azure.oidc.common.id.IDFactory;
 import com.microsoft.azure.oidc.common.id.impl.SimpleIDFactory;
+import com.microsoft.azure.oidc.configuration.endpoint.EndPoint;
+import com.microsoft.azure.oidc.configuration.endpoint.EndPointFactory;
+import com.microsoft.azure.oidc.configuration.endpoint.impl.SimpleEndPointFactory;
+import com.microsoft.azure.oidc.exception.PreconditionException;
 
 final class SimpleApplicationSettings implements ApplicationSettings {
 	private static final String TENANT = "AAD_TENANT";
@@ -38,19 +42,30 @@ final class SimpleApplicationSettings implements ApplicationSettings {
 	private static final String PRINCIPAL_SECRET = "AAD_PRINCIPAL_SECRET";
 	private static final String REDIRECT_URL = "AAD_REDIRECT_URL";
 	private static final String OIDC_POLICY = "AAD_OIDC_POLICY";
+	private static final String AUTHORITY_URL = "AAD_AUTHORITY_URL";
+	private static final String GRAPH_URL = "AAD_GRAPH_URL";
+	private static final String DEFAULT_AUTHORITY_URL = "https://login.microsoftonline.com";
+	private static final String DEFAULT_GRAPH_URL = "https://graph.windows.net";
+	private static final String ALLOW_INSECURE_END_POINTS = "com.microsoft.azure.oidc.test.allowInsecureEndPoints";
 
-	private final Tenant tenant = new SimpleTenant(System.getenv(SimpleApplicationSettings.TENANT));
+	private final EndPointFactory endPointFactory = SimpleEndPointFactory.getInstance();
+
+	private final Tenant tenant = new SimpleTenant(getSetting(SimpleApplicationSettings.TENANT));
 	private volatile ID applicationId;
 	private final Secret applicationSecret = new SimpleSecret(
-			System.getenv(SimpleApplicationSettings.APPLICATION_SECRET) == null ? ""
-					: System.getenv(SimpleApplicationSettings.APPLICATION_SECRET));
+			getSetting(SimpleApplicationSettings.APPLICATION_SECRET) == null ? ""
+					: getSetting(SimpleApplicationSettings.APPLICATION_SECRET));
 	private volatile ID principalId;
 	private final Secret principalSecret = new SimpleSecret(
-			System.getenv(SimpleApplicationSettings.PRINCIPAL_SECRET) == null ? ""
-					: System.getenv(SimpleApplicationSettings.PRINCIPAL_SECRET));
+			getSetting(SimpleApplicationSettings.PRINCIPAL_SECRET) == null ? ""
+					: getSetting(SimpleApplicationSettings.PRINCIPAL_SECRET));
 	private final RedirectURL redirectURL = new SimpleRedirectURL(
-			System.getenv(SimpleApplicationSettings.REDIRECT_URL));
-	private final Policy oIDCPolicy = new SimplePolicy(System.getenv(SimpleApplicationSettings.OIDC_POLICY));
+			getSetting(SimpleApplicationSettings.REDIRECT_URL));
+	private final Policy oIDCPolicy = new SimplePolicy(getSetting(SimpleApplicationSettings.OIDC_POLICY));
+	private final EndPoint authorityEndPoint = endPointFactory.createEndPoint(
+			getEndPointSetting(SimpleApplicationSettings.AUTHORITY_URL, SimpleApplicationSettings.DEFAULT_AUTHORITY_URL));
+	private final EndPoint graphEndPoint = endPointFactory.createEndPoint(
+			getEndPointSetting(SimpleApplicationSettings.GRAPH_URL, SimpleApplicationSettings.DEFAULT_GRAPH_URL));
 
 	private final Object Lock = new Object();
 
@@ -66,7 +81,7 @@ final class SimpleApplicationSettings implements ApplicationSettings {
 		if (applicationId == null) {
 			synchronized (Lock) {
 				if (applicationId == null) {
-					applicationId = iDFactory.createID(System.getenv(SimpleApplicationSettings.APPLICATION_ID));
+					applicationId = iDFactory.createID(getSetting(SimpleApplicationSettings.APPLICATION_ID));
 				}
 			}
 		}
@@ -83,7 +98,7 @@ final class SimpleApplicationSettings implements ApplicationSettings {
 		if (principalId == null) {
 			synchronized (Lock) {
 				if (principalId == null) {
-					principalId = iDFactory.createID(System.getenv(SimpleApplicationSettings.PRINCIPAL_ID));
+					principalId = iDFactory.createID(getSetting(SimpleApplicationSettings.PRINCIPAL_ID));
 				}
 			}
 		}
@@ -105,12 +120,44 @@ final class SimpleApplicationSettings implements ApplicationSettings {
 		return oIDCPolicy;
 	}
 
+	@Override
+	public EndPoint getAuthorityEndPoint() {
+		return authorityEndPoint;
+	}
+
+	@Override
+	public EndPoint getGraphEndPoint() {
+		return graphEndPoint;
+	}
+
+	private static String getSetting(final String name) {
+		return System.getenv(name);
+	}
+
+	/**
+	 * For the Azure AD and Graph hosts only, a system property of the same
+	 * name takes precedence over the environment, so that a test or benchmark
+	 * can point the filter at a stub. The end-point must be https unless the
+	 * test-only system property com.microsoft.azure.oidc.test.allowInsecureEndPoints
+	 * is true.
+	 */
+	private static String getEndPointSetting(final String name, final String defaultValue) {
+		final String environmentValue = getSetting(name);
+		final String value = System.getProperty(name, environmentValue == null ? defaultValue : environmentValue);
+		if (!value.regionMatches(true, 0, "https://", 0, 8) && !Boolean.getBoolean(ALLOW_INSECURE_END_POINTS)) {
+			throw new PreconditionException(String.format("%s must be an https URL", name));
+		}
+		return value;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((applicationId == null) ? 0 : applicationId.hashCode());
 		result = prime * result + ((applicationSecret == null) ? 0 : applicationSecret.hashCode());
+		result = prime * result + ((authorityEndPoint == null) ? 0 : authorityEndPoint.hashCode());
+		result = prime * result + ((graphEndPoint == null) ? 0 : graphEndPoint.hashCode());
 		result = prime * result + ((oIDCPolicy == null) ? 0 : oIDCPolicy.hashCode());
 		result = prime * result + ((principalId == null) ? 0 : principalId.hashCode());
 		result = prime * result + ((principalSecret == null) ? 0 : principalSecret.hashCode());
@@ -138,6 +185,16 @@ final class SimpleApplicationSettings implements ApplicationSettings {
 				return false;
 		} else if (!applicationSecret.equals(other.applicationSecret))
 			return false;
+		if (authorityEndPoint == null) {
+			if (other.authorityEndPoint != null)
+				return false;
+		} else if (!authorityEndPoint.equals(other.authorityEndPoint))
+			return false;
+		if (graphEndPoint == null) {
+			if (other.graphEndPoint != null)
+				return false;
+		} else if (!graphEndPoint.equals(other.graphEndPoint))
+			return false;
 		if (oIDCPolicy == null) {
 			if (other.oIDCPolicy != null)
 				return false;
@@ -21,12 +21,30 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.concurrent.cache;
 
+import java.util.List;
+
 public interface ConcurrentCache<K, V> {
 
 	V get(Object key);
 
+	V getStale(Object key);
+
 	V putIfAbsent(K key, V value);
 
+	V put(K key, V value);
+
+	/**
+	 * Puts back an entry saved from an earlier run, keeping its expiry.
+	 * Restore entries oldest first and before the cache is otherwise
+	 * written to; implementations may refuse the entry when that is not the
+	 * case. Returns whether the entry was restored.
+	 */
+	Boolean restore(K key, V value, Long expiresAt);
+
+	List<ConcurrentCacheEntry<K, V>> getEntries();
+
+	ConcurrentCacheStatistics getStatistics();
+
 	void shutdownNow();
 
-}
\ No newline at end of file
+}
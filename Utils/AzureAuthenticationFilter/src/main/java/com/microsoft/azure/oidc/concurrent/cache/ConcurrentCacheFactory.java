@@ -21,7 +21,13 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.concurrent.cache;
 
+import java.util.concurrent.TimeUnit;
+
 public interface ConcurrentCacheFactory<K, V> {
 
-	ConcurrentCache<K, V> createConcurrentCache(Long ttl, Long maxSize);
+	ConcurrentCache<K, V> createConcurrentCache(String name, Long ttl, Long maxSize);
+
+	ConcurrentCache<K, V> createConcurrentCache(String name, Long ttl, TimeUnit timeUnit, Long maxSize);
+
+	ConcurrentCache<K, V> createConcurrentCache(String name, Long ttl, Long grace, TimeUnit timeUnit, Long maxSize);
 }
@@ -21,12 +21,23 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.concurrent.cache;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 public interface ConcurrentCacheService {
 
 	<V> ConcurrentCache<String, V> createCache(Class<V> clazzV, String name, Long ttl, Long maxSize);
 
+	<V> ConcurrentCache<String, V> createCache(Class<V> clazzV, String name, Long ttl, TimeUnit timeUnit,
+			Long maxSize);
+
+	<V> ConcurrentCache<String, V> createCache(Class<V> clazzV, String name, Long ttl, Long grace,
+			TimeUnit timeUnit, Long maxSize);
+
 	<V> ConcurrentCache<String, V> getCache(Class<V> clazzV, String name);
 
+	Map<String, ConcurrentCacheStatistics> getStatistics();
+
 	void shutdownNow();
 
 }
@@ -0,0 +1,385 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.concurrent.cache.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheEntry;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheStatistics;
+import com.microsoft.azure.oidc.exception.PreconditionException;
+
+/**
+ * Bounded cache with a fixed time to live per entry.
+ * <p>
+ * Reads are a single lock-free map lookup. Because every entry lives for the
+ * same amount of time, the insertion queue is also the expiry order, so the
+ * sweeper removes all expired entries from its head in one pass. When the cache
+ * is full a new key is only admitted if it has been asked for more often than
+ * the oldest entry it would evict.
+ * <p>
+ * With a grace period, an expired entry is kept that much longer. It is a miss
+ * for {@link #get(Object)} but can still be read with
+ * {@link #getStale(Object)}.
+ * <p>
+ * Replacing a key leaves its previous entry in the expiry queue. Those stale
+ * entries are dropped when they reach the head, and the queue is compacted
+ * once there are as many of them as the cache holds, so a frequently
+ * rewritten key cannot grow it without bound.
+ * <p>
+ * Restored entries keep their original expiry, so they must go in oldest
+ * first and before anything else: {@link #restore(Object, Object, Long)} is
+ * refused once the cache has been written to.
+ */
+public final class FrequencyConcurrentCache<K, V> implements ConcurrentCache<K, V> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FrequencyConcurrentCache.class);
+	private static final long MINIMUM_SWEEP_INTERVAL = 1000L;
+	private static final long MAXIMUM_SWEEP_INTERVAL = 60000L;
+	private static final long MINIMUM_COMPACTION_SIZE = 64L;
+
+	private final ConcurrentMap<K, Entry<K, V>> storeMap = new ConcurrentHashMap<K, Entry<K, V>>();
+	private final Queue<Entry<K, V>> expiryQueue = new ConcurrentLinkedQueue<Entry<K, V>>();
+	private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+	private final FrequencySketch frequencySketch;
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong expirationCount = new AtomicLong();
+	private final AtomicLong rejectionCount = new AtomicLong();
+	private final AtomicLong staleCount = new AtomicLong();
+	private final AtomicBoolean isCompacting = new AtomicBoolean();
+	private volatile boolean isWritten;
+	private final String name;
+	private final long ttl;
+	private final long grace;
+	private final long maxSize;
+
+	public FrequencyConcurrentCache(final String name, final Long ttl, final TimeUnit timeUnit, final Long maxSize) {
+		this(name, ttl, 0L, timeUnit, maxSize);
+	}
+
+	public FrequencyConcurrentCache(final String name, final Long ttl, final Long grace, final TimeUnit timeUnit,
+			final Long maxSize) {
+		if (name == null || ttl == null || grace == null || timeUnit == null || maxSize == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		if (ttl <= 0 || maxSize <= 0) {
+			throw new IllegalArgumentException("TTL and maximum size must be positive");
+		}
+		if (grace < 0) {
+			throw new IllegalArgumentException("Grace period must not be negative");
+		}
+		this.name = name;
+		this.ttl = timeUnit.toMillis(ttl);
+		this.grace = timeUnit.toMillis(grace);
+		this.maxSize = maxSize;
+		this.frequencySketch = new FrequencySketch(maxSize);
+		final long sweepInterval = Math.max(MINIMUM_SWEEP_INTERVAL, Math.min(this.ttl / 2, MAXIMUM_SWEEP_INTERVAL));
+		scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					expire(System.currentTimeMillis());
+					LOGGER.debug("Cache {} statistics: {}", name, getStatistics());
+				} catch (RuntimeException e) {
+					LOGGER.error(e.getMessage(), e);
+				}
+			}
+		}, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public V get(final Object key) {
+		if (key == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		frequencySketch.increment(key);
+		final Entry<K, V> entry = storeMap.get(key);
+		if (entry == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		final long now = System.currentTimeMillis();
+		if (entry.isExpired(now)) {
+			if (entry.isEvictable(now) && storeMap.remove(key, entry)) {
+				size.decrementAndGet();
+				expirationCount.incrementAndGet();
+				staleCount.incrementAndGet();
+			}
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return entry.getValue();
+	}
+
+	@Override
+	public V getStale(final Object key) {
+		if (key == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final Entry<K, V> entry = storeMap.get(key);
+		if (entry == null || entry.isEvictable(System.currentTimeMillis())) {
+			return null;
+		}
+		return entry.getValue();
+	}
+
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		if (key == null || value == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final long now = System.currentTimeMillis();
+		final Entry<K, V> entry = new Entry<K, V>(key, value, now + ttl, now + ttl + grace);
+		isWritten = true;
+		for (;;) {
+			final Entry<K, V> existing = storeMap.get(key);
+			if (existing != null) {
+				if (!existing.isExpired(now)) {
+					return existing.getValue();
+				}
+				if (storeMap.replace(key, existing, entry)) {
+					expirationCount.incrementAndGet();
+					expiryQueue.offer(entry);
+					onReplaced();
+					return null;
+				}
+				continue;
+			}
+			if (!admit(key, now)) {
+				rejectionCount.incrementAndGet();
+				return null;
+			}
+			if (storeMap.putIfAbsent(key, entry) == null) {
+				size.incrementAndGet();
+				expiryQueue.offer(entry);
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public V put(final K key, final V value) {
+		if (key == null || value == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final long now = System.currentTimeMillis();
+		final Entry<K, V> entry = new Entry<K, V>(key, value, now + ttl, now + ttl + grace);
+		isWritten = true;
+		for (;;) {
+			final Entry<K, V> existing = storeMap.get(key);
+			if (existing != null) {
+				if (storeMap.replace(key, existing, entry)) {
+					expiryQueue.offer(entry);
+					onReplaced();
+					if (existing.isExpired(now)) {
+						expirationCount.incrementAndGet();
+						return null;
+					}
+					return existing.getValue();
+				}
+				continue;
+			}
+			if (!admit(key, now)) {
+				rejectionCount.incrementAndGet();
+				return null;
+			}
+			if (storeMap.putIfAbsent(key, entry) == null) {
+				size.incrementAndGet();
+				expiryQueue.offer(entry);
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public Boolean restore(final K key, final V value, final Long expiresAt) {
+		if (key == null || value == null || expiresAt == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final long now = System.currentTimeMillis();
+		final long expiry = Math.min(expiresAt, now + ttl);
+		if (expiry <= now) {
+			return Boolean.FALSE;
+		}
+		if (isWritten) {
+			LOGGER.warn("Cache entry not restored: the cache has already been written to");
+			return Boolean.FALSE;
+		}
+		if (size.get() >= maxSize) {
+			rejectionCount.incrementAndGet();
+			return Boolean.FALSE;
+		}
+		final Entry<K, V> entry = new Entry<K, V>(key, value, expiry, expiry + grace);
+		if (storeMap.putIfAbsent(key, entry) != null) {
+			return Boolean.FALSE;
+		}
+		size.incrementAndGet();
+		expiryQueue.offer(entry);
+		return Boolean.TRUE;
+	}
+
+	@Override
+	public List<ConcurrentCacheEntry<K, V>> getEntries() {
+		final long now = System.currentTimeMillis();
+		final List<ConcurrentCacheEntry<K, V>> result = new ArrayList<ConcurrentCacheEntry<K, V>>();
+		for (final Entry<K, V> entry : storeMap.values()) {
+			if (!entry.isExpired(now)) {
+				result.add(entry);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public ConcurrentCacheStatistics getStatistics() {
+		return new SimpleConcurrentCacheStatistics(hitCount.get(), missCount.get(), evictionCount.get(),
+				expirationCount.get(), rejectionCount.get(), size.get());
+	}
+
+	@Override
+	public void shutdownNow() {
+		scheduledExecutorService.shutdownNow();
+	}
+
+	private boolean admit(final K key, final long now) {
+		while (size.get() >= maxSize) {
+			final Entry<K, V> victim = expiryQueue.peek();
+			if (victim == null) {
+				return true;
+			}
+			final boolean isStale = storeMap.get(victim.getKey()) != victim;
+			final boolean isExpired = victim.isExpired(now);
+			if (!isStale && !isExpired
+					&& frequencySketch.frequency(key) <= frequencySketch.frequency(victim.getKey())) {
+				return false;
+			}
+			if (!expiryQueue.remove(victim)) {
+				continue;
+			}
+			if (storeMap.remove(victim.getKey(), victim)) {
+				size.decrementAndGet();
+				if (isExpired) {
+					expirationCount.incrementAndGet();
+				} else {
+					evictionCount.incrementAndGet();
+				}
+			} else {
+				staleCount.decrementAndGet();
+			}
+		}
+		return true;
+	}
+
+	private void expire(final long now) {
+		for (Entry<K, V> entry = expiryQueue.peek(); entry != null; entry = expiryQueue.peek()) {
+			final boolean isStale = storeMap.get(entry.getKey()) != entry;
+			if (!isStale && !entry.isEvictable(now)) {
+				return;
+			}
+			if (!expiryQueue.remove(entry)) {
+				continue;
+			}
+			if (storeMap.remove(entry.getKey(), entry)) {
+				size.decrementAndGet();
+				expirationCount.incrementAndGet();
+			} else {
+				staleCount.decrementAndGet();
+			}
+		}
+	}
+
+	private void onReplaced() {
+		if (staleCount.incrementAndGet() > Math.max(size.get(), MINIMUM_COMPACTION_SIZE)
+				&& isCompacting.compareAndSet(false, true)) {
+			try {
+				compact();
+			} finally {
+				isCompacting.set(false);
+			}
+		}
+	}
+
+	private void compact() {
+		// whatever is stale now is removed below; the count is only a trigger, so start it afresh
+		staleCount.set(0L);
+		for (final Iterator<Entry<K, V>> iterator = expiryQueue.iterator(); iterator.hasNext();) {
+			final Entry<K, V> entry = iterator.next();
+			if (storeMap.get(entry.getKey()) != entry) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static final class Entry<K, V> implements ConcurrentCacheEntry<K, V> {
+		private final K key;
+		private final V value;
+		private final long expiresAt;
+		private final long evictAt;
+
+		Entry(final K key, final V value, final long expiresAt, final long evictAt) {
+			this.key = key;
+			this.value = value;
+			this.expiresAt = expiresAt;
+			this.evictAt = evictAt;
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public Long getExpiresAt() {
+			return expiresAt;
+		}
+
+		boolean isExpired(final long now) {
+			return expiresAt <= now;
+		}
+
+		boolean isEvictable(final long now) {
+			return evictAt <= now;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.concurrent.cache.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate, lock-free access frequency of cache keys (a count-min sketch
+ * of 4-bit counters). Counters are halved once enough increments have been
+ * recorded so that the history ages and recent popularity wins.
+ */
+final class FrequencySketch {
+	private static final int MAXIMUM_COUNT = 15;
+	private static final int MAXIMUM_WIDTH = 1 << 20;
+	private static final int[] SEEDS = { 0x97cb3127, 0xc3a5c85c, 0x5bd1e995, 0x9e3779b9 };
+
+	private final AtomicIntegerArray table;
+	private final AtomicInteger additions = new AtomicInteger();
+	private final int mask;
+	private final int sampleSize;
+
+	FrequencySketch(final long maximumSize) {
+		final long requested = Math.max(16L, Math.min(maximumSize * 4L, MAXIMUM_WIDTH));
+		final int width = Integer.highestOneBit((int) requested - 1) << 1;
+		this.table = new AtomicIntegerArray(width);
+		this.mask = width - 1;
+		this.sampleSize = width * 10;
+	}
+
+	int frequency(final Object key) {
+		final int hash = spread(key.hashCode());
+		int frequency = MAXIMUM_COUNT;
+		for (int i = 0; i < SEEDS.length; i++) {
+			frequency = Math.min(frequency, table.get(indexOf(hash, i)));
+		}
+		return frequency;
+	}
+
+	void increment(final Object key) {
+		final int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			added |= incrementAt(indexOf(hash, i));
+		}
+		if (added && additions.incrementAndGet() >= sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(final int index) {
+		for (;;) {
+			final int count = table.get(index);
+			if (count >= MAXIMUM_COUNT) {
+				return false;
+			}
+			if (table.compareAndSet(index, count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void reset() {
+		if (additions.getAndSet(0) < sampleSize) {
+			return;
+		}
+		for (int index = 0; index < table.length(); index++) {
+			table.set(index, table.get(index) >>> 1);
+		}
+	}
+
+	private int indexOf(final int hash, final int i) {
+		int h = (hash ^ SEEDS[i]) * 0x9e3779b9;
+		h ^= h >>> 16;
+		return h & mask;
+	}
+
+	private static int spread(final int hash) {
+		int h = hash * 0x85ebca6b;
+		h ^= h >>> 13;
+		return h * 0xc2b2ae35;
+	}
+}
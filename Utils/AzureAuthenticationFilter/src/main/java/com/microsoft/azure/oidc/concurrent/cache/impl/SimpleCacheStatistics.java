@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.concurrent.cache.impl;
+
+import com.microsoft.azure.oidc.concurrent.cache.CacheStatisticsMXBean;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheStatistics;
+
+/**
+ * Reads the cache registered under a name when asked, so a cache that is
+ * created again under the same name keeps the same MBean.
+ */
+final class SimpleCacheStatistics implements CacheStatisticsMXBean {
+	private final SimpleConcurrentCacheService concurrentCacheService;
+	private final String name;
+
+	public SimpleCacheStatistics(final SimpleConcurrentCacheService concurrentCacheService, final String name) {
+		this.concurrentCacheService = concurrentCacheService;
+		this.name = name;
+	}
+
+	@Override
+	public long getSize() {
+		final ConcurrentCacheStatistics statistics = getStatistics();
+		return statistics == null ? 0L : statistics.getSize();
+	}
+
+	@Override
+	public long getHitCount() {
+		final ConcurrentCacheStatistics statistics = getStatistics();
+		return statistics == null ? 0L : statistics.getHitCount();
+	}
+
+	@Override
+	public long getMissCount() {
+		final ConcurrentCacheStatistics statistics = getStatistics();
+		return statistics == null ? 0L : statistics.getMissCount();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		final ConcurrentCacheStatistics statistics = getStatistics();
+		return statistics == null ? 0L : statistics.getEvictionCount();
+	}
+
+	@Override
+	public long getExpirationCount() {
+		final ConcurrentCacheStatistics statistics = getStatistics();
+		return statistics == null ? 0L : statistics.getExpirationCount();
+	}
+
+	@Override
+	public long getRejectionCount() {
+		final ConcurrentCacheStatistics statistics = getStatistics();
+		return statistics == null ? 0L : statistics.getRejectionCount();
+	}
+
+	private ConcurrentCacheStatistics getStatistics() {
+		final ConcurrentCache<String, Object> cache = concurrentCacheService.getCache(Object.class, name);
+		return cache == null ? null : cache.getStatistics();
+	}
+}
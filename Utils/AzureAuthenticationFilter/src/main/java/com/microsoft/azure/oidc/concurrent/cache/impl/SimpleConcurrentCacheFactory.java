@@ -21,6 +21,8 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.concurrent.cache.impl;
 
+import java.util.concurrent.TimeUnit;
+
 import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
 import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheFactory;
 
@@ -29,8 +31,18 @@ public class SimpleConcurrentCacheFactory<K, V> implements ConcurrentCacheFactor
 	private static final ConcurrentCacheFactory INSTANCE = new SimpleConcurrentCacheFactory();
 
 	@Override
-	public ConcurrentCache<K, V> createConcurrentCache(Long ttl, Long maxSize) {
-		return new TTLConcurrentCache<K, V>(ttl, maxSize);
+	public ConcurrentCache<K, V> createConcurrentCache(String name, Long ttl, Long maxSize) {
+		return createConcurrentCache(name, ttl, TimeUnit.MINUTES, maxSize);
+	}
+
+	@Override
+	public ConcurrentCache<K, V> createConcurrentCache(String name, Long ttl, TimeUnit timeUnit, Long maxSize) {
+		return new FrequencyConcurrentCache<K, V>(name, ttl, timeUnit, maxSize);
+	}
+
+	@Override
+	public ConcurrentCache<K, V> createConcurrentCache(String name, Long ttl, Long grace, TimeUnit timeUnit, Long maxSize) {
+		return new FrequencyConcurrentCache<K, V>(name, ttl, grace, timeUnit, maxSize);
 	}
 
 	@SuppressWarnings("unchecked")
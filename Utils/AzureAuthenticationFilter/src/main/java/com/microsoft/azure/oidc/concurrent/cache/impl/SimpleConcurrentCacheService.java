@@ -21,26 +21,64 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.concurrent.cache.impl;
 
+import java.lang.management.ManagementFactory;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
 import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheFactory;
 import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheStatistics;
 
+/**
+ * Keeps the caches by name and publishes the statistics of each over JMX as
+ * com.microsoft.azure.oidc:type=Cache,name=&lt;name&gt;.
+ */
 public class SimpleConcurrentCacheService implements ConcurrentCacheService {
 	private final static ConcurrentCacheService INSTANCE = new SimpleConcurrentCacheService();
+	private final static Logger LOGGER = LoggerFactory.getLogger(SimpleConcurrentCacheService.class);
+	private final static String OBJECT_NAME = "com.microsoft.azure.oidc:type=Cache,name=%s";
 
 	private final ConcurrentCacheFactory<String, Object> concurrentCacheFactory = SimpleConcurrentCacheFactory
 			.getInstance(String.class, Object.class);
 
-	private final Map<String, ConcurrentCache<String, Object>> cacheMap = new HashMap<String, ConcurrentCache<String, Object>>();
+	private final Map<String, ConcurrentCache<String, Object>> cacheMap = new ConcurrentHashMap<String, ConcurrentCache<String, Object>>();
+
+	private final Map<String, ObjectName> objectNames = new HashMap<String, ObjectName>();
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public <V> ConcurrentCache<String, V> createCache(Class<V> clazzV, String name, Long ttl, Long maxSize) {
-		final ConcurrentCache<String, Object> concurrentCache = concurrentCacheFactory.createConcurrentCache(ttl, maxSize);
-		cacheMap.put(name, concurrentCache);
+		return createCache(clazzV, name, ttl, TimeUnit.MINUTES, maxSize);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <V> ConcurrentCache<String, V> createCache(Class<V> clazzV, String name, Long ttl, TimeUnit timeUnit,
+			Long maxSize) {
+		return createCache(clazzV, name, ttl, 0L, timeUnit, maxSize);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <V> ConcurrentCache<String, V> createCache(Class<V> clazzV, String name, Long ttl, Long grace,
+			TimeUnit timeUnit, Long maxSize) {
+		final ConcurrentCache<String, Object> concurrentCache = concurrentCacheFactory.createConcurrentCache(name,
+				ttl, grace, timeUnit, maxSize);
+		final ConcurrentCache<String, Object> previous = cacheMap.put(name, concurrentCache);
+		if (previous != null) {
+			previous.shutdownNow();
+		}
+		register(name);
 		return (ConcurrentCache<String, V>) concurrentCache;
 	}
 
@@ -50,12 +88,47 @@ public class SimpleConcurrentCacheService implements ConcurrentCacheService {
 		return (ConcurrentCache<String, V>) cacheMap.get(name);
 	}
 
+	@Override
+	public Map<String, ConcurrentCacheStatistics> getStatistics() {
+		final Map<String, ConcurrentCacheStatistics> statistics = new TreeMap<String, ConcurrentCacheStatistics>();
+		for (final Map.Entry<String, ConcurrentCache<String, Object>> entry : cacheMap.entrySet()) {
+			statistics.put(entry.getKey(), entry.getValue().getStatistics());
+		}
+		return statistics;
+	}
+
 	@Override
 	public void shutdownNow() {
 		for(@SuppressWarnings("rawtypes") final ConcurrentCache cache: cacheMap.values()) {
 			cache.shutdownNow();
 		}
 		cacheMap.clear();
+		unregister();
+	}
+
+	private synchronized void register(final String name) {
+		if (objectNames.containsKey(name)) {
+			return;
+		}
+		try {
+			final ObjectName objectName = new ObjectName(String.format(OBJECT_NAME, name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new SimpleCacheStatistics(this, name), objectName);
+			objectNames.put(name, objectName);
+		} catch (JMException e) {
+			LOGGER.warn(String.format("Unable to register cache MBean for %s", name), e);
+		}
+	}
+
+	private synchronized void unregister() {
+		final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (final ObjectName objectName : objectNames.values()) {
+			try {
+				mBeanServer.unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOGGER.warn(String.format("Unable to unregister cache MBean %s", objectName), e);
+			}
+		}
+		objectNames.clear();
 	}
 
 	public static ConcurrentCacheService getInstance() {
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.concurrent.cache.impl;
+
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheStatistics;
+
+final class SimpleConcurrentCacheStatistics implements ConcurrentCacheStatistics {
+	private final Long hitCount;
+	private final Long missCount;
+	private final Long evictionCount;
+	private final Long expirationCount;
+	private final Long rejectionCount;
+	private final Long size;
+
+	public SimpleConcurrentCacheStatistics(final Long hitCount, final Long missCount, final Long evictionCount,
+			final Long expirationCount, final Long rejectionCount, final Long size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.expirationCount = expirationCount;
+		this.rejectionCount = rejectionCount;
+		this.size = size;
+	}
+
+	@Override
+	public Long getHitCount() {
+		return hitCount;
+	}
+
+	@Override
+	public Long getMissCount() {
+		return missCount;
+	}
+
+	@Override
+	public Long getEvictionCount() {
+		return evictionCount;
+	}
+
+	@Override
+	public Long getExpirationCount() {
+		return expirationCount;
+	}
+
+	@Override
+	public Long getRejectionCount() {
+		return rejectionCount;
+	}
+
+	@Override
+	public Long getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("size=%s, hits=%s, misses=%s, evictions=%s, expirations=%s, rejections=%s", size,
+				hitCount, missCount, evictionCount, expirationCount, rejectionCount);
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.concurrent.executor.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.exception.PreconditionException;
+
+/**
+ * Filter-wide pool for outbound calls. The pool and its queue are bounded, and
+ * a task submitted while both are full fails immediately instead of blocking
+ * the calling request thread.
+ * <p>
+ * Suspended requests are resolved on a separate dispatch pool. Resolving waits
+ * on outbound calls, and waiting on them from the pool that runs them would
+ * leave no thread to run them once every worker is resolving.
+ */
+public final class SimpleTaskExecutor implements TaskExecutor {
+	private static final TaskExecutor INSTANCE = new SimpleTaskExecutor("oidc-executor");
+	private static final TaskExecutor DISPATCH_INSTANCE = new SimpleTaskExecutor("oidc-dispatch");
+	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleTaskExecutor.class);
+	private static final int DEFAULT_POOL_SIZE = 8;
+	private static final int DEFAULT_QUEUE_SIZE = 64;
+	private static final long KEEP_ALIVE = 60L;
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	private final String threadName;
+
+	private volatile ThreadPoolExecutor threadPoolExecutor;
+
+	private SimpleTaskExecutor(final String threadName) {
+		this.threadName = threadName;
+		this.threadPoolExecutor = createThreadPoolExecutor(DEFAULT_POOL_SIZE, DEFAULT_QUEUE_SIZE);
+	}
+
+	@Override
+	public void initialise(final Integer poolSize, final Integer queueSize) {
+		if (poolSize == null || queueSize == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final ThreadPoolExecutor previous = threadPoolExecutor;
+		threadPoolExecutor = createThreadPoolExecutor(poolSize, queueSize);
+		previous.shutdown();
+	}
+
+	@Override
+	public <T> Future<T> submit(final Callable<T> task) {
+		if (task == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		try {
+			return threadPoolExecutor.submit(task);
+		} catch (final RejectedExecutionException e) {
+			LOGGER.warn("Task rejected, executor is saturated");
+			final FutureTask<T> rejected = new FutureTask<T>(new Callable<T>() {
+				public T call() throws Exception {
+					throw e;
+				}
+			});
+			rejected.run();
+			return rejected;
+		}
+	}
+
+	@Override
+	public void execute(final Runnable task) {
+		if (task == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		threadPoolExecutor.execute(task);
+	}
+
+	@Override
+	public void shutdownNow() {
+		threadPoolExecutor.shutdownNow();
+	}
+
+	private ThreadPoolExecutor createThreadPoolExecutor(final int poolSize, final int queueSize) {
+		final ThreadPoolExecutor result = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						final Thread thread = new Thread(runnable,
+								String.format("%s-%s", threadName, threadCount.incrementAndGet()));
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+	public static TaskExecutor getInstance() {
+		return INSTANCE;
+	}
+
+	public static TaskExecutor getDispatchInstance() {
+		return DISPATCH_INSTANCE;
+	}
+}
@@ -21,8 +21,20 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.configuration;
 
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.azure.oidc.common.name.Name;
+
 public interface ConfigurationCache {
 
+	void initialise(Long ttl, TimeUnit timeUnit);
+
 	Configuration load();
 
+	Configuration load(Name keyName);
+
+	Boolean isLoaded();
+
+	Boolean restore(Configuration configuration, Long expiresAt);
+
 }
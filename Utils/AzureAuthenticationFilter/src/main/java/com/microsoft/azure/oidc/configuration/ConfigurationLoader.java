@@ -27,4 +27,6 @@ public interface ConfigurationLoader {
 
 	Future<Configuration> loadAsync();
 
+	Configuration load();
+
 }
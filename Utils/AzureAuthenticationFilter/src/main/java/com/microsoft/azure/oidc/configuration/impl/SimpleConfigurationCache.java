@@ -21,16 +21,45 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.configuration.impl;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.oidc.common.name.Name;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
 import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
 import com.microsoft.azure.oidc.concurrent.cache.impl.SimpleConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.concurrent.executor.impl.SimpleTaskExecutor;
 import com.microsoft.azure.oidc.configuration.Configuration;
 import com.microsoft.azure.oidc.configuration.ConfigurationCache;
 import com.microsoft.azure.oidc.configuration.ConfigurationLoader;
+import com.microsoft.azure.oidc.exception.PreconditionException;
 import com.microsoft.azure.oidc.future.FutureHelper;
 import com.microsoft.azure.oidc.future.impl.SimpleFutureHelper;
+import com.microsoft.azure.oidc.metrics.LatencyRecorder;
+import com.microsoft.azure.oidc.metrics.Stage;
+import com.microsoft.azure.oidc.metrics.impl.SimpleLatencyRecorder;
 
+/**
+ * Serves the last loaded configuration while a single background refresh
+ * replaces it, starting before the cached entry expires. Concurrent misses
+ * share the same in-flight load.
+ */
 public class SimpleConfigurationCache implements ConfigurationCache {
 	private static final ConfigurationCache INSTANCE = new SimpleConfigurationCache();
+	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleConfigurationCache.class);
+	private static final String CACHE_NAME = "configurationCache";
+	private static final String KEY = "SINGLE";
+	private static final long RETRY_INTERVAL = 30000L;
+	private static final long KEY_REFRESH_INTERVAL = 60000L;
 
 	private final ConfigurationLoader configurationLoader = SimpleConfigurationLoader.getInstance();
 
@@ -38,19 +67,179 @@ public class SimpleConfigurationCache implements ConfigurationCache {
 
 	private final ConcurrentCacheService concurrentCacheService = SimpleConcurrentCacheService.getInstance();
 
+	private final TaskExecutor taskExecutor = SimpleTaskExecutor.getInstance();
+
+	private final LatencyRecorder latencyRecorder = SimpleLatencyRecorder.getInstance();
+
+	private final AtomicReference<Future<Configuration>> inFlight = new AtomicReference<Future<Configuration>>();
+
+	private final AtomicLong nextKeyRefresh = new AtomicLong();
+
+	private volatile Configuration lastConfiguration;
+
+	private volatile long refreshAt = Long.MAX_VALUE;
+
+	private volatile long refreshInterval;
+
+	private volatile long refreshLead;
+
+	@Override
+	public void initialise(final Long ttl, final TimeUnit timeUnit) {
+		if (ttl == null || timeUnit == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		concurrentCacheService.createCache(Configuration.class, CACHE_NAME, ttl, timeUnit, 1L);
+		refreshInterval = timeUnit.toMillis(ttl) * 4 / 5;
+		refreshLead = timeUnit.toMillis(ttl) - refreshInterval;
+		refreshAt = Long.MAX_VALUE;
+		lastConfiguration = null;
+	}
+
 	@Override
 	public Configuration load() {
-		final String key = "SINGLE";
-		final Configuration entry = concurrentCacheService.getCache(Configuration.class, "configurationCache").get(key);
+		final long start = latencyRecorder.start();
+		try {
+			return getConfiguration();
+		} finally {
+			latencyRecorder.stop(Stage.CONFIGURATION, start);
+		}
+	}
+
+	private Configuration getConfiguration() {
+		final Configuration entry = getCache().get(KEY);
 		if (entry != null) {
+			if (System.currentTimeMillis() >= refreshAt) {
+				refresh();
+			}
 			return entry;
 		}
-		final Configuration result = futureHelper.getResult(configurationLoader.loadAsync());
-		if (result == null) {
-			return result;
+		final Configuration previous = lastConfiguration;
+		if (previous != null) {
+			refresh();
+			return previous;
+		}
+		return futureHelper.getResult(refresh());
+	}
+
+	@Override
+	public Configuration load(final Name keyName) {
+		final long start = latencyRecorder.start();
+		try {
+			return getConfiguration(keyName);
+		} finally {
+			latencyRecorder.stop(Stage.CONFIGURATION, start);
+		}
+	}
+
+	private Configuration getConfiguration(final Name keyName) {
+		if (keyName == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final Configuration configuration = getConfiguration();
+		if (configuration == null || configuration.getKey(keyName) != null) {
+			return configuration;
+		}
+		final long now = System.currentTimeMillis();
+		final long next = nextKeyRefresh.get();
+		final Future<Configuration> future;
+		if (now >= next && nextKeyRefresh.compareAndSet(next, now + KEY_REFRESH_INTERVAL)) {
+			LOGGER.info("Unknown key {}, refreshing keystore", keyName.getName());
+			future = refresh();
+		} else {
+			future = inFlight.get();
+		}
+		if (future == null) {
+			return configuration;
+		}
+		final Configuration result = futureHelper.getResult(future);
+		return result == null ? configuration : result;
+	}
+
+	@Override
+	public Boolean isLoaded() {
+		return lastConfiguration != null;
+	}
+
+	@Override
+	public Boolean restore(final Configuration configuration, final Long expiresAt) {
+		if (configuration == null || expiresAt == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		if (!getCache().restore(KEY, configuration, expiresAt)) {
+			return Boolean.FALSE;
+		}
+		lastConfiguration = configuration;
+		refreshAt = Math.min(expiresAt, System.currentTimeMillis() + refreshInterval + refreshLead) - refreshLead;
+		return Boolean.TRUE;
+	}
+
+	private ConcurrentCache<String, Configuration> getCache() {
+		return concurrentCacheService.getCache(Configuration.class, CACHE_NAME);
+	}
+
+	private Future<Configuration> refresh() {
+		for (;;) {
+			final Future<Configuration> pending = inFlight.get();
+			if (pending != null) {
+				return pending;
+			}
+			final FutureTask<Configuration> task = new FutureTask<Configuration>(new Callable<Configuration>() {
+				public Configuration call() throws Exception {
+					final long start = latencyRecorder.start();
+					try {
+						return reload();
+					} finally {
+						latencyRecorder.stop(Stage.CONFIGURATION_LOAD, start);
+					}
+				}
+			}) {
+				@Override
+				protected void done() {
+					// also runs when a caller that timed out cancels the load before it started
+					inFlight.compareAndSet(this, null);
+				}
+			};
+			if (!inFlight.compareAndSet(null, task)) {
+				continue;
+			}
+			try {
+				taskExecutor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// not loaded on the request thread; callers serve the last configuration
+				LOGGER.warn("Configuration refresh rejected, executor is saturated");
+				task.cancel(false);
+				return getRejected(e);
+			}
+			return task;
+		}
+	}
+
+	private Future<Configuration> getRejected(final RejectedExecutionException e) {
+		final FutureTask<Configuration> rejected = new FutureTask<Configuration>(new Callable<Configuration>() {
+			public Configuration call() throws Exception {
+				throw e;
+			}
+		});
+		rejected.run();
+		return rejected;
+	}
+
+	private Configuration reload() {
+		final Configuration configuration;
+		try {
+			configuration = configurationLoader.load();
+		} catch (RuntimeException e) {
+			refreshAt = System.currentTimeMillis() + RETRY_INTERVAL;
+			throw e;
+		}
+		if (configuration == null) {
+			refreshAt = System.currentTimeMillis() + RETRY_INTERVAL;
+			return null;
 		}
-		concurrentCacheService.getCache(Configuration.class, "configurationCache").putIfAbsent(key, result);
-		return result;
+		getCache().put(KEY, configuration);
+		lastConfiguration = configuration;
+		refreshAt = System.currentTimeMillis() + refreshInterval;
+		return configuration;
 	}
 
 	public static ConfigurationCache getInstance() {
@@ -37,4 +37,6 @@ public interface AuthenticationConfiguration {
 
 	Map<String, List<String>> getAuthorisationRoleMap();
 
+	UriMatcher getUriMatcher();
+
 }
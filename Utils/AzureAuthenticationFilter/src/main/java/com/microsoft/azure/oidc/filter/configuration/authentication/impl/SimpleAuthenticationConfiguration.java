@@ -27,8 +27,11 @@ import java.util.Map;
 import java.util.regex.Pattern;
 
 import com.microsoft.azure.oidc.filter.configuration.authentication.AuthenticationConfiguration;
+import com.microsoft.azure.oidc.filter.configuration.authentication.UriMatcher;
 
 final class SimpleAuthenticationConfiguration implements AuthenticationConfiguration {
+	private static final String FACES_RESOURCE_PATTERN = "/javax.faces.resource/*";
+
 	private List<String> exclusionUriPatternList;
 	private List<String> authorisationUriPatternList;
 	private Map<String, List<String>> authorisationRoleMap;
@@ -36,18 +39,21 @@ final class SimpleAuthenticationConfiguration implements AuthenticationConfigura
 	private List<Pattern> exclusionRegexPatternList;
 	private List<Pattern> authorisationRegexPatternList;
 
+	private UriMatcher uriMatcher;
+
 	public SimpleAuthenticationConfiguration(final List<String> exclusionUriPatternList,
 			final List<String> authorisationUriPatternList, final Map<String, List<String>> authorisationRoleMap) {
 		setExclusionUriPatternList(exclusionUriPatternList);
 		setAuthorisationUriPatternList(authorisationUriPatternList);
 		setAuthorisationRoleMap(authorisationRoleMap);
+		setUriMatcher();
 	}
 
 	private void setExclusionUriPatternList(List<String> exclusionUriPatternList) {
 		this.exclusionUriPatternList = exclusionUriPatternList;
 		exclusionRegexPatternList = new ArrayList<Pattern>();
 		exclusionRegexPatternList.add(Pattern.compile(
-				"/javax.faces.resource/*".replaceAll("([^a-zA-Z0-9\\*])", "\\\\$1").replaceAll("\\*", "(\\.\\*)")));
+				FACES_RESOURCE_PATTERN.replaceAll("([^a-zA-Z0-9\\*])", "\\\\$1").replaceAll("\\*", "(\\.\\*)")));
 		if (exclusionRegexPatternList == null) {
 			return;
 		}
@@ -91,6 +97,14 @@ final class SimpleAuthenticationConfiguration implements AuthenticationConfigura
 		this.authorisationRoleMap = authorisationRoleMap;
 	}
 
+	private void setUriMatcher() {
+		final List<String> exclusionPatternList = new ArrayList<String>();
+		exclusionPatternList.add(FACES_RESOURCE_PATTERN);
+		exclusionPatternList.addAll(exclusionUriPatternList);
+		uriMatcher = new SimpleUriMatcher(exclusionPatternList, exclusionRegexPatternList, authorisationUriPatternList,
+				authorisationRegexPatternList);
+	}
+
 	@Override
 	public List<String> getExclusionUriPatternList() {
 		return exclusionUriPatternList;
@@ -115,4 +129,9 @@ final class SimpleAuthenticationConfiguration implements AuthenticationConfigura
 	public Map<String, List<String>> getAuthorisationRoleMap() {
 		return authorisationRoleMap;
 	}
+
+	@Override
+	public UriMatcher getUriMatcher() {
+		return uriMatcher;
+	}
 }
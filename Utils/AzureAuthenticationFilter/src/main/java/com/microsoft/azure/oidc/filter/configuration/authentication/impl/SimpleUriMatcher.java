@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.filter.configuration.authentication.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.filter.configuration.authentication.UriMatch;
+import com.microsoft.azure.oidc.filter.configuration.authentication.UriMatcher;
+
+/**
+ * Matches a URI against every exclusion and authorisation pattern in one walk
+ * of a prefix trie built from the literal part of each pattern. Patterns of
+ * the form "literal*" and patterns without wildcards are decided by the trie
+ * alone; any other pattern is confirmed with its regular expression only when
+ * the walk reaches the end of its literal prefix. Results are memoized per URI.
+ */
+final class SimpleUriMatcher implements UriMatcher {
+	private static final int MAXIMUM_MEMO_SIZE = 4096;
+	private static final int[] NO_RULES = new int[0];
+
+	private final ConcurrentMap<String, UriMatch> memo = new ConcurrentHashMap<String, UriMatch>();
+	private final Node root;
+	private final String[] authorisationUriPatterns;
+	private final Pattern[] regexPatterns;
+	private final int exclusionCount;
+	private final UriMatch noMatch = new SimpleUriMatch(Boolean.FALSE, null);
+
+	public SimpleUriMatcher(final List<String> exclusionUriPatterns, final List<Pattern> exclusionRegexPatterns,
+			final List<String> authorisationUriPatterns, final List<Pattern> authorisationRegexPatterns) {
+		if (exclusionUriPatterns == null || exclusionRegexPatterns == null || authorisationUriPatterns == null
+				|| authorisationRegexPatterns == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		exclusionCount = exclusionUriPatterns.size();
+		this.authorisationUriPatterns = authorisationUriPatterns.toArray(new String[authorisationUriPatterns.size()]);
+		final List<Pattern> regexPatternList = new ArrayList<Pattern>(exclusionRegexPatterns);
+		regexPatternList.addAll(authorisationRegexPatterns);
+		regexPatterns = regexPatternList.toArray(new Pattern[regexPatternList.size()]);
+		final Builder builder = new Builder();
+		int rule = 0;
+		for (final String pattern : exclusionUriPatterns) {
+			builder.add(pattern.trim(), rule++);
+		}
+		for (final String pattern : authorisationUriPatterns) {
+			builder.add(pattern.trim(), rule++);
+		}
+		root = builder.build();
+	}
+
+	@Override
+	public UriMatch match(final String uri) {
+		if (uri == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final UriMatch entry = memo.get(uri);
+		if (entry != null) {
+			return entry;
+		}
+		final UriMatch result = find(uri);
+		if (memo.size() >= MAXIMUM_MEMO_SIZE) {
+			memo.clear();
+		}
+		memo.putIfAbsent(uri, result);
+		return result;
+	}
+
+	private UriMatch find(final String uri) {
+		final boolean isMultiline = hasLineTerminator(uri);
+		final Result result = new Result();
+		Node node = root;
+		for (int index = 0; node != null; index++) {
+			for (final int rule : node.prefixRules) {
+				if (!isMultiline || regexPatterns[rule].matcher(uri).matches()) {
+					result.add(rule);
+				}
+			}
+			for (final int rule : node.regexRules) {
+				if (result.isUseful(rule) && regexPatterns[rule].matcher(uri).matches()) {
+					result.add(rule);
+				}
+			}
+			if (index == uri.length()) {
+				for (final int rule : node.exactRules) {
+					result.add(rule);
+				}
+				break;
+			}
+			node = node.getChild(uri.charAt(index));
+		}
+		if (!result.excluded && result.authorisation == Integer.MAX_VALUE) {
+			return noMatch;
+		}
+		return new SimpleUriMatch(result.excluded, result.authorisation == Integer.MAX_VALUE ? null
+				: authorisationUriPatterns[result.authorisation - exclusionCount]);
+	}
+
+	private static boolean hasLineTerminator(final String uri) {
+		for (int index = 0; index < uri.length(); index++) {
+			final char c = uri.charAt(index);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Exclusion rules only need one match; authorisation rules keep the first
+	 * match in configuration order.
+	 */
+	private final class Result {
+		private boolean excluded;
+		private int authorisation = Integer.MAX_VALUE;
+
+		boolean isUseful(final int rule) {
+			return rule < exclusionCount ? !excluded : rule < authorisation;
+		}
+
+		void add(final int rule) {
+			if (rule < exclusionCount) {
+				excluded = true;
+			} else if (rule < authorisation) {
+				authorisation = rule;
+			}
+		}
+	}
+
+	private static final class Node {
+		private final char[] labels;
+		private final Node[] children;
+		private final int[] exactRules;
+		private final int[] prefixRules;
+		private final int[] regexRules;
+
+		Node(final char[] labels, final Node[] children, final int[] exactRules, final int[] prefixRules,
+				final int[] regexRules) {
+			this.labels = labels;
+			this.children = children;
+			this.exactRules = exactRules;
+			this.prefixRules = prefixRules;
+			this.regexRules = regexRules;
+		}
+
+		Node getChild(final char label) {
+			final int index = Arrays.binarySearch(labels, label);
+			return index < 0 ? null : children[index];
+		}
+	}
+
+	private static final class Builder {
+		private final Map<Character, Builder> children = new TreeMap<Character, Builder>();
+		private final List<Integer> exactRules = new ArrayList<Integer>();
+		private final List<Integer> prefixRules = new ArrayList<Integer>();
+		private final List<Integer> regexRules = new ArrayList<Integer>();
+
+		void add(final String pattern, final int rule) {
+			final int wildcard = pattern.indexOf('*');
+			final String literal = wildcard < 0 ? pattern : pattern.substring(0, wildcard);
+			Builder builder = this;
+			for (int index = 0; index < literal.length(); index++) {
+				final Character label = literal.charAt(index);
+				Builder child = builder.children.get(label);
+				if (child == null) {
+					child = new Builder();
+					builder.children.put(label, child);
+				}
+				builder = child;
+			}
+			if (wildcard < 0) {
+				builder.exactRules.add(rule);
+			} else if (wildcard == pattern.length() - 1) {
+				builder.prefixRules.add(rule);
+			} else {
+				builder.regexRules.add(rule);
+			}
+		}
+
+		Node build() {
+			final char[] labels = new char[children.size()];
+			final Node[] nodes = new Node[children.size()];
+			int index = 0;
+			for (final Map.Entry<Character, Builder> child : children.entrySet()) {
+				labels[index] = child.getKey();
+				nodes[index++] = child.getValue().build();
+			}
+			return new Node(labels, nodes, toArray(exactRules), toArray(prefixRules), toArray(regexRules));
+		}
+
+		private static int[] toArray(final List<Integer> rules) {
+			if (rules.isEmpty()) {
+				return NO_RULES;
+			}
+			final int[] result = new int[rules.size()];
+			for (int index = 0; index < result.length; index++) {
+				result[index] = rules.get(index);
+			}
+			return result;
+		}
+	}
+}
@@ -45,6 +45,10 @@ public interface AuthenticationHelper {
 
 	void doExceptionAction(final HttpServletResponse httpResponse, RuntimeException e) throws IOException;
 
+	Boolean isResolutionRequired(HttpServletRequest httpRequest, Token token);
+
+	void resolve(HttpServletRequest httpRequest, Token token);
+
 	String getTokenString(final HttpServletRequest httpRequest, final HttpServletResponse httpResponse,
 			final String tokenName);
 
@@ -52,8 +56,12 @@ public interface AuthenticationHelper {
 
 	Token getToken(String tokenString);
 
+	Token getVerifiedToken(String tokenString);
+
 	Boolean isValidToken(Token token);
 
+	Boolean isValidToken(String tokenString, Token token);
+
 	Boolean isActiveToken(Token token);
 
 	Boolean isAuthenticationError(String errorString);
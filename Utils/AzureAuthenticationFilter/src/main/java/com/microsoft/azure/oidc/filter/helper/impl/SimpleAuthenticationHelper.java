@@ -25,8 +25,6 @@ import java.io.IOException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -58,12 +56,17 @@ import com.microsoft.azure.oidc.filter.configuration.authentication.impl.SimpleA
 import com.microsoft.azure.oidc.filter.helper.AuthenticationHelper;
 import com.microsoft.azure.oidc.filter.request.impl.AuthenticationRequestWrapper;
 import com.microsoft.azure.oidc.filter.request.impl.SandboxRequestWrapper;
-import com.microsoft.azure.oidc.graph.GraphCache;
-import com.microsoft.azure.oidc.graph.impl.SimpleGraphCache;
+import com.microsoft.azure.oidc.graph.GraphCacheService;
+import com.microsoft.azure.oidc.graph.impl.SimpleGraphCacheService;
+import com.microsoft.azure.oidc.metrics.LatencyRecorder;
+import com.microsoft.azure.oidc.metrics.Stage;
+import com.microsoft.azure.oidc.metrics.impl.SimpleLatencyRecorder;
 import com.microsoft.azure.oidc.token.Token;
-import com.microsoft.azure.oidc.token.TokenParser;
+import com.microsoft.azure.oidc.token.TokenCache;
+import com.microsoft.azure.oidc.token.TokenParserService;
 import com.microsoft.azure.oidc.token.TokenValidator;
-import com.microsoft.azure.oidc.token.impl.SimpeTokenParser;
+import com.microsoft.azure.oidc.token.impl.SimpleTokenCache;
+import com.microsoft.azure.oidc.token.impl.SimpleTokenParserService;
 import com.microsoft.azure.oidc.token.impl.SimpleTokenValidator;
 
 public final class SimpleAuthenticationHelper implements AuthenticationHelper {
@@ -72,11 +75,15 @@ public final class SimpleAuthenticationHelper implements AuthenticationHelper {
 	private static final State NO_STATE = null;
 	private static final String[] ERROR_VALUES = { "access_denied", "interaction_required" };
 
-	private final TokenParser tokenParser = SimpeTokenParser.getInstance();
+	private final TokenParserService tokenParserService = SimpleTokenParserService.getInstance();
 
 	private final TokenValidator tokenValidator = SimpleTokenValidator.getInstance();
 
-	private final GraphCache graphCache = SimpleGraphCache.getInstance();
+	private final TokenCache tokenCache = SimpleTokenCache.getInstance();
+
+	private final LatencyRecorder latencyRecorder = SimpleLatencyRecorder.getInstance();
+
+	private final GraphCacheService graphCacheService = SimpleGraphCacheService.getInstance();
 
 	private final ApplicationSettingsLoader applicationSettingsLoader = SimpleApplicationSettingsLoader.getInstance();
 
@@ -140,6 +147,56 @@ public final class SimpleAuthenticationHelper implements AuthenticationHelper {
 		httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN, "Error in Authentication");
 	}
 
+	@Override
+	public Boolean isResolutionRequired(final HttpServletRequest httpRequest, final Token token) {
+		if (httpRequest == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		if (!configurationCache.isLoaded()) {
+			return Boolean.TRUE;
+		}
+		if (token == null) {
+			return Boolean.FALSE;
+		}
+		final List<String> roleNames = getAuthorisationRoles(httpRequest);
+		if (roleNames == null) {
+			return Boolean.FALSE;
+		}
+		for (final String roleName : roleNames) {
+			final Boolean isUserInRole = graphCacheService.get().peekUserInRole(token.getUserID().getValue(),
+					roleName);
+			if (isUserInRole == null) {
+				return Boolean.TRUE;
+			}
+			if (isUserInRole) {
+				return Boolean.FALSE;
+			}
+		}
+		return Boolean.FALSE;
+	}
+
+	@Override
+	public void resolve(final HttpServletRequest httpRequest, final Token token) {
+		if (httpRequest == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final Configuration configuration = token == null ? configurationCache.load()
+				: configurationCache.load(token.getKeyName());
+		if (configuration == null || token == null || !isValidToken(token) || !isActiveToken(token)) {
+			return;
+		}
+		final List<String> roleNames = getAuthorisationRoles(httpRequest);
+		if (roleNames == null) {
+			return;
+		}
+		for (final String roleName : roleNames) {
+			final Boolean isUserInRole = graphCacheService.get().isUserInRole(token.getUserID().getValue(), roleName);
+			if (isUserInRole == null || isUserInRole) {
+				return;
+			}
+		}
+	}
+
 	@Override
 	public String getTokenString(final HttpServletRequest httpRequest, final HttpServletResponse httpResponse,
 			final String tokenName) {
@@ -169,12 +226,45 @@ public final class SimpleAuthenticationHelper implements AuthenticationHelper {
 
 	@Override
 	public Token getToken(final String tokenString) {
-		return tokenParser.getToken(tokenString);
+		final long start = latencyRecorder.start();
+		try {
+			return tokenParserService.get().getToken(tokenString);
+		} catch (GeneralException e) {
+			tokenCache.putRejectedToken(tokenString);
+			throw e;
+		} catch (RuntimeException e) {
+			tokenCache.putRejectedToken(tokenString);
+			throw new GeneralException("Token Failed Parsing", e);
+		} finally {
+			latencyRecorder.stop(Stage.TOKEN_PARSE, start);
+		}
+	}
+
+	@Override
+	public Token getVerifiedToken(final String tokenString) {
+		return tokenCache.getToken(tokenString);
 	}
 
 	@Override
 	public Boolean isValidToken(final Token token) {
-		return tokenValidator.validateCommon(token);
+		final long start = latencyRecorder.start();
+		try {
+			return tokenValidator.validateCommon(token);
+		} finally {
+			latencyRecorder.stop(Stage.TOKEN_VALIDATION, start);
+		}
+	}
+
+	@Override
+	public Boolean isValidToken(final String tokenString, final Token token) {
+		final Boolean isValidToken = isValidToken(token);
+		if (isValidToken) {
+			tokenCache.putToken(tokenString, token);
+		} else if (tokenValidator.validateIssuedAt(token) && tokenValidator.validateNotBefore(token)) {
+			// a token that is not valid yet may be by the next request, so only other failures are remembered
+			tokenCache.putRejectedToken(tokenString);
+		}
+		return isValidToken;
 	}
 
 	@Override
@@ -218,52 +308,41 @@ public final class SimpleAuthenticationHelper implements AuthenticationHelper {
 	}
 
 	private Boolean isExcluded(final HttpServletRequest httpRequest) {
-		String uriString = null;
-		final Boolean isRootContext = "".equals(httpRequest.getContextPath());
-		if (isRootContext) {
-			uriString = httpRequest.getRequestURI();
-		} else {
-			final int length = httpRequest.getRequestURI().length();
-			uriString = httpRequest.getRequestURI().substring(length);
-		}
-		for (final Pattern pattern : authenticationConfigurationService.get().getExclusionRegexPatternList()) {
-			final Matcher matcher = pattern.matcher(uriString);
-			final Boolean isMatchFound = matcher.matches();
-			if (isMatchFound) {
+		return authenticationConfigurationService.get().getUriMatcher().match(getUriString(httpRequest))
+				.isExcluded();
+	}
+
+	private Boolean isAuthorised(final HttpServletRequest httpRequest, final Token token) {
+		final List<String> roleNames = getAuthorisationRoles(httpRequest);
+		if (roleNames == null) {
+			return Boolean.TRUE;
+		}
+		final HttpServletRequest authRequest = getAuthenticationWrapper(httpRequest, token);
+		for (final String roleName : roleNames) {
+			final Boolean isUserInRole = authRequest.isUserInRole(roleName);
+			if (isUserInRole) {
 				return Boolean.TRUE;
 			}
 		}
 		return Boolean.FALSE;
 	}
 
-	private Boolean isAuthorised(final HttpServletRequest httpRequest, final Token token) {
-		String uriString = null;
+	private List<String> getAuthorisationRoles(final HttpServletRequest httpRequest) {
+		final String urlPattern = authenticationConfigurationService.get().getUriMatcher()
+				.match(getUriString(httpRequest)).getAuthorisationUriPattern();
+		if (urlPattern == null) {
+			return null;
+		}
+		return authenticationConfigurationService.get().getAuthorisationRoleMap().get(urlPattern);
+	}
+
+	private String getUriString(final HttpServletRequest httpRequest) {
 		final Boolean isRootContext = "".equals(httpRequest.getContextPath());
 		if (isRootContext) {
-			uriString = httpRequest.getRequestURI();
-		} else {
-			final int length = httpRequest.getRequestURI().length();
-			uriString = httpRequest.getRequestURI().substring(length);
-		}
-		int index = 0;
-		for (final String urlPattern : authenticationConfigurationService.get().getAuthorisationUriPatternList()) {
-			final Pattern pattern = authenticationConfigurationService.get().getAuthorisationRegexPatternList()
-					.get(index++);
-			final Matcher matcher = pattern.matcher(uriString);
-			final Boolean isMatchFound = matcher.matches();
-			if (isMatchFound) {
-				final HttpServletRequest authRequest = getAuthenticationWrapper(httpRequest, token);
-				for (final String roleName : authenticationConfigurationService.get().getAuthorisationRoleMap()
-						.get(urlPattern)) {
-					final Boolean isUserInRole = authRequest.isUserInRole(roleName);
-					if (isUserInRole) {
-						return Boolean.TRUE;
-					}
-				}
-				return Boolean.FALSE;
-			}
+			return httpRequest.getRequestURI();
 		}
-		return Boolean.TRUE;
+		final int length = httpRequest.getRequestURI().length();
+		return httpRequest.getRequestURI().substring(length);
 	}
 
 	private String addCookie(final HttpServletRequest httpRequest, final HttpServletResponse httpResponse,
@@ -283,14 +362,14 @@ public final class SimpleAuthenticationHelper implements AuthenticationHelper {
 	}
 
 	private HttpServletRequest getSandboxWrapper(final HttpServletRequest httpRequest, final Token token) {
-		return new SandboxRequestWrapper(httpRequest, token, graphCache);
+		return new SandboxRequestWrapper(httpRequest, token, graphCacheService.get());
 	}
 
 	private HttpServletRequest getAuthenticationWrapper(final HttpServletRequest httpRequest, final Token token) {
 		if (httpRequest == null) {
 			throw new PreconditionException("Required parameter is null");
 		}
-		return new AuthenticationRequestWrapper(httpRequest, token, graphCache);
+		return new AuthenticationRequestWrapper(httpRequest, token, graphCacheService.get());
 	}
 
 	private String getAuthenticationEndPoint(final HttpServletRequest httpRequest, final Token token,
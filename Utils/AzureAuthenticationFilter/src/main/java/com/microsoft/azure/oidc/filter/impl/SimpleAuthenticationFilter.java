@@ -21,8 +21,16 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.filter.impl;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -32,9 +40,15 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
 import com.microsoft.azure.oidc.concurrent.cache.impl.SimpleConcurrentCacheService;
-import com.microsoft.azure.oidc.configuration.Configuration;
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.concurrent.executor.impl.SimpleTaskExecutor;
+import com.microsoft.azure.oidc.configuration.ConfigurationCache;
+import com.microsoft.azure.oidc.configuration.impl.SimpleConfigurationCache;
 import com.microsoft.azure.oidc.exception.GeneralException;
 import com.microsoft.azure.oidc.exception.PreconditionException;
 import com.microsoft.azure.oidc.filter.configuration.algorithm.AlgorithmConfigurationService;
@@ -43,11 +57,45 @@ import com.microsoft.azure.oidc.filter.configuration.authentication.Authenticati
 import com.microsoft.azure.oidc.filter.configuration.authentication.impl.SimpleAuthenticationConfigurationService;
 import com.microsoft.azure.oidc.filter.helper.AuthenticationHelper;
 import com.microsoft.azure.oidc.filter.helper.impl.SimpleAuthenticationHelper;
+import com.microsoft.azure.oidc.future.FutureHelper;
+import com.microsoft.azure.oidc.future.impl.SimpleFutureHelper;
+import com.microsoft.azure.oidc.graph.GraphCacheService;
+import com.microsoft.azure.oidc.graph.GraphGuard;
+import com.microsoft.azure.oidc.graph.impl.SimpleGraphCacheService;
+import com.microsoft.azure.oidc.graph.impl.SimpleGraphGuard;
+import com.microsoft.azure.oidc.metrics.LatencyRecorder;
+import com.microsoft.azure.oidc.metrics.Stage;
+import com.microsoft.azure.oidc.metrics.impl.SimpleLatencyRecorder;
+import com.microsoft.azure.oidc.snapshot.CacheSnapshotService;
+import com.microsoft.azure.oidc.snapshot.impl.SimpleCacheSnapshotService;
 import com.microsoft.azure.oidc.token.Token;
+import com.microsoft.azure.oidc.token.TokenCache;
+import com.microsoft.azure.oidc.token.TokenParserService;
+import com.microsoft.azure.oidc.token.impl.SimpleTokenCache;
+import com.microsoft.azure.oidc.token.impl.SimpleTokenParserService;
 
 public final class SimpleAuthenticationFilter implements Filter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleAuthenticationFilter.class);
 	private static final String ALGORITHM_CONFIGURATION = "algorithmConfiguration";
 	private static final String AUTHENTICATION_CONFIGURATION = "authenticationConfiguration";
+	private static final String TOKEN_PARSER = "tokenParser";
+	private static final String GRAPH_MEMBERSHIP = "graphMembership";
+	private static final String EXECUTOR_POOL_SIZE = "executorPoolSize";
+	private static final String EXECUTOR_QUEUE_SIZE = "executorQueueSize";
+	private static final String EXECUTOR_TIMEOUT = "executorTimeout";
+	private static final String ASYNC_MODE = "asyncMode";
+	private static final String ASYNC_TIMEOUT = "asyncTimeout";
+	private static final String ASYNC_POOL_SIZE = "asyncPoolSize";
+	private static final String ASYNC_QUEUE_SIZE = "asyncQueueSize";
+	private static final String TOKEN_CACHE_SIZE = "tokenCacheSize";
+	private static final String LATENCY_METRICS = "latencyMetrics";
+	private static final String ROLE_GRACE_PERIOD = "roleGracePeriod";
+	private static final String GRAPH_CONCURRENCY = "graphConcurrency";
+	private static final String GRAPH_WAIT_TIMEOUT = "graphWaitTimeout";
+	private static final String GRAPH_FAILURE_THRESHOLD = "graphFailureThreshold";
+	private static final String GRAPH_OPEN_INTERVAL = "graphOpenInterval";
+	private static final String SNAPSHOT_FILE = "snapshotFile";
+	private static final String SNAPSHOT_INTERVAL = "snapshotInterval";
 	private static final String TOKEN_NAME = "id_token";
 	private static final String ERROR_NAME = "error";
 	private static final String NO_ERROR_STRING = null;
@@ -64,8 +112,36 @@ public final class SimpleAuthenticationFilter implements Filter {
 
 	private final ConcurrentCacheService concurrentCacheService = SimpleConcurrentCacheService.getInstance();
 
+	private final TokenParserService tokenParserService = SimpleTokenParserService.getInstance();
+
+	private final ConfigurationCache configurationCache = SimpleConfigurationCache.getInstance();
+
+	private final GraphCacheService graphCacheService = SimpleGraphCacheService.getInstance();
+
+	private final GraphGuard graphGuard = SimpleGraphGuard.getInstance();
+
+	private final TaskExecutor taskExecutor = SimpleTaskExecutor.getInstance();
+
+	private final TaskExecutor dispatchExecutor = SimpleTaskExecutor.getDispatchInstance();
+
+	private final FutureHelper futureHelper = SimpleFutureHelper.getInstance();
+
+	private final TokenCache tokenCache = SimpleTokenCache.getInstance();
+
+	private final LatencyRecorder latencyRecorder = SimpleLatencyRecorder.getInstance();
+
+	private final CacheSnapshotService cacheSnapshotService = SimpleCacheSnapshotService.getInstance();
+
+	private volatile Boolean isAsyncMode = Boolean.FALSE;
+
+	private volatile Long asyncTimeout;
+
 	@Override
 	public void destroy() {
+		cacheSnapshotService.shutdown();
+		latencyRecorder.shutdown();
+		dispatchExecutor.shutdownNow();
+		taskExecutor.shutdownNow();
 		concurrentCacheService.shutdownNow();
 	}
 
@@ -74,44 +150,180 @@ public final class SimpleAuthenticationFilter implements Filter {
 			throws IOException, ServletException {
 		final HttpServletRequest httpRequest = (HttpServletRequest) request;
 		final HttpServletResponse httpResponse = (HttpServletResponse) response;
+		final long start = latencyRecorder.start();
 		try {
 			final String tokenString = getHelper().getTokenString(httpRequest, httpResponse, TOKEN_NAME);
 			final String errorString = getHelper().getErrorString(httpRequest, ERROR_NAME);
 			final Boolean isAuthenticationError = getHelper().isAuthenticationError(errorString);
 			final Boolean isUnauthenticated = tokenString == NO_TOKEN_STRING;
 			if (isUnauthenticated || isAuthenticationError) {
+				if (isSuspensionRequired(httpRequest, NO_TOKEN)) {
+					suspend(httpRequest, NO_TOKEN);
+					return;
+				}
 				getHelper().doUnauthenticatedAction(chain, httpRequest, httpResponse, NO_TOKEN, isAuthenticationError);
 				return;
 			}
-			final Token token = getHelper().getToken(tokenString);
-			final Boolean isInvalidToken = !getHelper().isValidToken(token);
-			if (isInvalidToken) {
-				getHelper().doInvalidTokenAction(httpResponse);
-				return;
+			final Token verifiedToken = getHelper().getVerifiedToken(tokenString);
+			final Token token = verifiedToken == NO_TOKEN ? getHelper().getToken(tokenString) : verifiedToken;
+			if (verifiedToken == NO_TOKEN) {
+				if (isSuspensionRequired(httpRequest, NO_TOKEN)) {
+					suspend(httpRequest, token);
+					return;
+				}
+				final Boolean isInvalidToken = !getHelper().isValidToken(tokenString, token);
+				if (isInvalidToken) {
+					getHelper().doInvalidTokenAction(httpResponse);
+					return;
+				}
 			}
 			final Boolean isActiveToken = getHelper().isActiveToken(token);
 			if (isActiveToken) {
+				if (isSuspensionRequired(httpRequest, token)) {
+					suspend(httpRequest, token);
+					return;
+				}
 				getHelper().doActiveTokenAction(chain, httpRequest, httpResponse, token);
 				return;
 			}
 			getHelper().doUnauthenticatedAction(chain, httpRequest, httpResponse, token, isAuthenticationError);
 		} catch (GeneralException | PreconditionException e) {
 			getHelper().doExceptionAction(httpResponse, e);
+		} finally {
+			latencyRecorder.stop(Stage.FILTER, start);
 		}
 	}
 
 	@Override
 	public void init(final FilterConfig filterConfig) throws ServletException {
 		final String securityCacheSizeString = filterConfig.getInitParameter("securityCacheSize");
+		final Long roleGracePeriod = getParameter(filterConfig, ROLE_GRACE_PERIOD, 0L, 0L);
 		if (securityCacheSizeString == null) {
-			concurrentCacheService.createCache(Boolean.class, "roleCache", 30L, 1000L);
+			concurrentCacheService.createCache(Boolean.class, "roleCache", 30L, roleGracePeriod, TimeUnit.MINUTES,
+					1000L);
 		} else {
-			concurrentCacheService.createCache(Boolean.class, "roleCache", 30L,
+			concurrentCacheService.createCache(Boolean.class, "roleCache", 30L, roleGracePeriod, TimeUnit.MINUTES,
 					Long.parseLong(securityCacheSizeString));
 		}
-		concurrentCacheService.createCache(Configuration.class, "configurationCache", 60L, 1L);
+		taskExecutor.initialise(getParameter(filterConfig, EXECUTOR_POOL_SIZE, 8L).intValue(),
+				getParameter(filterConfig, EXECUTOR_QUEUE_SIZE, 64L).intValue());
+		futureHelper.initialise(getParameter(filterConfig, EXECUTOR_TIMEOUT, 30000L), TimeUnit.MILLISECONDS);
+		graphGuard.initialise(getParameter(filterConfig, GRAPH_CONCURRENCY, 4L).intValue(),
+				getParameter(filterConfig, GRAPH_WAIT_TIMEOUT, 5000L),
+				getParameter(filterConfig, GRAPH_FAILURE_THRESHOLD, 5L).intValue(),
+				getParameter(filterConfig, GRAPH_OPEN_INTERVAL, 30000L), TimeUnit.MILLISECONDS);
+		configurationCache.initialise(60L, TimeUnit.MINUTES);
+		concurrentCacheService.createCache(String.class, "groupCache", 60L, 1000L);
+		tokenCache.initialise(60L, TimeUnit.MINUTES, getParameter(filterConfig, TOKEN_CACHE_SIZE, 1000L));
+		final String snapshotFile = filterConfig.getInitParameter(SNAPSHOT_FILE);
+		if (snapshotFile != null) {
+			cacheSnapshotService.initialise(new File(snapshotFile.trim()),
+					getParameter(filterConfig, SNAPSHOT_INTERVAL, 60000L), TimeUnit.MILLISECONDS);
+		}
 		authenticationConfigurationService.initialise(filterConfig, AUTHENTICATION_CONFIGURATION);
 		algorithmConfigurationService.initialise(filterConfig, ALGORITHM_CONFIGURATION);
+		tokenParserService.initialise(filterConfig, TOKEN_PARSER);
+		graphCacheService.initialise(filterConfig, GRAPH_MEMBERSHIP);
+		isAsyncMode = Boolean.parseBoolean(filterConfig.getInitParameter(ASYNC_MODE));
+		asyncTimeout = getParameter(filterConfig, ASYNC_TIMEOUT, 30000L);
+		if (isAsyncMode) {
+			dispatchExecutor.initialise(getParameter(filterConfig, ASYNC_POOL_SIZE, 8L).intValue(),
+					getParameter(filterConfig, ASYNC_QUEUE_SIZE, 64L).intValue());
+		}
+		latencyRecorder.initialise(Boolean.parseBoolean(filterConfig.getInitParameter(LATENCY_METRICS)));
+	}
+
+	/**
+	 * In async mode a first dispatch that would need a remote lookup is
+	 * suspended and resolved on the dispatch pool, which waits on the shared
+	 * pool but never runs its work. The ASYNC re-dispatch then runs against warm
+	 * caches.
+	 */
+	private Boolean isSuspensionRequired(final HttpServletRequest httpRequest, final Token token) {
+		return isAsyncMode && httpRequest.isAsyncSupported()
+				&& httpRequest.getDispatcherType() == DispatcherType.REQUEST
+				&& getHelper().isResolutionRequired(httpRequest, token);
+	}
+
+	private void suspend(final HttpServletRequest httpRequest, final Token token) {
+		final AsyncContext asyncContext = httpRequest.startAsync();
+		final AtomicBoolean isResumed = new AtomicBoolean();
+		asyncContext.setTimeout(asyncTimeout);
+		asyncContext.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(final AsyncEvent event) throws IOException {
+				if (isResumed.compareAndSet(false, true)) {
+					LOGGER.error("Timed out resolving authentication");
+					doUnavailableAction(asyncContext);
+				}
+			}
+
+			@Override
+			public void onStartAsync(final AsyncEvent event) throws IOException {
+			}
+
+			@Override
+			public void onError(final AsyncEvent event) throws IOException {
+			}
+
+			@Override
+			public void onComplete(final AsyncEvent event) throws IOException {
+			}
+		});
+		try {
+			dispatchExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						getHelper().resolve(httpRequest, token);
+					} catch (RuntimeException e) {
+						LOGGER.error(e.getMessage(), e);
+					}
+					if (isResumed.compareAndSet(false, true)) {
+						asyncContext.dispatch();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			if (isResumed.compareAndSet(false, true)) {
+				LOGGER.error("Executor saturated, rejecting request");
+				doUnavailableAction(asyncContext);
+			}
+		}
+	}
+
+	private void doUnavailableAction(final AsyncContext asyncContext) {
+		try {
+			((HttpServletResponse) asyncContext.getResponse()).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+					"Authentication temporarily unavailable");
+		} catch (IOException | IllegalStateException e) {
+			LOGGER.error(e.getMessage(), e);
+		} finally {
+			asyncContext.complete();
+		}
+	}
+
+	private Long getParameter(final FilterConfig filterConfig, final String parameterName, final Long defaultValue)
+			throws ServletException {
+		return getParameter(filterConfig, parameterName, defaultValue, 1L);
+	}
+
+	private Long getParameter(final FilterConfig filterConfig, final String parameterName, final Long defaultValue,
+			final Long minimumValue) throws ServletException {
+		final String parameterString = filterConfig.getInitParameter(parameterName);
+		if (parameterString == null) {
+			return defaultValue;
+		}
+		try {
+			final Long result = Long.parseLong(parameterString.trim());
+			if (result < minimumValue) {
+				throw new ServletException(
+						String.format("%s must be at least %d: %s", parameterName, minimumValue, parameterString));
+			}
+			return result;
+		} catch (NumberFormatException e) {
+			throw new ServletException(String.format("%s is not a number: %s", parameterName, parameterString), e);
+		}
 	}
 
 	private AuthenticationHelper getHelper() {
@@ -22,9 +22,14 @@
 package com.microsoft.azure.oidc.future;
 
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public interface FutureHelper {
 
+	void initialise(Long timeout, TimeUnit timeUnit);
+
 	<T> T getResult(Future<T> future);
 
+	Integer getTimeout();
+
 }
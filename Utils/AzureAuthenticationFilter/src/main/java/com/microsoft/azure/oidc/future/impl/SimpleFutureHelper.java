@@ -21,8 +21,12 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.future.impl;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,25 +37,52 @@ import com.microsoft.azure.oidc.future.FutureHelper;
 public class SimpleFutureHelper implements FutureHelper {
 	private static final FutureHelper INSTANCE = new SimpleFutureHelper();
 	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleFutureHelper.class);
+	private static final long DEFAULT_TIMEOUT = 30000L;
+
+	private volatile long timeout = DEFAULT_TIMEOUT;
+
+	@Override
+	public void initialise(final Long timeout, final TimeUnit timeUnit) {
+		if (timeout == null || timeUnit == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		this.timeout = timeUnit.toMillis(timeout);
+	}
 
 	@Override
-	public <T> T getResult(Future<T> future) {
+	public <T> T getResult(final Future<T> future) {
 		if (future == null) {
 			throw new PreconditionException("Required parameter is null");
 		}
 		try {
-			while (!future.isDone() && !future.isCancelled()) {
-				Thread.sleep(10);
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			LOGGER.error("Timed out after {} ms waiting for result", timeout);
+			future.cancel(true);
+		} catch (CancellationException e) {
+			LOGGER.error("Task was cancelled");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RejectedExecutionException) {
+				LOGGER.error("Task was rejected");
+				return null;
 			}
-			if (!future.isCancelled()) {
-				return future.get();
-			}
-		} catch (InterruptedException | ExecutionException e) {
+			LOGGER.error(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			LOGGER.error(e.getMessage(), e);
 		}
 		return null;
 	}
 
+	/**
+	 * Connect and read timeout for outbound connections, so a hung end-point
+	 * cannot hold an executor thread longer than a caller waits for it.
+	 */
+	@Override
+	public Integer getTimeout() {
+		return (int) Math.min(timeout, Integer.MAX_VALUE);
+	}
+
 	public static FutureHelper getInstance() {
 		return INSTANCE;
 	}
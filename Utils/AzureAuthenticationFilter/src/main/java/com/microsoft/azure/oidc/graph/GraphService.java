@@ -21,10 +21,18 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.graph;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.Future;
 
 public interface GraphService {
 
+	Boolean isUserInRole(String userID, String role);
+
+	Map<String, Boolean> isUserInRoles(String userID, Collection<String> roles);
+
 	Future<Boolean> isUserInRoleAsync(String userID, String role);
+
+	Future<Map<String, Boolean>> isUserInRolesAsync(String userID, Collection<String> roles);
 	
 }
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.graph.impl;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.cache.impl.SimpleConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.concurrent.executor.impl.SimpleTaskExecutor;
+import com.microsoft.azure.oidc.filter.configuration.authentication.AuthenticationConfigurationService;
+import com.microsoft.azure.oidc.filter.configuration.authentication.impl.SimpleAuthenticationConfigurationService;
+import com.microsoft.azure.oidc.future.FutureHelper;
+import com.microsoft.azure.oidc.future.impl.SimpleFutureHelper;
+import com.microsoft.azure.oidc.graph.GraphCache;
+import com.microsoft.azure.oidc.graph.GraphService;
+import com.microsoft.azure.oidc.metrics.LatencyRecorder;
+import com.microsoft.azure.oidc.metrics.Stage;
+import com.microsoft.azure.oidc.metrics.impl.SimpleLatencyRecorder;
+
+/**
+ * Resolves every configured role for a user from a single group membership
+ * call, so later role checks for the same user are answered from the cache.
+ * Within the role cache's grace period an expired answer is served while the
+ * user's roles are re-checked in the background.
+ */
+public final class BatchedGraphCache implements GraphCache {
+	private static final GraphCache INSTANCE = new BatchedGraphCache();
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchedGraphCache.class);
+
+	private final GraphService graphService = GuardedGraphService.getInstance();
+
+	private final TaskExecutor taskExecutor = SimpleTaskExecutor.getInstance();
+
+	private final ConcurrentMap<String, Boolean> revalidationMap = new ConcurrentHashMap<String, Boolean>();
+
+	private final FutureHelper futureHelper = SimpleFutureHelper.getInstance();
+
+	private final ConcurrentCacheService concurrentCacheService = SimpleConcurrentCacheService.getInstance();
+
+	private final LatencyRecorder latencyRecorder = SimpleLatencyRecorder.getInstance();
+
+	private final AuthenticationConfigurationService authenticationConfigurationService = SimpleAuthenticationConfigurationService
+			.getInstance();
+
+	@Override
+	public Boolean isUserInRole(final String userID, final String role) {
+		final long start = latencyRecorder.start();
+		try {
+			return loadUserInRole(userID, role);
+		} finally {
+			latencyRecorder.stop(Stage.ROLE_CHECK, start);
+		}
+	}
+
+	private Boolean loadUserInRole(final String userID, final String role) {
+		final ConcurrentCache<String, Boolean> roleCache = concurrentCacheService.getCache(Boolean.class, "roleCache");
+		final String key = String.format("%s:%s", userID, role);
+		final Boolean entry = roleCache.get(key);
+		if (entry != null) {
+			return entry;
+		}
+		final Boolean staleEntry = roleCache.getStale(key);
+		if (staleEntry != null) {
+			revalidate(roleCache, userID, getRoles(role));
+			return staleEntry;
+		}
+		final Map<String, Boolean> result = futureHelper
+				.getResult(graphService.isUserInRolesAsync(userID, getRoles(role)));
+		if (result == null) {
+			return null;
+		}
+		for (final Map.Entry<String, Boolean> roleEntry : result.entrySet()) {
+			roleCache.putIfAbsent(String.format("%s:%s", userID, roleEntry.getKey()), roleEntry.getValue());
+		}
+		return result.get(role);
+	}
+
+	private Set<String> getRoles(final String role) {
+		final Set<String> roles = new LinkedHashSet<String>();
+		roles.add(role);
+		for (final List<String> roleList : authenticationConfigurationService.get().getAuthorisationRoleMap()
+				.values()) {
+			roles.addAll(roleList);
+		}
+		return roles;
+	}
+
+	private void revalidate(final ConcurrentCache<String, Boolean> roleCache, final String userID,
+			final Set<String> roles) {
+		if (revalidationMap.putIfAbsent(userID, Boolean.TRUE) != null) {
+			return;
+		}
+		try {
+			taskExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final Map<String, Boolean> result = graphService.isUserInRoles(userID, roles);
+						if (result == null) {
+							return;
+						}
+						for (final Map.Entry<String, Boolean> roleEntry : result.entrySet()) {
+							roleCache.put(String.format("%s:%s", userID, roleEntry.getKey()), roleEntry.getValue());
+						}
+					} catch (RuntimeException e) {
+						LOGGER.error(e.getMessage(), e);
+					} finally {
+						revalidationMap.remove(userID);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			revalidationMap.remove(userID);
+			LOGGER.warn("Executor saturated, serving expired roles for {}", userID);
+		}
+	}
+
+	@Override
+	public Boolean peekUserInRole(final String userID, final String role) {
+		final ConcurrentCache<String, Boolean> roleCache = concurrentCacheService.getCache(Boolean.class, "roleCache");
+		final String key = String.format("%s:%s", userID, role);
+		final Boolean entry = roleCache.get(key);
+		return entry == null ? roleCache.getStale(key) : entry;
+	}
+
+	public static GraphCache getInstance() {
+		return INSTANCE;
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.graph.impl;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.concurrent.executor.impl.SimpleTaskExecutor;
+import com.microsoft.azure.oidc.graph.GraphGuard;
+import com.microsoft.azure.oidc.graph.GraphService;
+
+/**
+ * Runs Graph API calls through the {@link GraphGuard}. Asynchronous calls wait
+ * for their slot on the executor thread, never on the caller's, and a refused
+ * call fails the same way as a call the executor has no room for.
+ */
+public final class GuardedGraphService implements GraphService {
+	private static final GraphService INSTANCE = new GuardedGraphService();
+
+	private final GraphService graphService = SimpleGraphService.getInstance();
+
+	private final GraphGuard graphGuard = SimpleGraphGuard.getInstance();
+
+	private final TaskExecutor taskExecutor = SimpleTaskExecutor.getInstance();
+
+	@Override
+	public Boolean isUserInRole(final String userID, final String role) {
+		if (!graphGuard.tryAcquire()) {
+			return null;
+		}
+		Boolean result = null;
+		try {
+			result = graphService.isUserInRole(userID, role);
+			return result;
+		} finally {
+			graphGuard.release(result != null);
+		}
+	}
+
+	@Override
+	public Map<String, Boolean> isUserInRoles(final String userID, final Collection<String> roles) {
+		if (!graphGuard.tryAcquire()) {
+			return null;
+		}
+		Map<String, Boolean> result = null;
+		try {
+			result = graphService.isUserInRoles(userID, roles);
+			return result;
+		} finally {
+			graphGuard.release(result != null);
+		}
+	}
+
+	@Override
+	public Future<Boolean> isUserInRoleAsync(final String userID, final String role) {
+		return submit(new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				return graphService.isUserInRole(userID, role);
+			}
+		});
+	}
+
+	@Override
+	public Future<Map<String, Boolean>> isUserInRolesAsync(final String userID, final Collection<String> roles) {
+		return submit(new Callable<Map<String, Boolean>>() {
+			public Map<String, Boolean> call() throws Exception {
+				return graphService.isUserInRoles(userID, roles);
+			}
+		});
+	}
+
+	private <T> Future<T> submit(final Callable<T> task) {
+		final FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+			public T call() throws Exception {
+				if (!graphGuard.tryAcquire()) {
+					throw new RejectedExecutionException("Graph API call refused");
+				}
+				T result = null;
+				try {
+					result = task.call();
+					return result;
+				} finally {
+					graphGuard.release(result != null);
+				}
+			}
+		});
+		try {
+			taskExecutor.execute(future);
+			return future;
+		} catch (RejectedExecutionException e) {
+			return getRejected(e);
+		}
+	}
+
+	private <T> Future<T> getRejected(final RejectedExecutionException e) {
+		final FutureTask<T> rejected = new FutureTask<T>(new Callable<T>() {
+			public T call() throws Exception {
+				throw e;
+			}
+		});
+		rejected.run();
+		return rejected;
+	}
+
+	public static GraphService getInstance() {
+		return INSTANCE;
+	}
+}
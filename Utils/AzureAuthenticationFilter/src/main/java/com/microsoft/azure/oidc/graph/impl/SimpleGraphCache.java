@@ -21,37 +21,111 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.graph.impl;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
 import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
 import com.microsoft.azure.oidc.concurrent.cache.impl.SimpleConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.concurrent.executor.impl.SimpleTaskExecutor;
 import com.microsoft.azure.oidc.future.FutureHelper;
 import com.microsoft.azure.oidc.future.impl.SimpleFutureHelper;
 import com.microsoft.azure.oidc.graph.GraphCache;
 import com.microsoft.azure.oidc.graph.GraphService;
+import com.microsoft.azure.oidc.metrics.LatencyRecorder;
+import com.microsoft.azure.oidc.metrics.Stage;
+import com.microsoft.azure.oidc.metrics.impl.SimpleLatencyRecorder;
 
+/**
+ * Checks one role per Graph API call. Within the role cache's grace period an
+ * expired answer is served while it is re-checked in the background.
+ */
 public class SimpleGraphCache implements GraphCache {
 	private static final GraphCache INSTANCE = new SimpleGraphCache();
+	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleGraphCache.class);
+
+	private final GraphService springGraphService = GuardedGraphService.getInstance();
 
-	private final GraphService springGraphService = SimpleGraphService.getInstance();
+	private final TaskExecutor taskExecutor = SimpleTaskExecutor.getInstance();
+
+	private final ConcurrentMap<String, Boolean> revalidationMap = new ConcurrentHashMap<String, Boolean>();
 
 	private final FutureHelper futureHelper = SimpleFutureHelper.getInstance();
 
 	private final ConcurrentCacheService concurrentCacheService = SimpleConcurrentCacheService.getInstance();
 
+	private final LatencyRecorder latencyRecorder = SimpleLatencyRecorder.getInstance();
+
 	@Override
-	public Boolean isUserInRole(String userID, String role) {
+	public Boolean isUserInRole(final String userID, final String role) {
+		final long start = latencyRecorder.start();
+		try {
+			return loadUserInRole(userID, role);
+		} finally {
+			latencyRecorder.stop(Stage.ROLE_CHECK, start);
+		}
+	}
+
+	private Boolean loadUserInRole(final String userID, final String role) {
 		final String key = String.format("%s:%s", userID, role);
-		final Boolean entry = concurrentCacheService.getCache(Boolean.class, "roleCache").get(key);
+		final ConcurrentCache<String, Boolean> roleCache = concurrentCacheService.getCache(Boolean.class, "roleCache");
+		final Boolean entry = roleCache.get(key);
 		if (entry != null) {
 			return entry;
 		}
+		final Boolean staleEntry = roleCache.getStale(key);
+		if (staleEntry != null) {
+			revalidate(roleCache, key, userID, role);
+			return staleEntry;
+		}
 		final Boolean result = futureHelper.getResult(springGraphService.isUserInRoleAsync(userID, role));
 		if (result == null) {
 			return result;
 		}
-		concurrentCacheService.getCache(Boolean.class, "roleCache").putIfAbsent(key, result);
+		roleCache.putIfAbsent(key, result);
 		return result;
 	}
 
+	private void revalidate(final ConcurrentCache<String, Boolean> roleCache, final String key, final String userID,
+			final String role) {
+		if (revalidationMap.putIfAbsent(key, Boolean.TRUE) != null) {
+			return;
+		}
+		try {
+			taskExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final Boolean result = springGraphService.isUserInRole(userID, role);
+						if (result != null) {
+							roleCache.put(key, result);
+						}
+					} catch (RuntimeException e) {
+						LOGGER.error(e.getMessage(), e);
+					} finally {
+						revalidationMap.remove(key);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			revalidationMap.remove(key);
+			LOGGER.warn("Executor saturated, serving expired role for {}", key);
+		}
+	}
+
+	@Override
+	public Boolean peekUserInRole(final String userID, final String role) {
+		final ConcurrentCache<String, Boolean> roleCache = concurrentCacheService.getCache(Boolean.class, "roleCache");
+		final String key = String.format("%s:%s", userID, role);
+		final Boolean entry = roleCache.get(key);
+		return entry == null ? roleCache.getStale(key) : entry;
+	}
+
 	public static GraphCache getInstance() {
 		return INSTANCE;
 	}
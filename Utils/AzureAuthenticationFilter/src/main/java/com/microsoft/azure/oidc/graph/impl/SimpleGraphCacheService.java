@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.graph.impl;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+
+import com.microsoft.azure.oidc.graph.GraphCache;
+import com.microsoft.azure.oidc.graph.GraphCacheService;
+
+public final class SimpleGraphCacheService implements GraphCacheService {
+	private static final GraphCacheService INSTANCE = new SimpleGraphCacheService();
+	private static final String SIMPLE = "simple";
+	private static final String BATCHED = "batched";
+
+	private volatile GraphCache graphCache = SimpleGraphCache.getInstance();
+
+	@Override
+	public void initialise(final FilterConfig filterConfig, final String parameterName) throws ServletException {
+		final String mode = filterConfig.getInitParameter(parameterName);
+		if (mode == null || SIMPLE.equalsIgnoreCase(mode.trim())) {
+			graphCache = SimpleGraphCache.getInstance();
+			return;
+		}
+		if (BATCHED.equalsIgnoreCase(mode.trim())) {
+			graphCache = BatchedGraphCache.getInstance();
+			return;
+		}
+		throw new ServletException(String.format("Unknown graph membership mode: %s", mode));
+	}
+
+	@Override
+	public GraphCache get() {
+		return graphCache;
+	}
+
+	public static GraphCacheService getInstance() {
+		return INSTANCE;
+	}
+}
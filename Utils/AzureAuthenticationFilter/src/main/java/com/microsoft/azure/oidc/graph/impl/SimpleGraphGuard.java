@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.graph.impl;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.graph.GraphGuard;
+
+/**
+ * Bulkhead and circuit breaker for Graph API calls.
+ * <p>
+ * At most maxConcurrentCalls run at once. A call beyond that waits up to
+ * maxWait for a slot and is then refused, so callers that must not block take
+ * their slot on an executor thread. After failureThreshold failures in a row
+ * the circuit opens and every call is refused for openInterval. After that one
+ * trial call is let through. If it succeeds the circuit closes; if it fails the
+ * circuit opens again.
+ */
+public final class SimpleGraphGuard implements GraphGuard {
+	private static final GraphGuard INSTANCE = new SimpleGraphGuard();
+	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleGraphGuard.class);
+	private static final int DEFAULT_MAX_CONCURRENT_CALLS = 4;
+	private static final long DEFAULT_MAX_WAIT = 5000L;
+	private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	private static final long DEFAULT_OPEN_INTERVAL = 30000L;
+	private static final long CLOSED = 0L;
+
+	private final AtomicInteger failureCount = new AtomicInteger();
+	private final AtomicLong openUntil = new AtomicLong(CLOSED);
+	private final AtomicBoolean isTrialInFlight = new AtomicBoolean();
+
+	private volatile Semaphore permits = new Semaphore(DEFAULT_MAX_CONCURRENT_CALLS);
+	private volatile long maxWait = DEFAULT_MAX_WAIT;
+	private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+	private volatile long openInterval = DEFAULT_OPEN_INTERVAL;
+
+	@Override
+	public void initialise(final Integer maxConcurrentCalls, final Long maxWait, final Integer failureThreshold,
+			final Long openInterval, final TimeUnit timeUnit) {
+		if (maxConcurrentCalls == null || maxWait == null || failureThreshold == null || openInterval == null
+				|| timeUnit == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		this.permits = new Semaphore(maxConcurrentCalls);
+		this.maxWait = timeUnit.toMillis(maxWait);
+		this.failureThreshold = failureThreshold;
+		this.openInterval = timeUnit.toMillis(openInterval);
+		failureCount.set(0);
+		openUntil.set(CLOSED);
+		isTrialInFlight.set(false);
+	}
+
+	@Override
+	public Boolean tryAcquire() {
+		final long until = openUntil.get();
+		final Boolean isTrial = until != CLOSED;
+		if (isTrial && (System.currentTimeMillis() < until || !isTrialInFlight.compareAndSet(false, true))) {
+			return Boolean.FALSE;
+		}
+		try {
+			if (permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+				return Boolean.TRUE;
+			}
+			LOGGER.warn("No Graph API call slot free after {} ms", maxWait);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (isTrial) {
+			isTrialInFlight.set(false);
+		}
+		return Boolean.FALSE;
+	}
+
+	/**
+	 * Returns the permit taken by {@link #tryAcquire()}. isSuccess is null when
+	 * the call never reached Graph.
+	 */
+	@Override
+	public void release(final Boolean isSuccess) {
+		permits.release();
+		if (isSuccess == null) {
+			isTrialInFlight.set(false);
+			return;
+		}
+		if (isSuccess) {
+			failureCount.set(0);
+			if (openUntil.getAndSet(CLOSED) != CLOSED) {
+				LOGGER.info("Graph API circuit closed");
+			}
+			isTrialInFlight.set(false);
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		if (openUntil.get() != CLOSED) {
+			openUntil.set(now + openInterval);
+			isTrialInFlight.set(false);
+			LOGGER.warn("Graph API trial call failed, circuit stays open for {} ms", openInterval);
+			return;
+		}
+		final int failures = failureCount.incrementAndGet();
+		if (failures >= failureThreshold && openUntil.compareAndSet(CLOSED, now + openInterval)) {
+			LOGGER.warn("Graph API circuit opened for {} ms after {} failures", openInterval, failures);
+		}
+	}
+
+	public static GraphGuard getInstance() {
+		return INSTANCE;
+	}
+}
@@ -23,16 +23,19 @@ package com.microsoft.azure.oidc.graph.impl;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,59 +43,145 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.azure.oidc.application.settings.ApplicationSettings;
 import com.microsoft.azure.oidc.application.settings.ApplicationSettingsLoader;
-import com.microsoft.azure.oidc.application.settings.Secret;
-import com.microsoft.azure.oidc.application.settings.Tenant;
 import com.microsoft.azure.oidc.application.settings.impl.SimpleApplicationSettingsLoader;
-import com.microsoft.azure.oidc.common.id.ID;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.cache.impl.SimpleConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.concurrent.executor.impl.SimpleTaskExecutor;
 import com.microsoft.azure.oidc.exception.GeneralException;
+import com.microsoft.azure.oidc.future.FutureHelper;
+import com.microsoft.azure.oidc.future.impl.SimpleFutureHelper;
 import com.microsoft.azure.oidc.graph.GraphService;
+import com.microsoft.azure.oidc.metrics.LatencyRecorder;
+import com.microsoft.azure.oidc.metrics.Stage;
+import com.microsoft.azure.oidc.metrics.impl.SimpleLatencyRecorder;
 
 public final class SimpleGraphService implements GraphService {
 	private static final GraphService INSTANCE = new SimpleGraphService();
 	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleGraphService.class);
+	private static final long BEARER_TOKEN_EXPIRY_MARGIN = 300000L;
+
+	private final TaskExecutor taskExecutor = SimpleTaskExecutor.getInstance();
+
+	private final FutureHelper futureHelper = SimpleFutureHelper.getInstance();
 
 	private final ApplicationSettingsLoader applicationSettingsLoader = SimpleApplicationSettingsLoader.getInstance();
 
+	private final ConcurrentCacheService concurrentCacheService = SimpleConcurrentCacheService.getInstance();
+
+	private final LatencyRecorder latencyRecorder = SimpleLatencyRecorder.getInstance();
+
+	private volatile BearerToken bearerToken;
+
 	@Override
 	public Future<Boolean> isUserInRoleAsync(final String userID, final String role) {
-		final ExecutorService executorService = Executors.newSingleThreadExecutor();
-		final Future<Boolean> future = executorService.submit(new Callable<Boolean>() {
+		return taskExecutor.submit(new Callable<Boolean>() {
 			public Boolean call() throws Exception {
 				return isUserInRole(userID, role);
 			}
 		});
-		executorService.shutdown();
-		return future;
 	}
 
-	private Boolean isUserInRole(final String userID, final String role) {
+	@Override
+	public Future<Map<String, Boolean>> isUserInRolesAsync(final String userID, final Collection<String> roles) {
+		return taskExecutor.submit(new Callable<Map<String, Boolean>>() {
+			public Map<String, Boolean> call() throws Exception {
+				return isUserInRoles(userID, roles);
+			}
+		});
+	}
+
+	@Override
+	public Boolean isUserInRole(final String userID, final String role) {
+		final long start = latencyRecorder.start();
+		try {
+			return loadUserInRole(userID, role);
+		} finally {
+			latencyRecorder.stop(Stage.GRAPH_CALL, start);
+		}
+	}
+
+	@Override
+	public Map<String, Boolean> isUserInRoles(final String userID, final Collection<String> roles) {
+		final long start = latencyRecorder.start();
+		try {
+			return loadUserInRoles(userID, roles);
+		} finally {
+			latencyRecorder.stop(Stage.GRAPH_CALL, start);
+		}
+	}
+
+	private Map<String, Boolean> loadUserInRoles(final String userID, final Collection<String> roles) {
+		try {
+			final ApplicationSettings applicationSettings = applicationSettingsLoader.load();
+			final String bearerToken = getBearerToken(applicationSettings);
+			if (bearerToken == null) {
+				return null;
+			}
+			final Set<String> groupIDs = getMemberGroupIDs(applicationSettings, userID, bearerToken);
+			if (groupIDs == null) {
+				return null;
+			}
+			final Map<String, Boolean> result = new HashMap<String, Boolean>();
+			for (final String role : roles) {
+				final String roleID;
+				try {
+					roleID = getGroupID(applicationSettings, role, bearerToken);
+				} catch (GeneralException e) {
+					// left out rather than answered, so the failure is not cached
+					LOGGER.error("General Exception", e);
+					continue;
+				}
+				result.put(role, roleID != null && groupIDs.contains(roleID));
+			}
+			return result;
+		} catch (GeneralException e) {
+			LOGGER.error("General Exception", e);
+			return null;
+		} catch (RuntimeException e) {
+			LOGGER.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns null rather than false when Graph cannot be reached or a lookup
+	 * fails, so that a failure is not cached as a negative answer. Only a group
+	 * that does not exist is a definite false.
+	 */
+	private Boolean loadUserInRole(final String userID, final String role) {
 		try {
 			final ApplicationSettings applicationSettings = applicationSettingsLoader.load();
-			final String bearerToken = getBearerToken(applicationSettings.getTenant(),
-					applicationSettings.getPrincipalId(), applicationSettings.getPrincipalSecret());
-			final String roleID = getGroupID(applicationSettings.getTenant(), role, bearerToken);
+			final String bearerToken = getBearerToken(applicationSettings);
+			if (bearerToken == null) {
+				return null;
+			}
+			final String roleID = getGroupID(applicationSettings, role, bearerToken);
 			if (roleID == null) {
 				return Boolean.FALSE;
 			}
-			return isUserInGroup(applicationSettings.getTenant(), userID, roleID, bearerToken);
+			return isUserInGroup(applicationSettings, userID, roleID, bearerToken);
 		} catch (GeneralException e) {
 			LOGGER.error("General Exception", e);
-			return Boolean.FALSE;
+			return null;
 		} catch (RuntimeException e) {
 			LOGGER.error(e.getMessage(), e);
-			return Boolean.FALSE;
+			return null;
 		}
 	}
 
-	private Boolean isUserInGroup(final Tenant tenant, final String userID, final String groupID,
-			final String bearerToken) {
+	private Boolean isUserInGroup(final ApplicationSettings applicationSettings, final String userID,
+			final String groupID, final String bearerToken) {
 		try {
-			final String urlString = String.format("https://graph.windows.net/%s/isMemberOf?api-version=1.6",
-					tenant.getName());
+			final String urlString = String.format("%s/%s/isMemberOf?api-version=1.6",
+					applicationSettings.getGraphEndPoint(), applicationSettings.getTenant().getName());
 			final String payload = String.format("{\"groupId\":\"%s\",\"memberId\":\"%s\"}", groupID, userID);
 			final URL url = new URL(urlString);
-			final HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-			connection.setRequestProperty("Host", "graph.windows.net");
+			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(futureHelper.getTimeout());
+			connection.setReadTimeout(futureHelper.getTimeout());
+			connection.setRequestProperty("Host", url.getHost());
 			connection.setRequestProperty("Content-Type", "application/json");
 			connection.setRequestProperty("Accept", "application/json");
 			connection.setRequestProperty("Authorization", "Bearer " + bearerToken);
@@ -111,21 +200,81 @@ public final class SimpleGraphService implements GraphService {
 			return node.get("value").asBoolean();
 		} catch (IOException e) {
 			LOGGER.error("IO Exception", e);
-			return Boolean.FALSE;
+			return null;
+		} catch (RuntimeException e) {
+			LOGGER.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private Set<String> getMemberGroupIDs(final ApplicationSettings applicationSettings, final String userID,
+			final String bearerToken) {
+		try {
+			final String urlString = String.format("%s/%s/users/%s/getMemberGroups?api-version=1.6",
+					applicationSettings.getGraphEndPoint(), applicationSettings.getTenant().getName(),
+					URLEncoder.encode(userID, "UTF-8"));
+			final String payload = "{\"securityEnabledOnly\":false}";
+			final URL url = new URL(urlString);
+			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(futureHelper.getTimeout());
+			connection.setReadTimeout(futureHelper.getTimeout());
+			connection.setRequestProperty("Host", url.getHost());
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setRequestProperty("Accept", "application/json");
+			connection.setRequestProperty("Authorization", "Bearer " + bearerToken);
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.getOutputStream().write(payload.getBytes());
+			connection.getOutputStream().flush();
+			final ObjectMapper mapper = new ObjectMapper();
+			final JsonNode node;
+			try (final InputStream in = connection.getInputStream()) {
+				node = mapper.readTree(in);
+			}
+			final Set<String> result = new HashSet<String>();
+			for (final JsonNode groupNode : node.get("value")) {
+				result.add(groupNode.asText());
+			}
+			return result;
+		} catch (IOException e) {
+			LOGGER.error("IO Exception", e);
+			return null;
 		} catch (RuntimeException e) {
 			LOGGER.error(e.getMessage(), e);
-			return Boolean.FALSE;
+			return null;
+		}
+	}
+
+	private String getGroupID(final ApplicationSettings applicationSettings, final String group,
+			final String bearerToken) {
+		final ConcurrentCache<String, String> groupCache = concurrentCacheService.getCache(String.class, "groupCache");
+		final String entry = groupCache == null ? null : groupCache.get(group);
+		if (entry != null) {
+			return entry;
 		}
+		final String result = loadGroupID(applicationSettings, group, bearerToken);
+		if (result == null || groupCache == null) {
+			return result;
+		}
+		groupCache.putIfAbsent(group, result);
+		return result;
 	}
 
-	private String getGroupID(final Tenant tenant, final String group, final String bearerToken) {
+	/**
+	 * Returns null when no group has that name and throws a GeneralException
+	 * when the lookup fails.
+	 */
+	private String loadGroupID(final ApplicationSettings applicationSettings, final String group,
+			final String bearerToken) {
 		try {
-			final String urlString = String.format(
-					"https://graph.windows.net/%s/groups?$filter=displayName%%20eq%%20'%s'&api-version=1.6",
-					tenant.getName(), URLEncoder.encode(group, "UTF-8"));
+			final String urlString = String.format("%s/%s/groups?$filter=displayName%%20eq%%20'%s'&api-version=1.6",
+					applicationSettings.getGraphEndPoint(), applicationSettings.getTenant().getName(),
+					URLEncoder.encode(group, "UTF-8"));
 			final URL url = new URL(urlString);
-			final HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-			connection.setRequestProperty("Host", "graph.windows.net");
+			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(futureHelper.getTimeout());
+			connection.setReadTimeout(futureHelper.getTimeout());
+			connection.setRequestProperty("Host", url.getHost());
 			connection.setRequestProperty("Accept", "application/json");
 			connection.setRequestProperty("Authorization", "Bearer " + bearerToken);
 			final StringBuilder result = new StringBuilder();
@@ -140,26 +289,39 @@ public final class SimpleGraphService implements GraphService {
 				return groupNode.get("objectId").asText();
 			}
 			return null;
-		} catch (IOException e) {
-			LOGGER.error("IO Exception", e);
-			return null;
-		} catch (RuntimeException e) {
-			LOGGER.error(e.getMessage(), e);
+		} catch (IOException | RuntimeException e) {
+			throw new GeneralException(String.format("Can't look up group %s", group), e);
+		}
+	}
+
+	private String getBearerToken(final ApplicationSettings applicationSettings) {
+		final long now = System.currentTimeMillis();
+		final BearerToken current = bearerToken;
+		if (current != null && current.isValid(now)) {
+			return current.getValue();
+		}
+		final BearerToken result = loadBearerToken(applicationSettings);
+		if (result == null) {
 			return null;
 		}
+		bearerToken = result;
+		return result.getValue();
 	}
 
-	private String getBearerToken(final Tenant tenant, final ID principal, final Secret secret) {
+	private BearerToken loadBearerToken(final ApplicationSettings applicationSettings) {
 		try {
 			final String payload = String.format(
-					"grant_type=client_credentials&client_id=%s&client_secret=%s&resource=%s", principal.getValue(),
-					URLEncoder.encode(secret.getValue(), "UTF-8"),
-					URLEncoder.encode("https://graph.windows.net", "UTF-8"));
-			final URL url = new URL(
-					String.format("https://login.microsoftonline.com/%s/oauth2/token", tenant.getName()));
-			final HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
+					"grant_type=client_credentials&client_id=%s&client_secret=%s&resource=%s",
+					applicationSettings.getPrincipalId().getValue(),
+					URLEncoder.encode(applicationSettings.getPrincipalSecret().getValue(), "UTF-8"),
+					URLEncoder.encode(applicationSettings.getGraphEndPoint().getName(), "UTF-8"));
+			final URL url = new URL(String.format("%s/%s/oauth2/token", applicationSettings.getAuthorityEndPoint(),
+					applicationSettings.getTenant().getName()));
+			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(futureHelper.getTimeout());
+			connection.setReadTimeout(futureHelper.getTimeout());
 			connection.setRequestMethod("POST");
-			connection.setRequestProperty("Host", "login.microsoftonline.com");
+			connection.setRequestProperty("Host", url.getHost());
 			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
 			connection.setRequestProperty("Accept", "application/json");
 			connection.setDoOutput(true);
@@ -173,7 +335,9 @@ public final class SimpleGraphService implements GraphService {
 			}
 			final ObjectMapper mapper = new ObjectMapper();
 			final JsonNode node = mapper.readValue(result.toString().getBytes(), JsonNode.class);
-			return node.get("access_token").asText();
+			final long expiresAt = System.currentTimeMillis() + node.path("expires_in").asLong() * 1000
+					- BEARER_TOKEN_EXPIRY_MARGIN;
+			return new BearerToken(node.get("access_token").asText(), expiresAt);
 		} catch (IOException e) {
 			LOGGER.error("IO Exception", e);
 			return null;
@@ -186,4 +350,25 @@ public final class SimpleGraphService implements GraphService {
 	public static GraphService getInstance() {
 		return INSTANCE;
 	}
+
+	/**
+	 * App-only Graph token, reused until shortly before it expires.
+	 */
+	private static final class BearerToken {
+		private final String value;
+		private final long expiresAt;
+
+		BearerToken(final String value, final long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+		String getValue() {
+			return value;
+		}
+
+		Boolean isValid(final long now) {
+			return now < expiresAt;
+		}
+	}
 }
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.metrics.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.metrics.LatencyStatistics;
+
+/**
+ * Log-linear histogram of nanosecond durations. Each power of two is split
+ * into eight buckets, so a reported percentile is within 12.5% of the true
+ * value. Reported times are in microseconds.
+ */
+final class LatencyHistogram implements LatencyStatistics {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	void record(final long duration) {
+		final long value = Math.max(duration, 0L);
+		buckets.incrementAndGet(getIndex(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		for (long current = max.get(); value > current; current = max.get()) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	void reset() {
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			buckets.set(index, 0L);
+		}
+		count.set(0L);
+		total.set(0L);
+		max.set(0L);
+	}
+
+	@Override
+	public Long getCount() {
+		return count.get();
+	}
+
+	@Override
+	public Long getMean() {
+		final long currentCount = count.get();
+		return currentCount == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(total.get() / currentCount);
+	}
+
+	@Override
+	public Long getMax() {
+		return TimeUnit.NANOSECONDS.toMicros(max.get());
+	}
+
+	@Override
+	public Long getPercentile(final Double percentile) {
+		if (percentile == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		long remaining = 0L;
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			remaining += buckets.get(index);
+		}
+		if (remaining == 0L) {
+			return 0L;
+		}
+		final long target = Math.max(1L, (long) Math.ceil(remaining * Math.min(percentile, 100.0) / 100.0));
+		long seen = 0L;
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			seen += buckets.get(index);
+			if (seen >= target) {
+				return TimeUnit.NANOSECONDS.toMicros(Math.min(getUpperBound(index), max.get()));
+			}
+		}
+		return getMax();
+	}
+
+	private static int getIndex(final long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	private static long getUpperBound(final int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		final long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
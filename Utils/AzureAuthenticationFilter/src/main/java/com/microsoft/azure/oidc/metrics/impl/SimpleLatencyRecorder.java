@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.metrics.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.metrics.LatencyRecorder;
+import com.microsoft.azure.oidc.metrics.LatencyStatistics;
+import com.microsoft.azure.oidc.metrics.Stage;
+
+/**
+ * Records per-stage latencies when enabled. When disabled, start() and stop()
+ * do no more than read a volatile flag.
+ */
+public final class SimpleLatencyRecorder implements LatencyRecorder {
+	private static final LatencyRecorder INSTANCE = new SimpleLatencyRecorder();
+	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleLatencyRecorder.class);
+	private static final String OBJECT_NAME = "com.microsoft.azure.oidc:type=Latency,stage=%s";
+	private static final long NOT_STARTED = 0L;
+
+	private final LatencyHistogram[] latencyHistograms = new LatencyHistogram[Stage.values().length];
+
+	private final List<ObjectName> objectNames = new ArrayList<ObjectName>();
+
+	private volatile boolean isEnabled;
+
+	private SimpleLatencyRecorder() {
+		for (final Stage stage : Stage.values()) {
+			latencyHistograms[stage.ordinal()] = new LatencyHistogram();
+		}
+	}
+
+	@Override
+	public synchronized void initialise(final Boolean isEnabled) {
+		if (isEnabled == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		this.isEnabled = isEnabled;
+		if (isEnabled && objectNames.isEmpty()) {
+			register();
+		}
+		if (!isEnabled) {
+			unregister();
+		}
+	}
+
+	@Override
+	public Boolean isEnabled() {
+		return isEnabled;
+	}
+
+	@Override
+	public long start() {
+		return isEnabled ? System.nanoTime() : NOT_STARTED;
+	}
+
+	@Override
+	public void stop(final Stage stage, final long start) {
+		if (start != NOT_STARTED) {
+			latencyHistograms[stage.ordinal()].record(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public LatencyStatistics getStatistics(final Stage stage) {
+		if (stage == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		return latencyHistograms[stage.ordinal()];
+	}
+
+	@Override
+	public void reset() {
+		for (final LatencyHistogram latencyHistogram : latencyHistograms) {
+			latencyHistogram.reset();
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		isEnabled = false;
+		unregister();
+	}
+
+	private void register() {
+		final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (final Stage stage : Stage.values()) {
+			try {
+				final ObjectName objectName = new ObjectName(String.format(OBJECT_NAME, stage.name()));
+				mBeanServer.registerMBean(new SimpleStageLatency(latencyHistograms[stage.ordinal()]), objectName);
+				objectNames.add(objectName);
+			} catch (JMException e) {
+				LOGGER.warn(String.format("Unable to register latency MBean for %s", stage), e);
+			}
+		}
+	}
+
+	private void unregister() {
+		final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (final ObjectName objectName : objectNames) {
+			try {
+				mBeanServer.unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOGGER.warn(String.format("Unable to unregister latency MBean %s", objectName), e);
+			}
+		}
+		objectNames.clear();
+	}
+
+	public static LatencyRecorder getInstance() {
+		return INSTANCE;
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.metrics.impl;
+
+import com.microsoft.azure.oidc.metrics.LatencyStatistics;
+import com.microsoft.azure.oidc.metrics.StageLatencyMXBean;
+
+final class SimpleStageLatency implements StageLatencyMXBean {
+	private final LatencyHistogram latencyHistogram;
+
+	public SimpleStageLatency(final LatencyHistogram latencyHistogram) {
+		this.latencyHistogram = latencyHistogram;
+	}
+
+	@Override
+	public long getCount() {
+		return getStatistics().getCount();
+	}
+
+	@Override
+	public long getMean() {
+		return getStatistics().getMean();
+	}
+
+	@Override
+	public long getP50() {
+		return getStatistics().getPercentile(50.0);
+	}
+
+	@Override
+	public long getP90() {
+		return getStatistics().getPercentile(90.0);
+	}
+
+	@Override
+	public long getP99() {
+		return getStatistics().getPercentile(99.0);
+	}
+
+	@Override
+	public long getP999() {
+		return getStatistics().getPercentile(99.9);
+	}
+
+	@Override
+	public long getMax() {
+		return getStatistics().getMax();
+	}
+
+	@Override
+	public void reset() {
+		latencyHistogram.reset();
+	}
+
+	private LatencyStatistics getStatistics() {
+		return latencyHistogram;
+	}
+}
@@ -27,8 +27,6 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
@@ -36,29 +34,35 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.concurrent.executor.impl.SimpleTaskExecutor;
 import com.microsoft.azure.oidc.configuration.endpoint.EndPoint;
 import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.future.FutureHelper;
+import com.microsoft.azure.oidc.future.impl.SimpleFutureHelper;
 import com.microsoft.azure.oidc.openid.keystore.KeyStoreLoader;
 
 public final class SimpleKeyStoreLoader implements KeyStoreLoader {
 	private static final KeyStoreLoader INSTANCE = new SimpleKeyStoreLoader();
 	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleKeyStoreLoader.class);
 
+	private final TaskExecutor taskExecutor = SimpleTaskExecutor.getInstance();
+
+	private final FutureHelper futureHelper = SimpleFutureHelper.getInstance();
+
 	@Override
 	public Future<JsonNode> loadAsync(final EndPoint endPoint) {
 		if (endPoint == null) {
 			throw new PreconditionException("Required parameter is null");
 		}
-		final ExecutorService executorService = Executors.newSingleThreadExecutor();
-		final Future<JsonNode> future = executorService.submit(new Callable<JsonNode>() {
+		return taskExecutor.submit(new Callable<JsonNode>() {
 			public JsonNode call() throws Exception {
 				return load(endPoint);
 			}
 		});
-		executorService.shutdown();
-		return future;
 	}
 
+	@Override
 	public JsonNode load(final EndPoint endPoint) {
 		if (endPoint == null) {
 			throw new PreconditionException("Required parameter is null");
@@ -67,6 +71,8 @@ public final class SimpleKeyStoreLoader implements KeyStoreLoader {
 			final StringBuilder builder = new StringBuilder();
 			final URL url = new URL(endPoint.getName());
 			final URLConnection connection = url.openConnection();
+			connection.setConnectTimeout(futureHelper.getTimeout());
+			connection.setReadTimeout(futureHelper.getTimeout());
 			try (final BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
 				for (String line = in.readLine(); line != null; line = in.readLine()) {
 					builder.append(line);
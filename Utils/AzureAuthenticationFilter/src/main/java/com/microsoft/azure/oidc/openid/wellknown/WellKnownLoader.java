@@ -28,5 +28,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 public interface WellKnownLoader {
 
 	Future<JsonNode> loadAsync();
+
+	JsonNode load();
 	
 }
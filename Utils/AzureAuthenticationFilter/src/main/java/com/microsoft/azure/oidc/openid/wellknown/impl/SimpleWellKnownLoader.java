@@ -27,8 +27,6 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
@@ -39,34 +37,43 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.azure.oidc.application.settings.ApplicationSettings;
 import com.microsoft.azure.oidc.application.settings.ApplicationSettingsLoader;
 import com.microsoft.azure.oidc.application.settings.impl.SimpleApplicationSettingsLoader;
+import com.microsoft.azure.oidc.concurrent.executor.TaskExecutor;
+import com.microsoft.azure.oidc.concurrent.executor.impl.SimpleTaskExecutor;
+import com.microsoft.azure.oidc.future.FutureHelper;
+import com.microsoft.azure.oidc.future.impl.SimpleFutureHelper;
 import com.microsoft.azure.oidc.openid.wellknown.WellKnownLoader;
 
 public final class SimpleWellKnownLoader implements WellKnownLoader {
 	private static final WellKnownLoader INSTANCE = new SimpleWellKnownLoader();
 	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleWellKnownLoader.class);
 
+	private final TaskExecutor taskExecutor = SimpleTaskExecutor.getInstance();
+
+	private final FutureHelper futureHelper = SimpleFutureHelper.getInstance();
+
 	private final ApplicationSettingsLoader applicationSettingsLoader = SimpleApplicationSettingsLoader.getInstance();
 
 	@Override
 	public Future<JsonNode> loadAsync() {
-		final ExecutorService executorService = Executors.newSingleThreadExecutor();
-		final Future<JsonNode> future = executorService.submit(new Callable<JsonNode>() {
+		return taskExecutor.submit(new Callable<JsonNode>() {
 			public JsonNode call() throws Exception {
 				return load();
 			}
 		});
-		executorService.shutdown();
-		return future;
 	}
 
+	@Override
 	public JsonNode load() {
 		try {
 			final ApplicationSettings applicationSettings = applicationSettingsLoader.load();
 			final StringBuilder builder = new StringBuilder();
 			final URL url = new URL(
-					String.format("https://login.microsoftonline.com/%s/v2.0/.well-known/openid-configuration?p=%s",
-							applicationSettings.getTenant(), applicationSettings.getOIDCPolicy()));
+					String.format("%s/%s/v2.0/.well-known/openid-configuration?p=%s",
+							applicationSettings.getAuthorityEndPoint(), applicationSettings.getTenant(),
+							applicationSettings.getOIDCPolicy()));
 			final URLConnection connection = url.openConnection();
+			connection.setConnectTimeout(futureHelper.getTimeout());
+			connection.setReadTimeout(futureHelper.getTimeout());
 			try (final BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
 				for (String line = in.readLine(); line != null; line = in.readLine()) {
 					builder.append(line);
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.servlet.impl;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheStatistics;
+import com.microsoft.azure.oidc.concurrent.cache.impl.SimpleConcurrentCacheService;
+import com.microsoft.azure.oidc.metrics.LatencyRecorder;
+import com.microsoft.azure.oidc.metrics.LatencyStatistics;
+import com.microsoft.azure.oidc.metrics.Stage;
+import com.microsoft.azure.oidc.metrics.impl.SimpleLatencyRecorder;
+
+/**
+ * Reports per-stage latencies in microseconds, and the statistics of each
+ * cache under "caches", as JSON. It is not auto-registered; map it in web.xml
+ * to expose it.
+ */
+public final class LatencyServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final LatencyRecorder latencyRecorder = SimpleLatencyRecorder.getInstance();
+
+	private final ConcurrentCacheService concurrentCacheService = SimpleConcurrentCacheService.getInstance();
+
+	@Override
+	protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+			throws ServletException, IOException {
+		if (!latencyRecorder.isEnabled()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		final ObjectNode result = MAPPER.createObjectNode();
+		for (final Stage stage : Stage.values()) {
+			final LatencyStatistics statistics = latencyRecorder.getStatistics(stage);
+			final ObjectNode node = result.putObject(stage.name());
+			node.put("count", statistics.getCount());
+			node.put("mean", statistics.getMean());
+			node.put("p50", statistics.getPercentile(50.0));
+			node.put("p90", statistics.getPercentile(90.0));
+			node.put("p99", statistics.getPercentile(99.0));
+			node.put("p999", statistics.getPercentile(99.9));
+			node.put("max", statistics.getMax());
+		}
+		final ObjectNode caches = result.putObject("caches");
+		for (final Map.Entry<String, ConcurrentCacheStatistics> entry : concurrentCacheService.getStatistics().entrySet()) {
+			final ConcurrentCacheStatistics statistics = entry.getValue();
+			final ObjectNode node = caches.putObject(entry.getKey());
+			node.put("size", statistics.getSize());
+			node.put("hits", statistics.getHitCount());
+			node.put("misses", statistics.getMissCount());
+			node.put("evictions", statistics.getEvictionCount());
+			node.put("expirations", statistics.getExpirationCount());
+			node.put("rejections", statistics.getRejectionCount());
+		}
+		response.setContentType("application/json");
+		response.setHeader("Cache-Control", "no-store");
+		MAPPER.writeValue(response.getOutputStream(), result);
+	}
+}
@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.snapshot.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.HmacUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microsoft.azure.oidc.application.settings.ApplicationSettings;
+import com.microsoft.azure.oidc.application.settings.ApplicationSettingsLoader;
+import com.microsoft.azure.oidc.application.settings.impl.SimpleApplicationSettingsLoader;
+import com.microsoft.azure.oidc.common.algorithm.Algorithm;
+import com.microsoft.azure.oidc.common.algorithm.AlgorithmFactory;
+import com.microsoft.azure.oidc.common.algorithm.impl.SimpleAlgorithmFactory;
+import com.microsoft.azure.oidc.common.issuer.IssuerFactory;
+import com.microsoft.azure.oidc.common.issuer.impl.SimpleIssuerFactory;
+import com.microsoft.azure.oidc.common.name.Name;
+import com.microsoft.azure.oidc.common.name.NameFactory;
+import com.microsoft.azure.oidc.common.name.impl.SimpleNameFactory;
+import com.microsoft.azure.oidc.common.timestamp.TimeStampFactory;
+import com.microsoft.azure.oidc.common.timestamp.impl.SimpleTimeStampFactory;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheEntry;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.cache.impl.SimpleConcurrentCacheService;
+import com.microsoft.azure.oidc.configuration.Configuration;
+import com.microsoft.azure.oidc.configuration.ConfigurationCache;
+import com.microsoft.azure.oidc.configuration.ConfigurationFactory;
+import com.microsoft.azure.oidc.configuration.endpoint.EndPointFactory;
+import com.microsoft.azure.oidc.configuration.endpoint.impl.SimpleEndPointFactory;
+import com.microsoft.azure.oidc.configuration.impl.SimpleConfigurationCache;
+import com.microsoft.azure.oidc.configuration.impl.SimpleConfigurationFactory;
+import com.microsoft.azure.oidc.configuration.key.Key;
+import com.microsoft.azure.oidc.configuration.key.KeyFactory;
+import com.microsoft.azure.oidc.configuration.key.exponent.ExponentFactory;
+import com.microsoft.azure.oidc.configuration.key.exponent.impl.SimpleExponentFactory;
+import com.microsoft.azure.oidc.configuration.key.impl.SimpleKeyFactory;
+import com.microsoft.azure.oidc.configuration.key.modulus.ModulusFactory;
+import com.microsoft.azure.oidc.configuration.key.modulus.impl.SimpleModulusFactory;
+import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.snapshot.CacheSnapshotService;
+
+/**
+ * Writes the role and configuration caches, with the expiry time of each
+ * entry, to a local file and restores them when the filter starts again.
+ * <p>
+ * The file starts with an HMAC-SHA256 of its content, keyed with the tenant
+ * and the application and principal secrets. A snapshot that fails the check,
+ * for instance one written for another tenant or edited on disk, is ignored.
+ * Entries that have expired since the snapshot was written are not restored.
+ */
+public final class SimpleCacheSnapshotService implements CacheSnapshotService {
+	private static final CacheSnapshotService INSTANCE = new SimpleCacheSnapshotService();
+	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleCacheSnapshotService.class);
+	private static final String ROLE_CACHE = "roleCache";
+	private static final String CONFIGURATION_CACHE = "configurationCache";
+	private static final int VERSION = 1;
+
+	private final ConcurrentCacheService concurrentCacheService = SimpleConcurrentCacheService.getInstance();
+
+	private final ConfigurationCache configurationCache = SimpleConfigurationCache.getInstance();
+
+	private final ApplicationSettingsLoader applicationSettingsLoader = SimpleApplicationSettingsLoader.getInstance();
+
+	private final ConfigurationFactory configurationFactory = SimpleConfigurationFactory.getInstance();
+
+	private final AlgorithmFactory algorithmFactory = SimpleAlgorithmFactory.getInstanc();
+
+	private final IssuerFactory issuerFactory = SimpleIssuerFactory.getInstance();
+
+	private final EndPointFactory endPointFactory = SimpleEndPointFactory.getInstance();
+
+	private final KeyFactory keyFactory = SimpleKeyFactory.getInstance();
+
+	private final NameFactory nameFactory = SimpleNameFactory.getInstance();
+
+	private final ModulusFactory modulusFactory = SimpleModulusFactory.getInstance();
+
+	private final ExponentFactory exponentFactory = SimpleExponentFactory.getInstance();
+
+	private final TimeStampFactory timeStampFactory = SimpleTimeStampFactory.getInstance();
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final Object lock = new Object();
+
+	private volatile ScheduledExecutorService scheduledExecutorService;
+
+	private volatile File file;
+
+	private volatile byte[] signingKey;
+
+	@Override
+	public void initialise(final File file, final Long interval, final TimeUnit timeUnit) {
+		if (file == null || interval == null || timeUnit == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		shutdownNow();
+		final byte[] key = getSigningKey(applicationSettingsLoader.load());
+		if (key == null) {
+			LOGGER.warn("No application or principal secret to sign cache snapshots with, snapshots disabled");
+			return;
+		}
+		synchronized (lock) {
+			this.signingKey = key;
+			this.file = file.getAbsoluteFile();
+			restore();
+		}
+		final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+		executorService.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					save();
+				} catch (RuntimeException e) {
+					LOGGER.error(e.getMessage(), e);
+				}
+			}
+		}, interval, interval, timeUnit);
+		scheduledExecutorService = executorService;
+	}
+
+	@Override
+	public void save() {
+		synchronized (lock) {
+			if (file == null) {
+				return;
+			}
+			final Path target = file.toPath();
+			Path temporary = null;
+			try {
+				final byte[] payload = mapper.writeValueAsBytes(getSnapshot());
+				final byte[] mac = HmacUtils.hmacSha256Hex(signingKey, payload).getBytes(StandardCharsets.UTF_8);
+				Files.createDirectories(target.getParent());
+				temporary = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+				final byte[] content = Arrays.copyOf(mac, mac.length + 1 + payload.length);
+				content[mac.length] = '\n';
+				System.arraycopy(payload, 0, content, mac.length + 1, payload.length);
+				Files.write(temporary, content);
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				temporary = null;
+			} catch (IOException e) {
+				LOGGER.warn("Could not write cache snapshot {}: {}", file, e.getMessage());
+			} finally {
+				if (temporary != null) {
+					temporary.toFile().delete();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdownNow();
+		save();
+		synchronized (lock) {
+			file = null;
+			signingKey = null;
+		}
+	}
+
+	private void shutdownNow() {
+		final ScheduledExecutorService executorService = scheduledExecutorService;
+		if (executorService != null) {
+			executorService.shutdownNow();
+			scheduledExecutorService = null;
+		}
+	}
+
+	private void restore() {
+		final JsonNode node;
+		try {
+			final byte[] content = Files.readAllBytes(file.toPath());
+			node = verify(content);
+		} catch (NoSuchFileException e) {
+			return;
+		} catch (IOException e) {
+			LOGGER.warn("Could not read cache snapshot {}: {}", file, e.getMessage());
+			return;
+		}
+		if (node == null) {
+			LOGGER.warn("Cache snapshot {} failed its integrity check, ignoring it", file);
+			return;
+		}
+		if (node.path("version").asInt() != VERSION) {
+			LOGGER.warn("Cache snapshot {} has an unknown version, ignoring it", file);
+			return;
+		}
+		try {
+			final Integer roleCount = restoreRoles(node.path("roles"));
+			final Boolean isConfigurationRestored = restoreConfiguration(node.path("configuration"));
+			LOGGER.info("Restored {} roles and {} configuration from cache snapshot {}", roleCount,
+					isConfigurationRestored ? "the" : "no", file);
+		} catch (RuntimeException e) {
+			LOGGER.warn("Could not restore cache snapshot {}: {}", file, e.getMessage());
+		}
+	}
+
+	private JsonNode verify(final byte[] content) throws IOException {
+		int separator = 0;
+		while (separator < content.length && content[separator] != '\n') {
+			separator++;
+		}
+		if (separator == content.length) {
+			return null;
+		}
+		final byte[] mac = Arrays.copyOfRange(content, 0, separator);
+		final byte[] payload = Arrays.copyOfRange(content, separator + 1, content.length);
+		final byte[] expected = HmacUtils.hmacSha256Hex(signingKey, payload).getBytes(StandardCharsets.UTF_8);
+		if (!MessageDigest.isEqual(mac, expected)) {
+			return null;
+		}
+		return mapper.readTree(payload);
+	}
+
+	private ObjectNode getSnapshot() {
+		final ObjectNode node = mapper.createObjectNode();
+		node.put("version", VERSION);
+		final ArrayNode roles = node.putArray("roles");
+		for (final ConcurrentCacheEntry<String, Boolean> entry : getEntries(Boolean.class, ROLE_CACHE)) {
+			roles.addObject().put("key", entry.getKey()).put("value", entry.getValue()).put("expiresAt",
+					entry.getExpiresAt());
+		}
+		for (final ConcurrentCacheEntry<String, Configuration> entry : getEntries(Configuration.class,
+				CONFIGURATION_CACHE)) {
+			final Configuration configuration = entry.getValue();
+			final ObjectNode configurationNode = node.putObject("configuration");
+			configurationNode.put("expiresAt", entry.getExpiresAt());
+			configurationNode.put("issuer", configuration.getIssuer().getName());
+			configurationNode.put("authenticationEndPoint", configuration.getAuthenticationEndPoint().getName());
+			configurationNode.put("logoutEndPoint", configuration.getLogoutEndPoint().getName());
+			final ArrayNode algorithms = configurationNode.putArray("algorithms");
+			for (final Algorithm algorithm : configuration.getAlgorithms()) {
+				algorithms.add(algorithm.getName());
+			}
+			final ArrayNode keys = configurationNode.putArray("keys");
+			for (final Map.Entry<Name, Key> key : configuration.getKeys().entrySet()) {
+				keys.addObject().put("kid", key.getKey().getName())
+						.put("nbf", key.getValue().getNotBefore().getTime())
+						.put("n", key.getValue().getSecret().getValue())
+						.put("e", key.getValue().getExponent().getValue());
+			}
+		}
+		return node;
+	}
+
+	private <V> List<ConcurrentCacheEntry<String, V>> getEntries(final Class<V> clazzV, final String name) {
+		final ConcurrentCache<String, V> cache = concurrentCacheService.getCache(clazzV, name);
+		if (cache == null) {
+			return Collections.emptyList();
+		}
+		return cache.getEntries();
+	}
+
+	private Integer restoreRoles(final JsonNode node) {
+		final ConcurrentCache<String, Boolean> roleCache = concurrentCacheService.getCache(Boolean.class, ROLE_CACHE);
+		if (roleCache == null) {
+			return 0;
+		}
+		final List<JsonNode> entries = new ArrayList<JsonNode>();
+		for (final JsonNode entry : node) {
+			entries.add(entry);
+		}
+		Collections.sort(entries, new Comparator<JsonNode>() {
+			@Override
+			public int compare(final JsonNode left, final JsonNode right) {
+				return Long.compare(left.path("expiresAt").asLong(), right.path("expiresAt").asLong());
+			}
+		});
+		int count = 0;
+		for (final JsonNode entry : entries) {
+			if (roleCache.restore(entry.get("key").asText(), entry.get("value").asBoolean(),
+					entry.get("expiresAt").asLong())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private Boolean restoreConfiguration(final JsonNode node) {
+		if (node.isMissingNode()) {
+			return Boolean.FALSE;
+		}
+		final List<Algorithm> algorithms = new ArrayList<Algorithm>();
+		for (final JsonNode algorithm : node.get("algorithms")) {
+			algorithms.add(algorithmFactory.createAlgorithm(algorithm.asText()));
+		}
+		final Map<Name, Key> keys = new HashMap<Name, Key>();
+		for (final JsonNode key : node.get("keys")) {
+			keys.put(nameFactory.createKeyName(key.get("kid").asText()),
+					keyFactory.createKey(timeStampFactory.createTimeStamp(key.get("nbf").asLong()),
+							modulusFactory.createKeyValue(key.get("n").asText()),
+							exponentFactory.createKeyExponent(key.get("e").asText())));
+		}
+		final Configuration configuration = configurationFactory.createConfiguration(algorithms, keys,
+				issuerFactory.createIssuer(node.get("issuer").asText()),
+				endPointFactory.createEndPoint(node.get("authenticationEndPoint").asText()),
+				endPointFactory.createEndPoint(node.get("logoutEndPoint").asText()));
+		return configurationCache.restore(configuration, node.get("expiresAt").asLong());
+	}
+
+	private byte[] getSigningKey(final ApplicationSettings applicationSettings) {
+		final String applicationSecret = applicationSettings.getApplicationSecret().getValue();
+		final String principalSecret = applicationSettings.getPrincipalSecret().getValue();
+		if (applicationSecret.isEmpty() && principalSecret.isEmpty()) {
+			return null;
+		}
+		return String.format("%s\n%s\n%s", applicationSettings.getTenant().getName(), applicationSecret,
+				principalSecret).getBytes(StandardCharsets.UTF_8);
+	}
+
+	public static CacheSnapshotService getInstance() {
+		return INSTANCE;
+	}
+}
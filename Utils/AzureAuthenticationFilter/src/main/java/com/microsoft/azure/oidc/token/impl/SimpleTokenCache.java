@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.token.impl;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.microsoft.azure.oidc.common.name.Name;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCache;
+import com.microsoft.azure.oidc.concurrent.cache.ConcurrentCacheService;
+import com.microsoft.azure.oidc.concurrent.cache.impl.SimpleConcurrentCacheService;
+import com.microsoft.azure.oidc.configuration.ConfigurationCache;
+import com.microsoft.azure.oidc.configuration.impl.SimpleConfigurationCache;
+import com.microsoft.azure.oidc.configuration.key.Key;
+import com.microsoft.azure.oidc.exception.GeneralException;
+import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.token.Token;
+import com.microsoft.azure.oidc.token.TokenCache;
+
+/**
+ * Remembers tokens that already passed or failed validation, keyed by the
+ * SHA-256 of the raw token. A verified entry lasts until the token expires
+ * and a rejected entry for a few minutes. Either kind is ignored once the
+ * signing keys it was checked against have changed.
+ */
+public final class SimpleTokenCache implements TokenCache {
+	private static final TokenCache INSTANCE = new SimpleTokenCache();
+	private static final String CACHE_NAME = "tokenCache";
+	private static final long REJECTION_TTL = 300000L;
+
+	private final ConcurrentCacheService concurrentCacheService = SimpleConcurrentCacheService.getInstance();
+
+	private final ConfigurationCache configurationCache = SimpleConfigurationCache.getInstance();
+
+	@Override
+	public void initialise(final Long ttl, final TimeUnit timeUnit, final Long maxSize) {
+		concurrentCacheService.createCache(TokenCacheEntry.class, CACHE_NAME, ttl, timeUnit, maxSize);
+	}
+
+	@Override
+	public Token getToken(final String tokenString) {
+		if (tokenString == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final ConcurrentCache<String, TokenCacheEntry> cache = getCache();
+		if (cache == null || !configurationCache.isLoaded()) {
+			return null;
+		}
+		final TokenCacheEntry entry = cache.get(DigestUtils.sha256Hex(tokenString));
+		if (entry == null || entry.isExpired(System.currentTimeMillis()) || !isCurrent(entry.getKeys())) {
+			return null;
+		}
+		if (entry.isRejected()) {
+			throw new GeneralException("Token Failed Validation");
+		}
+		return entry.getToken();
+	}
+
+	@Override
+	public void putToken(final String tokenString, final Token token) {
+		if (tokenString == null || token == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		put(tokenString, new TokenCacheEntry(token, getKeys(), token.getExpiration().getTime() * 1000));
+	}
+
+	@Override
+	public void putRejectedToken(final String tokenString) {
+		if (tokenString == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		put(tokenString, new TokenCacheEntry(null, getKeys(), System.currentTimeMillis() + REJECTION_TTL));
+	}
+
+	private void put(final String tokenString, final TokenCacheEntry entry) {
+		final ConcurrentCache<String, TokenCacheEntry> cache = getCache();
+		if (cache == null || entry.getKeys() == null) {
+			return;
+		}
+		cache.put(DigestUtils.sha256Hex(tokenString), entry);
+	}
+
+	private Boolean isCurrent(final Map<Name, Key> keys) {
+		final Map<Name, Key> currentKeys = getKeys();
+		return keys == currentKeys || keys.equals(currentKeys);
+	}
+
+	private Map<Name, Key> getKeys() {
+		if (!configurationCache.isLoaded()) {
+			return null;
+		}
+		return configurationCache.load().getKeys();
+	}
+
+	private ConcurrentCache<String, TokenCacheEntry> getCache() {
+		return concurrentCacheService.getCache(TokenCacheEntry.class, CACHE_NAME);
+	}
+
+	public static TokenCache getInstance() {
+		return INSTANCE;
+	}
+}
@@ -30,6 +30,10 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
@@ -38,12 +42,14 @@ import org.slf4j.LoggerFactory;
 import com.microsoft.azure.oidc.application.settings.ApplicationSettings;
 import com.microsoft.azure.oidc.application.settings.ApplicationSettingsLoader;
 import com.microsoft.azure.oidc.application.settings.impl.SimpleApplicationSettingsLoader;
+import com.microsoft.azure.oidc.common.name.Name;
 import com.microsoft.azure.oidc.common.timestamp.TimeStamp;
 import com.microsoft.azure.oidc.common.timestamp.TimeStampFactory;
 import com.microsoft.azure.oidc.common.timestamp.impl.SimpleTimeStampFactory;
 import com.microsoft.azure.oidc.configuration.Configuration;
 import com.microsoft.azure.oidc.configuration.ConfigurationCache;
 import com.microsoft.azure.oidc.configuration.impl.SimpleConfigurationCache;
+import com.microsoft.azure.oidc.configuration.key.Key;
 import com.microsoft.azure.oidc.exception.GeneralException;
 import com.microsoft.azure.oidc.exception.PreconditionException;
 import com.microsoft.azure.oidc.filter.configuration.algorithm.AlgorithmConfigurationService;
@@ -63,37 +69,43 @@ public class SimpleTokenValidator implements TokenValidator {
 
 	private final AlgorithmConfigurationService algorithmConfigurationService = SimpleAlgorithmConfigurationService.getInstance();
 
+	private volatile PublicKeyCache publicKeyCache = new PublicKeyCache(null);
+
+	private final ThreadLocal<Map<String, Signature>> verifiers = new ThreadLocal<Map<String, Signature>>() {
+		@Override
+		protected Map<String, Signature> initialValue() {
+			return new HashMap<String, Signature>();
+		}
+	};
+
 	@Override
 	public Boolean validateSignature(final Token token) {
 		if (token == null) {
 			throw new PreconditionException("Required parameter is null");
 		}
-		if (algorithmConfigurationService.get().getAlgorithmClassMap().get(token.getAlgorithm().getName()).equals("HMAC")) {
+		final String algorithmName = token.getAlgorithm().getName();
+		final String algorithmClass = algorithmConfigurationService.get().getAlgorithmClassMap().get(algorithmName);
+		if (algorithmClass.equals("HMAC")) {
 			return Boolean.FALSE;
 		}
-		final Configuration configuration = configurationCache.load();
+		final Configuration configuration = configurationCache.load(token.getKeyName());
 		if (configuration == null) {
 			throw new GeneralException("Error loading configuration");
 		}
 		try {
+			final Key key = configuration.getKey(token.getKeyName());
+			if (key == null) {
+				return Boolean.FALSE;
+			}
 			final TimeStamp now = timeStampFactory.createTimeStamp(System.currentTimeMillis() / 1000);
-			if (configuration.getKey(token.getKeyName()).getNotBefore().compareTo(now) > 0) {
+			if (key.getNotBefore().compareTo(now) > 0) {
 				return Boolean.FALSE;
 			}
-			final Base64 decoder = new Base64();
-			final BigInteger exponent = new BigInteger(1,
-					decoder.decode(configuration.getKey(token.getKeyName()).getExponent().getValue()));
-			final BigInteger modulus = new BigInteger(1,
-					decoder.decode(configuration.getKey(token.getKeyName()).getSecret().getValue()));
-			final RSAPublicKeySpec pubKeySpec = new RSAPublicKeySpec(modulus, exponent);
-			final KeyFactory keyFactory = KeyFactory
-					.getInstance(algorithmConfigurationService.get().getAlgorithmClassMap().get(token.getAlgorithm().getName()));
-			final PublicKey pubKey = keyFactory.generatePublic(pubKeySpec);
-			final Signature sig = Signature
-					.getInstance(algorithmConfigurationService.get().getAlgorithmMap().get(token.getAlgorithm().getName()));
+			final PublicKey pubKey = getPublicKey(configuration, token.getKeyName(), key, algorithmClass);
+			final Signature sig = getVerifier(algorithmConfigurationService.get().getAlgorithmMap().get(algorithmName));
 			sig.initVerify(pubKey);
-			sig.update(token.getPayload().getValue().getBytes());
-			return sig.verify(decoder.decode(token.getSignature().getValue()));
+			sig.update(token.getPayload().getBytes());
+			return sig.verify(new Base64().decode(token.getSignature().getValue()));
 		} catch (NoSuchAlgorithmException | InvalidKeySpecException | SignatureException | InvalidKeyException e) {
 			LOGGER.error(e.getMessage(), e);
 			return Boolean.FALSE;
@@ -186,6 +198,65 @@ public class SimpleTokenValidator implements TokenValidator {
 		return Boolean.TRUE;
 	}
 
+	private PublicKey getPublicKey(final Configuration configuration, final Name keyName, final Key key,
+			final String algorithmClass) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		PublicKeyCache cache = publicKeyCache;
+		if (cache.getKeys() != configuration.getKeys()) {
+			cache = new PublicKeyCache(configuration.getKeys());
+			publicKeyCache = cache;
+		}
+		final ConcurrentMap<Name, PublicKey> publicKeys = cache.getPublicKeys(algorithmClass);
+		final PublicKey cachedKey = publicKeys.get(keyName);
+		if (cachedKey != null) {
+			return cachedKey;
+		}
+		final Base64 decoder = new Base64();
+		final BigInteger exponent = new BigInteger(1, decoder.decode(key.getExponent().getValue()));
+		final BigInteger modulus = new BigInteger(1, decoder.decode(key.getSecret().getValue()));
+		final RSAPublicKeySpec pubKeySpec = new RSAPublicKeySpec(modulus, exponent);
+		final PublicKey pubKey = KeyFactory.getInstance(algorithmClass).generatePublic(pubKeySpec);
+		final PublicKey previousKey = publicKeys.putIfAbsent(keyName, pubKey);
+		return previousKey == null ? pubKey : previousKey;
+	}
+
+	private Signature getVerifier(final String javaName) throws NoSuchAlgorithmException {
+		final Map<String, Signature> threadVerifiers = verifiers.get();
+		Signature verifier = threadVerifiers.get(javaName);
+		if (verifier == null) {
+			verifier = Signature.getInstance(javaName);
+			threadVerifiers.put(javaName, verifier);
+		}
+		return verifier;
+	}
+
+	/**
+	 * Public keys parsed from one keystore, by algorithm class and key name. A
+	 * new keystore in the configuration replaces the whole cache.
+	 */
+	private static final class PublicKeyCache {
+		private final Map<Name, Key> keys;
+		private final ConcurrentMap<String, ConcurrentMap<Name, PublicKey>> publicKeys =
+				new ConcurrentHashMap<String, ConcurrentMap<Name, PublicKey>>();
+
+		PublicKeyCache(final Map<Name, Key> keys) {
+			this.keys = keys;
+		}
+
+		Map<Name, Key> getKeys() {
+			return keys;
+		}
+
+		ConcurrentMap<Name, PublicKey> getPublicKeys(final String algorithmClass) {
+			final ConcurrentMap<Name, PublicKey> algorithmKeys = publicKeys.get(algorithmClass);
+			if (algorithmKeys != null) {
+				return algorithmKeys;
+			}
+			final ConcurrentMap<Name, PublicKey> newKeys = new ConcurrentHashMap<Name, PublicKey>();
+			final ConcurrentMap<Name, PublicKey> previousKeys = publicKeys.putIfAbsent(algorithmClass, newKeys);
+			return previousKeys == null ? newKeys : previousKeys;
+		}
+	}
+
 	public static TokenValidator getInstance() {
 		return INSTANCE;
 	}
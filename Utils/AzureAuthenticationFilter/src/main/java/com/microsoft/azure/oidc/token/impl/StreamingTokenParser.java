@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.token.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.microsoft.azure.oidc.common.algorithm.Algorithm;
+import com.microsoft.azure.oidc.common.algorithm.AlgorithmFactory;
+import com.microsoft.azure.oidc.common.algorithm.impl.SimpleAlgorithmFactory;
+import com.microsoft.azure.oidc.common.id.ID;
+import com.microsoft.azure.oidc.common.id.IDFactory;
+import com.microsoft.azure.oidc.common.id.impl.SimpleIDFactory;
+import com.microsoft.azure.oidc.common.issuer.Issuer;
+import com.microsoft.azure.oidc.common.issuer.IssuerFactory;
+import com.microsoft.azure.oidc.common.issuer.impl.SimpleIssuerFactory;
+import com.microsoft.azure.oidc.common.name.Name;
+import com.microsoft.azure.oidc.common.name.NameFactory;
+import com.microsoft.azure.oidc.common.name.impl.SimpleNameFactory;
+import com.microsoft.azure.oidc.common.timestamp.TimeStampFactory;
+import com.microsoft.azure.oidc.common.timestamp.impl.SimpleTimeStampFactory;
+import com.microsoft.azure.oidc.exception.GeneralException;
+import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.token.Token;
+import com.microsoft.azure.oidc.token.TokenFactory;
+import com.microsoft.azure.oidc.token.TokenParser;
+import com.microsoft.azure.oidc.token.email.Email;
+import com.microsoft.azure.oidc.token.email.EmailFactory;
+import com.microsoft.azure.oidc.token.email.impl.SimpleEmailFactory;
+import com.microsoft.azure.oidc.token.payload.PayloadFactory;
+import com.microsoft.azure.oidc.token.payload.impl.SimplePayloadFactory;
+import com.microsoft.azure.oidc.token.signature.SignatureFactory;
+import com.microsoft.azure.oidc.token.signature.impl.SimpleSignatureFactory;
+
+/**
+ * Token parser that works on the encoded bytes of the token. Segments are
+ * base64url decoded into byte arrays and read with a shared streaming JSON
+ * parser that skips every claim the filter does not consult. Low cardinality
+ * values (algorithm, key id, issuer and audience) are shared between tokens.
+ */
+public final class StreamingTokenParser implements TokenParser {
+	private static final TokenParser INSTANCE = new StreamingTokenParser();
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final int MAXIMUM_SHARED_VALUES = 64;
+	private static final byte[] DECODE_TABLE = new byte[128];
+
+	static {
+		for (int index = 0; index < DECODE_TABLE.length; index++) {
+			DECODE_TABLE[index] = -1;
+		}
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+		for (int index = 0; index < alphabet.length(); index++) {
+			DECODE_TABLE[alphabet.charAt(index)] = (byte) index;
+		}
+		DECODE_TABLE['+'] = 62;
+		DECODE_TABLE['-'] = 62;
+		DECODE_TABLE['/'] = 63;
+		DECODE_TABLE['_'] = 63;
+	}
+
+	private final SignatureFactory signatureFactory = SimpleSignatureFactory.getInstance();
+
+	private final TokenFactory tokenFactory = SimpleTokenFactory.getInstance();
+
+	private final TimeStampFactory timeStampFactory = SimpleTimeStampFactory.getInstance();
+
+	private final IssuerFactory issuerFactory = SimpleIssuerFactory.getInstance();
+
+	private final IDFactory iDFactory = SimpleIDFactory.getInstance();
+
+	private final NameFactory nameFactory = SimpleNameFactory.getInstance();
+
+	private final AlgorithmFactory algorithmFactory = SimpleAlgorithmFactory.getInstanc();
+
+	private final PayloadFactory payloadFactory = SimplePayloadFactory.getInstance();
+
+	private final EmailFactory emailFactory = SimpleEmailFactory.getInstance();
+
+	private final ConcurrentMap<String, Algorithm> algorithms = new ConcurrentHashMap<String, Algorithm>();
+
+	private final ConcurrentMap<String, Name> keyNames = new ConcurrentHashMap<String, Name>();
+
+	private final ConcurrentMap<String, Issuer> issuers = new ConcurrentHashMap<String, Issuer>();
+
+	private final ConcurrentMap<String, ID> audiences = new ConcurrentHashMap<String, ID>();
+
+	@Override
+	public Token getToken(final String value) {
+		if (value == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+		final int headerEnd = indexOf(bytes, 0);
+		final int bodyEnd = headerEnd < 0 ? -1 : indexOf(bytes, headerEnd + 1);
+		if (headerEnd <= 0 || bodyEnd <= headerEnd + 1 || bodyEnd == bytes.length - 1
+				|| indexOf(bytes, bodyEnd + 1) >= 0) {
+			throw new IllegalStateException(
+					String.format("Incorrect number of parts: Expected 3 got %s", countParts(bytes)));
+		}
+		final Header header = parseHeader(decode(bytes, 0, headerEnd));
+		final Body body = parseBody(decode(bytes, headerEnd + 1, bodyEnd));
+		return tokenFactory.createToken(getKeyName(header.keyName), getAlgorithm(header.algorithm),
+				timeStampFactory.createTimeStamp(body.issuedAt), timeStampFactory.createTimeStamp(body.notBefore),
+				timeStampFactory.createTimeStamp(body.expiration),
+				iDFactory.createID(body.userID), body.userEmails,
+				getIssuer(body.issuer), getAudience(body.audience), payloadFactory.createPayload(bytes, bodyEnd),
+				signatureFactory.createSignature(value.substring(bodyEnd + 1)));
+	}
+
+	private Header parseHeader(final byte[] part) {
+		final Header header = new Header();
+		try (final JsonParser parser = JSON_FACTORY.createParser(part)) {
+			startObject(parser);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("alg".equals(field)) {
+					header.algorithm = getText(parser);
+				} else if ("kid".equals(field)) {
+					header.keyName = getText(parser);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return header;
+		} catch (IOException e) {
+			throw new GeneralException("IO Exception", e);
+		}
+	}
+
+	private Body parseBody(final byte[] part) {
+		final Body body = new Body();
+		try (final JsonParser parser = JSON_FACTORY.createParser(part)) {
+			startObject(parser);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("iat".equals(field)) {
+					body.issuedAt = parser.getValueAsLong(0L);
+				} else if ("nbf".equals(field)) {
+					body.notBefore = parser.getValueAsLong(0L);
+				} else if ("exp".equals(field)) {
+					body.expiration = parser.getValueAsLong(0L);
+				} else if ("iss".equals(field)) {
+					body.issuer = getText(parser);
+				} else if ("aud".equals(field)) {
+					body.audience = getText(parser);
+				} else if ("oid".equals(field)) {
+					body.userID = getText(parser);
+				} else if ("emails".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						body.userEmails.add(emailFactory.createEmail(getText(parser)));
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return body;
+		} catch (IOException e) {
+			throw new GeneralException("IO Exception", e);
+		}
+	}
+
+	private void startObject(final JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new GeneralException("Token segment is not a JSON object");
+		}
+	}
+
+	private String getText(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken().isStructStart()) {
+			parser.skipChildren();
+			return "";
+		}
+		return parser.getText();
+	}
+
+	private Algorithm getAlgorithm(final String name) {
+		if (name == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		Algorithm algorithm = algorithms.get(name);
+		if (algorithm == null) {
+			algorithm = algorithmFactory.createAlgorithm(name);
+			if (algorithms.size() < MAXIMUM_SHARED_VALUES) {
+				algorithms.putIfAbsent(name, algorithm);
+			}
+		}
+		return algorithm;
+	}
+
+	private Name getKeyName(final String name) {
+		if (name == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		Name keyName = keyNames.get(name);
+		if (keyName == null) {
+			keyName = nameFactory.createKeyName(name);
+			if (keyNames.size() < MAXIMUM_SHARED_VALUES) {
+				keyNames.putIfAbsent(name, keyName);
+			}
+		}
+		return keyName;
+	}
+
+	private Issuer getIssuer(final String name) {
+		if (name == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		Issuer issuer = issuers.get(name);
+		if (issuer == null) {
+			issuer = issuerFactory.createIssuer(name);
+			if (issuers.size() < MAXIMUM_SHARED_VALUES) {
+				issuers.putIfAbsent(name, issuer);
+			}
+		}
+		return issuer;
+	}
+
+	private ID getAudience(final String value) {
+		if (value == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		ID audience = audiences.get(value);
+		if (audience == null) {
+			audience = iDFactory.createID(value);
+			if (audiences.size() < MAXIMUM_SHARED_VALUES) {
+				audiences.putIfAbsent(value, audience);
+			}
+		}
+		return audience;
+	}
+
+	private static int indexOf(final byte[] bytes, final int from) {
+		for (int index = from; index < bytes.length; index++) {
+			if (bytes[index] == '.') {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private static int countParts(final byte[] bytes) {
+		int parts = 1;
+		for (int index = indexOf(bytes, 0); index >= 0; index = indexOf(bytes, index + 1)) {
+			parts++;
+		}
+		return parts;
+	}
+
+	private static byte[] decode(final byte[] bytes, final int from, final int to) {
+		int end = to;
+		while (end > from && bytes[end - 1] == '=') {
+			end--;
+		}
+		final int length = end - from;
+		if (length % 4 == 1) {
+			throw new GeneralException("Invalid base64 segment length");
+		}
+		final byte[] result = new byte[length * 3 / 4];
+		int buffer = 0;
+		int bits = 0;
+		int position = 0;
+		for (int index = from; index < end; index++) {
+			final int character = bytes[index];
+			final int digit = character < 0 ? -1 : DECODE_TABLE[character];
+			if (digit < 0) {
+				throw new GeneralException("Invalid base64 character");
+			}
+			buffer = (buffer << 6) | digit;
+			bits += 6;
+			if (bits >= 8) {
+				bits -= 8;
+				result[position++] = (byte) (buffer >> bits);
+			}
+		}
+		return result;
+	}
+
+	private static final class Header {
+		private String algorithm;
+		private String keyName;
+	}
+
+	private static final class Body {
+		private long issuedAt = 0L;
+		private long notBefore = 0L;
+		private long expiration = Long.MAX_VALUE;
+		private String issuer;
+		private String audience;
+		private String userID;
+		private final List<Email> userEmails = new ArrayList<Email>();
+	}
+
+	public static TokenParser getInstance() {
+		return INSTANCE;
+	}
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.token.impl;
+
+import java.util.Map;
+
+import com.microsoft.azure.oidc.common.name.Name;
+import com.microsoft.azure.oidc.configuration.key.Key;
+import com.microsoft.azure.oidc.token.Token;
+
+final class TokenCacheEntry {
+	private final Token token;
+	private final Map<Name, Key> keys;
+	private final long expiresAt;
+
+	public TokenCacheEntry(final Token token, final Map<Name, Key> keys, final long expiresAt) {
+		this.token = token;
+		this.keys = keys;
+		this.expiresAt = expiresAt;
+	}
+
+	public Token getToken() {
+		return token;
+	}
+
+	public Map<Name, Key> getKeys() {
+		return keys;
+	}
+
+	public Boolean isRejected() {
+		return token == null;
+	}
+
+	public Boolean isExpired(final long now) {
+		return expiresAt <= now;
+	}
+}
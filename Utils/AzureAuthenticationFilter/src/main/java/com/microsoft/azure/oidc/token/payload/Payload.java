@@ -21,9 +21,13 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.token.payload;
 
+import java.nio.ByteBuffer;
+
 public interface Payload {
 
 	String getValue();
+
+	ByteBuffer getBytes();
 	
 	boolean equals(Object object);
 	
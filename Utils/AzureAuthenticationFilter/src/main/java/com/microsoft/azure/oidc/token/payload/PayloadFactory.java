@@ -24,5 +24,7 @@ package com.microsoft.azure.oidc.token.payload;
 public interface PayloadFactory {
 
 	Payload createPayload(String header, String body);
+
+	Payload createPayload(byte[] value, int length);
 	
 }
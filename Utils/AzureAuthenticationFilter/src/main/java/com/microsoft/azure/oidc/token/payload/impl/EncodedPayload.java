@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.token.payload.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.microsoft.azure.oidc.exception.PreconditionException;
+import com.microsoft.azure.oidc.token.payload.Payload;
+
+/**
+ * Signing input kept as the raw bytes of the encoded token. Only the first
+ * {@code length} bytes ("header.body") belong to the payload; the string form
+ * is built on first use.
+ */
+final class EncodedPayload implements Payload {
+	private final byte[] value;
+	private final int length;
+	private volatile String stringValue;
+
+	public EncodedPayload(final byte[] value, final int length) {
+		if (value == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		this.value = value;
+		this.length = length;
+	}
+
+	@Override
+	public String getValue() {
+		String result = stringValue;
+		if (result == null) {
+			result = new String(value, 0, length, StandardCharsets.US_ASCII);
+			stringValue = result;
+		}
+		return result;
+	}
+
+	@Override
+	public ByteBuffer getBytes() {
+		return ByteBuffer.wrap(value, 0, length).asReadOnlyBuffer();
+	}
+
+	@Override
+	public String toString() {
+		return getValue();
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		for (int index = 0; index < length; index++) {
+			result = 31 * result + value[index];
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		EncodedPayload other = (EncodedPayload) obj;
+		if (length != other.length)
+			return false;
+		for (int index = 0; index < length; index++) {
+			if (value[index] != other.value[index])
+				return false;
+		}
+		return true;
+	}
+}
@@ -21,12 +21,17 @@
  ******************************************************************************/
 package com.microsoft.azure.oidc.token.payload.impl;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import com.microsoft.azure.oidc.exception.PreconditionException;
 import com.microsoft.azure.oidc.token.payload.Payload;
 
 final class SimplePayload implements Payload {
 	private final String header;
 	private final String body;
+	private final String value;
+	private final byte[] bytes;
 	
 	public SimplePayload(final String header, final String body) {
 		if (header == null || body == null) {
@@ -34,24 +39,24 @@ final class SimplePayload implements Payload {
 		}
 		this.header = header;
 		this.body = body;
+		this.value = new StringBuilder(header.length() + body.length() + 1).append(header).append('.').append(body)
+				.toString();
+		this.bytes = value.getBytes(StandardCharsets.US_ASCII);
 	}
 
 	@Override
 	public String getValue() {
-		final StringBuffer buffer = new StringBuffer();
-		buffer.append(header);
-		buffer.append(".");
-		buffer.append(body);
-		return buffer.toString();
+		return value;
+	}
+
+	@Override
+	public ByteBuffer getBytes() {
+		return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
 	}
 
 	@Override
 	public String toString() {
-		final StringBuffer buffer = new StringBuffer();
-		buffer.append(header);
-		buffer.append(".");
-		buffer.append(body);
-		return buffer.toString();
+		return value;
 	}
 
 	@Override
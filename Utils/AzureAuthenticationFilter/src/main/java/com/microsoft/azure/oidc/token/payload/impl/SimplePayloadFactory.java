@@ -36,6 +36,17 @@ public final class SimplePayloadFactory implements PayloadFactory {
 		return new SimplePayload(header, body);
 	}
 
+	@Override
+	public Payload createPayload(final byte[] value, final int length) {
+		if (value == null) {
+			throw new PreconditionException("Required parameter is null");
+		}
+		if (length < 0 || length > value.length) {
+			throw new IllegalArgumentException("Payload length is out of range");
+		}
+		return new EncodedPayload(value, length);
+	}
+
 	public static PayloadFactory getInstance() {
 		return INSTANCE;
 	}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.filter.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.azure.oidc.benchmark.BenchmarkEnvironment;
+import com.microsoft.azure.oidc.benchmark.StubIdentityProvider;
+
+/**
+ * Async mode under more suspended requests than the shared pool has threads.
+ * Every request starts with a cold role cache, so each one is suspended and
+ * waits on a Graph API call.
+ */
+public class AsyncResolutionTest {
+	private static final int POOL_SIZE = 2;
+	private static final int USERS = 16;
+	private static final long EXECUTOR_TIMEOUT = 5000L;
+
+	private StubIdentityProvider identityProvider;
+	private Server server;
+
+	@Before
+	public void setUp() throws Exception {
+		identityProvider = new StubIdentityProvider();
+		identityProvider.setGraphLatency(100L);
+		identityProvider.start();
+		BenchmarkEnvironment.configure(identityProvider);
+		final Map<String, String> parameters = BenchmarkEnvironment.getConfigurationParameters();
+		parameters.put("asyncMode", "true");
+		parameters.put("executorPoolSize", String.valueOf(POOL_SIZE));
+		parameters.put("executorTimeout", String.valueOf(EXECUTOR_TIMEOUT));
+		server = startServer(parameters);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+		identityProvider.stop();
+	}
+
+	@Test
+	public void resolvesMoreSuspendedRequestsThanPoolThreads() throws Exception {
+		final URL url = new URL(String.format("http://127.0.0.1:%s%s",
+				((ServerConnector) server.getConnectors()[0]).getLocalPort(), BenchmarkEnvironment.AUTHORISED_URI));
+		final AtomicIntegerArray statuses = new AtomicIntegerArray(USERS);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(USERS);
+		for (int i = 0; i < USERS; i++) {
+			final int user = i;
+			final String token = identityProvider.issueToken(String.format("00000000-0000-0000-0000-%012d", 300 + i));
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						statuses.set(user, send(url, token));
+					} catch (InterruptedException | IOException e) {
+						statuses.set(user, -1);
+					} finally {
+						done.countDown();
+					}
+				}
+			}, String.format("async-resolution-user-%s", i));
+			thread.setDaemon(true);
+			thread.start();
+		}
+		final long started = System.currentTimeMillis();
+		start.countDown();
+		done.await(60L, TimeUnit.SECONDS);
+		final long elapsed = System.currentTimeMillis() - started;
+
+		final Map<Integer, Integer> counts = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < USERS; i++) {
+			final Integer count = counts.get(statuses.get(i));
+			counts.put(statuses.get(i), count == null ? 1 : count + 1);
+		}
+		assertEquals(String.format("{200=%s}", USERS), counts.toString());
+		assertTrue(String.format("finished in %s ms", elapsed), elapsed < EXECUTOR_TIMEOUT);
+	}
+
+	private int send(final URL url, final String token) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setInstanceFollowRedirects(false);
+		connection.setRequestProperty("Cookie", String.format("id_token=%s", token));
+		final int status = connection.getResponseCode();
+		final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if (in != null) {
+			in.close();
+		}
+		return status;
+	}
+
+	private Server startServer(final Map<String, String> parameters) throws Exception {
+		final Path webRoot = Files.createTempDirectory("oidc-async-test");
+		for (final Map.Entry<String, String> resource : BenchmarkEnvironment.getConfigurationResources().entrySet()) {
+			final Path path = webRoot.resolve(resource.getKey().substring(1));
+			Files.createDirectories(path.getParent());
+			Files.write(path, resource.getValue().getBytes(StandardCharsets.UTF_8));
+		}
+		final Server result = new Server();
+		final ServerConnector connector = new ServerConnector(result);
+		connector.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+		result.addConnector(connector);
+		final ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+		context.setResourceBase(webRoot.toString());
+		final FilterHolder filterHolder = new FilterHolder(SimpleAuthenticationFilter.class);
+		filterHolder.setInitParameters(parameters);
+		filterHolder.setAsyncSupported(true);
+		context.addFilter(filterHolder, "/*", EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+		final ServletHolder servletHolder = new ServletHolder(new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+					throws IOException {
+				response.setContentType("text/plain");
+				response.getWriter().write("OK");
+			}
+		});
+		servletHolder.setAsyncSupported(true);
+		context.addServlet(servletHolder, "/*");
+		result.setHandler(context);
+		result.start();
+		return result;
+	}
+}
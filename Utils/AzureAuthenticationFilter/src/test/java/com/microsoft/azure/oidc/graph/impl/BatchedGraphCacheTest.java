@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.graph.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.Filter;
+import javax.servlet.ServletException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.azure.oidc.benchmark.BenchmarkEnvironment;
+import com.microsoft.azure.oidc.benchmark.ServletFixtures;
+import com.microsoft.azure.oidc.benchmark.ServletFixtures.CountingFilterChain;
+import com.microsoft.azure.oidc.benchmark.StubIdentityProvider;
+import com.microsoft.azure.oidc.benchmark.StubIdentityProvider.Route;
+import com.microsoft.azure.oidc.benchmark.TokenFixtures;
+import com.microsoft.azure.oidc.filter.impl.SimpleAuthenticationFilter;
+
+/**
+ * Batched group membership against the stub Graph API. Three URIs need
+ * three different roles, and the stub makes every user a member of
+ * {@link StubIdentityProvider#MEMBER_ROLE} only.
+ */
+public class BatchedGraphCacheTest {
+	private static final String AUTHENTICATION_RESOURCE = "/WEB-INF/configuration/authentication.json";
+	private static final String AUTHENTICATION_CONFIGURATION = "{\"exclusionUriPatterns\":[\"/public/*\"],"
+			+ "\"authorisationUriPatterns\":[{\"uriPattern\":\"/members/*\",\"roles\":[\"%s\"]},"
+			+ "{\"uriPattern\":\"/admins/*\",\"roles\":[\"Admins\"]},"
+			+ "{\"uriPattern\":\"/editors/*\",\"roles\":[\"Editors\"]}]}";
+
+	private StubIdentityProvider identityProvider;
+	private Filter filter;
+
+	@Before
+	public void setUp() throws IOException, ServletException {
+		identityProvider = new StubIdentityProvider();
+		identityProvider.start();
+		BenchmarkEnvironment.configure(identityProvider);
+		final Map<String, String> parameters = BenchmarkEnvironment.getConfigurationParameters();
+		parameters.put("graphMembership", "batched");
+		final Map<String, String> resources = BenchmarkEnvironment.getConfigurationResources();
+		resources.put(AUTHENTICATION_RESOURCE,
+				String.format(AUTHENTICATION_CONFIGURATION, StubIdentityProvider.MEMBER_ROLE));
+		filter = new SimpleAuthenticationFilter();
+		filter.init(ServletFixtures.filterConfig(parameters, resources));
+	}
+
+	@After
+	public void tearDown() {
+		filter.destroy();
+		identityProvider.stop();
+	}
+
+	@Test
+	public void resolvesEveryRoleWithOneMembershipCall() throws IOException, ServletException {
+		final String token = TokenFixtures.signedToken("00000000-0000-0000-0000-000000000101");
+		final Map<Route, Long> before = identityProvider.getCallCounts();
+
+		assertEquals(1L, filter("/members/index.html", token));
+		assertEquals(0L, filter("/admins/index.html", token));
+		assertEquals(0L, filter("/editors/index.html", token));
+
+		final Map<Route, Long> calls = getCalls(before);
+		assertEquals(Long.valueOf(1), calls.get(Route.MEMBER_GROUPS));
+		assertEquals(Long.valueOf(0), calls.get(Route.IS_MEMBER_OF));
+	}
+
+	@Test
+	public void reusesTheGraphTokenAndGroupIDs() throws IOException, ServletException {
+		filter("/members/index.html", TokenFixtures.signedToken("00000000-0000-0000-0000-000000000201"));
+		final Map<Route, Long> before = identityProvider.getCallCounts();
+
+		assertEquals(1L, filter("/members/index.html", TokenFixtures.signedToken("00000000-0000-0000-0000-000000000202")));
+
+		final Map<Route, Long> calls = getCalls(before);
+		assertEquals(Long.valueOf(1), calls.get(Route.MEMBER_GROUPS));
+		assertEquals(Long.valueOf(0), calls.get(Route.TOKEN));
+		assertEquals(Long.valueOf(0), calls.get(Route.GROUPS));
+	}
+
+	@Test
+	public void doesNotCacheAFailedGroupLookupAsADenial() throws IOException, ServletException {
+		final String token = TokenFixtures.signedToken("00000000-0000-0000-0000-000000000301");
+		identityProvider.setFailingRoute(Route.GROUPS);
+
+		assertEquals(0L, filter("/members/index.html", token));
+
+		identityProvider.setFailingRoute(null);
+		assertEquals(1L, filter("/members/index.html", token));
+	}
+
+	private long filter(final String requestURI, final String token) throws IOException, ServletException {
+		final CountingFilterChain chain = new CountingFilterChain();
+		filter.doFilter(ServletFixtures.request(requestURI, token), ServletFixtures.response(), chain);
+		return chain.getCount();
+	}
+
+	private Map<Route, Long> getCalls(final Map<Route, Long> before) {
+		final Map<Route, Long> calls = new HashMap<Route, Long>();
+		for (final Map.Entry<Route, Long> entry : identityProvider.getCallCounts().entrySet()) {
+			calls.put(entry.getKey(), entry.getValue() - before.get(entry.getKey()));
+		}
+		return calls;
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ ******************************************************************************/
+package com.microsoft.azure.oidc.graph.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.ServletException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.azure.oidc.benchmark.BenchmarkEnvironment;
+import com.microsoft.azure.oidc.benchmark.ServletFixtures;
+import com.microsoft.azure.oidc.benchmark.ServletFixtures.CountingFilterChain;
+import com.microsoft.azure.oidc.benchmark.StubIdentityProvider;
+import com.microsoft.azure.oidc.benchmark.StubIdentityProvider.Route;
+import com.microsoft.azure.oidc.benchmark.TokenFixtures;
+import com.microsoft.azure.oidc.filter.impl.SimpleAuthenticationFilter;
+
+/**
+ * One role check per Graph API call against the stub Graph API, which makes
+ * every user a member of {@link StubIdentityProvider#MEMBER_ROLE}.
+ */
+public class SimpleGraphCacheTest {
+	private StubIdentityProvider identityProvider;
+	private Filter filter;
+
+	@Before
+	public void setUp() throws IOException, ServletException {
+		identityProvider = new StubIdentityProvider();
+		identityProvider.start();
+		BenchmarkEnvironment.configure(identityProvider);
+		filter = new SimpleAuthenticationFilter();
+		filter.init(ServletFixtures.filterConfig(BenchmarkEnvironment.getConfigurationParameters(),
+				BenchmarkEnvironment.getConfigurationResources()));
+	}
+
+	@After
+	public void tearDown() {
+		filter.destroy();
+		identityProvider.stop();
+	}
+
+	@Test
+	public void doesNotCacheAFailedGroupLookupAsADenial() throws IOException, ServletException {
+		final String token = TokenFixtures.signedToken("00000000-0000-0000-0000-000000000401");
+		identityProvider.setFailingRoute(Route.GROUPS);
+
+		assertEquals(0L, filter(BenchmarkEnvironment.AUTHORISED_URI, token));
+
+		identityProvider.setFailingRoute(null);
+		assertEquals(1L, filter(BenchmarkEnvironment.AUTHORISED_URI, token));
+	}
+
+	private long filter(final String requestURI, final String token) throws IOException, ServletException {
+		final CountingFilterChain chain = new CountingFilterChain();
+		filter.doFilter(ServletFixtures.request(requestURI, token), ServletFixtures.response(), chain);
+		return chain.getCount();
+	}
+}
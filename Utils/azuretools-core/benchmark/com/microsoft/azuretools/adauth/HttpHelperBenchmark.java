@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Microsoft Corporation
+ *   <p/>
+ *  All rights reserved.
+ *   <p/>
+ *  MIT License
+ *   <p/>
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ *  to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *  <p/>
+ *  The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ *  the Software.
+ *   <p/>
+ *  THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ *  THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ *  TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package com.microsoft.azuretools.adauth;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/// <summary>
+/// Token requests against a local stub token endpoint, through HttpHelper and through the implementation it
+/// replaced, which buffered every body and read error bodies a character at a time. The stub counts the
+/// connections it accepts, which are printed after each run.
+/// </summary>
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpHelperBenchmark {
+    private final static String Tenant = "72f988bf-86f1-41af-91ab-2d7cd011db47";
+
+    private final Set<Integer> remotePorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final AtomicLong requestCount = new AtomicLong();
+    // kept so the level set on it is not collected; otherwise every error response is logged to the console
+    private final Logger adauthLogger = Logger.getLogger(HttpHelper.class.getPackage().getName());
+    private HttpServer server;
+    private ExecutorService executor;
+    private String tokenUri;
+    private String errorUri;
+    private Map<String, String> requestParameters;
+    private byte[] tokenResponse;
+    private byte[] errorResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        adauthLogger.setLevel(Level.OFF);
+        // without this every response waits out the client's delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        tokenResponse = String.format("{\"token_type\":\"Bearer\",\"expires_in\":\"3599\",\"expires_on\":\"%d\","
+                + "\"resource\":\"https://management.core.windows.net/\",\"access_token\":\"%s\",\"refresh_token\":\"%s\"}",
+                System.currentTimeMillis() / 1000 + 3600, token(1200), token(800)).getBytes(StandardCharsets.UTF_8);
+        errorResponse = ("{\"error\":\"invalid_grant\",\"error_description\":\"AADSTS70002: The refresh token has expired "
+                + "due to inactivity.\",\"error_codes\":[70002],\"correlation_id\":\"" + UUID.randomUUID() + "\"}").getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try (InputStream in = exchange.getRequestBody()) {
+                    while (in.read() != -1) {
+                    }
+                    remotePorts.add(exchange.getRemoteAddress().getPort());
+                    requestCount.incrementAndGet();
+                    boolean error = exchange.getRequestURI().getPath().startsWith("/error/");
+                    byte[] body = error ? errorResponse : tokenResponse;
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                    exchange.sendResponseHeaders(error ? 400 : 200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.start();
+        String base = String.format("http://%s:%d", server.getAddress().getHostString(), server.getAddress().getPort());
+        tokenUri = String.format("%s/%s/oauth2/token", base, Tenant);
+        errorUri = String.format("%s/error/%s/oauth2/token", base, Tenant);
+
+        requestParameters = new HashMap<>();
+        requestParameters.put(OAuthParameter.Resource, "https://management.core.windows.net/");
+        requestParameters.put(OAuthParameter.ClientId, "61d65f5a-6e3b-468b-af73-a033f5098c5c");
+        requestParameters.put(OAuthParameter.GrantType, OAuthGrantType.RefreshToken);
+        requestParameters.put(OAuthParameter.RefreshToken, token(800));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+        System.out.println(String.format("%n%d requests over %d connections", requestCount.get(), remotePorts.size()));
+    }
+
+    @Benchmark
+    public TokenResponse legacy() throws IOException {
+        return legacyPost(tokenUri, requestParameters, callState(), TokenResponse.class);
+    }
+
+    @Benchmark
+    public TokenResponse streaming() throws IOException {
+        return HttpHelper.sendPostRequestAndDeserializeJsonResponse(tokenUri, requestParameters, callState(), TokenResponse.class);
+    }
+
+    @Benchmark
+    public IOException legacyError() {
+        try {
+            legacyPost(errorUri, requestParameters, callState(), TokenResponse.class);
+            throw new IllegalStateException("The stub token endpoint did not fail");
+        } catch (IOException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public IOException streamingError() {
+        try {
+            HttpHelper.sendPostRequestAndDeserializeJsonResponse(errorUri, requestParameters, callState(), TokenResponse.class);
+            throw new IllegalStateException("The stub token endpoint did not fail");
+        } catch (IOException ex) {
+            return ex;
+        }
+    }
+
+    private static CallState callState() {
+        return AcquireTokenHandlerBase.createCallState(null);
+    }
+
+    private static String token(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    // HttpHelper.sendPostRequestAndDeserializeJsonResponse before it deserialized from the stream
+    private static <T> T legacyPost(String uri, Map<String, String> requestParameters, CallState callState, Class<T> cls)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+        connection.setRequestProperty(OAuthHeader.CorrelationId, callState.correlationId.toString());
+        connection.setRequestProperty(OAuthHeader.RequestCorrelationIdInResponse, "true");
+        connection.setRequestProperty("Content-Type",
+                "application/x-www-form-urlencoded; charset=" + StandardCharsets.UTF_8.name());
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setDoInput(true);
+        connection.setUseCaches(false);
+        connection.setReadTimeout(10000);
+
+        byte[] requestData = UriUtils.toQueryString(requestParameters).getBytes(StandardCharsets.UTF_8);
+        OutputStream output = connection.getOutputStream();
+        output.write(requestData);
+        output.close();
+
+        int statusCode = connection.getResponseCode();
+        if (statusCode != HttpURLConnection.HTTP_OK) {
+            StringBuilder err = new StringBuilder();
+            try (InputStreamReader errorReader = new InputStreamReader(connection.getErrorStream())) {
+                int data;
+                while ((data = errorReader.read()) != -1) {
+                    err.append((char) data);
+                }
+            }
+            String message = "AD Auth token endpoint returned HTTP status code " + Integer.toString(statusCode)
+                    + ". Error info: " + err.toString();
+            TokenResponse r = JsonHelper.deserialize(TokenResponse.class, err.toString());
+            if (r.error.equals("invalid_grant"))
+                throw new AuthException(message);
+            else
+                throw new IOException(message);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line);
+            }
+        }
+        return JsonHelper.deserialize(cls, sb.toString());
+    }
+}
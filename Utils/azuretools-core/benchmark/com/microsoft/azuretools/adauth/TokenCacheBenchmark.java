@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) Microsoft Corporation
+ *   <p/>
+ *  All rights reserved.
+ *   <p/>
+ *  MIT License
+ *   <p/>
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ *  to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *  <p/>
+ *  The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ *  the Software.
+ *   <p/>
+ *  THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ *  THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ *  TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.microsoft.azuretools.adauth;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// Load time of a serialized token cache against its size, for the legacy schema (version 1) and the indexed one.
+/// </summary>
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenCacheBenchmark {
+    private final static String ClientId = "61d65f5a-6e3b-468b-af73-a033f5098c5c";
+    private final static String[] Resources = {
+            "https://management.core.windows.net/",
+            "https://graph.windows.net/",
+            "https://vault.azure.net"
+    };
+
+    @Param({"3", "30", "300", "3000"})
+    public int size;
+
+    private byte[] legacyState;
+    private byte[] state;
+    private String lookupAuthority;
+
+    @Setup
+    public void setup() throws IOException {
+        TokenCache cache = new TokenCache();
+        long expiresOn = System.currentTimeMillis() / 1000 + 3600;
+        for (int n = 0; n < size; n++) {
+            String authority = String.format("https://login.windows.net/tenant-%d", n / Resources.length);
+            AuthenticationResult result = new AuthenticationResult("Bearer", token(n, 1200), token(n, 800), expiresOn);
+            result.updateTenantAndUserInfo(String.format("tenant-%d", n / Resources.length), token(n, 900), userInfo());
+            result.isMultipleResourceRefreshToken = true;
+            cache.storeToCache(result, authority, Resources[n % Resources.length], ClientId, TokenSubjectType.User, cache.getGeneration());
+        }
+        state = cache.serialize();
+        legacyState = serializeLegacy(cache);
+        lookupAuthority = String.format("https://login.windows.net/tenant-%d", (size - 1) / Resources.length);
+    }
+
+    @Benchmark
+    public TokenCache loadLegacy() throws IOException {
+        return new TokenCache(legacyState);
+    }
+
+    @Benchmark
+    public TokenCache load() throws IOException {
+        return new TokenCache(state);
+    }
+
+    @Benchmark
+    public AuthenticationResult loadLegacyAndLookUp() throws IOException {
+        return new TokenCache(legacyState).loadFromCache(lookupAuthority, Resources[0], ClientId, TokenSubjectType.User, null, null);
+    }
+
+    @Benchmark
+    public AuthenticationResult loadAndLookUp() throws IOException {
+        return new TokenCache(state).loadFromCache(lookupAuthority, Resources[0], ClientId, TokenSubjectType.User, null, null);
+    }
+
+    private static UserInfo userInfo() {
+        UserInfo userInfo = new UserInfo();
+        userInfo.uniqueId = "7f1b6c1e-2b5e-4f55-8a6e-0f0d3f1c2a9b";
+        userInfo.displayableId = "user@contoso.onmicrosoft.com";
+        return userInfo;
+    }
+
+    private static String token(int seed, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int n = 0; n < length; n++) {
+            sb.append((char) ('a' + (seed + n) % 26));
+        }
+        return sb.toString();
+    }
+
+    // schema version 1, as written before the indexed layout
+    private static byte[] serializeLegacy(TokenCache cache) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream writer = new DataOutputStream(outputStream);
+        writer.writeInt(1);
+        writer.writeInt(cache.getCount());
+        for (Map.Entry<TokenCacheKey, AuthenticationResult> entry : cache.getEntries()) {
+            TokenCacheKey key = entry.getKey();
+            writer.writeUTF(String.format("%s:::%s:::%s:::%s", key.authority, key.resource, key.clientId, key.tokenSubjectType));
+            writer.writeUTF(entry.getValue().serialize());
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -46,7 +46,9 @@ public class AcquireTokenHandlerBase {
     protected boolean storeToCache;
     protected final static String NullResource = "null_resource_as_optional";
     private final TokenCache tokenCache;
-    private static Object cacheLock = new Object();
+    // token requests for one authority share the refresh tokens in the cache, so they run one at a time;
+    // requests for different authorities (tenants) run in parallel
+    private static final ConcurrentMap<String, Object> authorityLocks = new ConcurrentHashMap<>();
     
     protected AcquireTokenHandlerBase(Authenticator authenticator, TokenCache tokenCache, String resource, ClientKey clientKey, TokenSubjectType subjectType) {
         this.authenticator = authenticator;
@@ -66,8 +68,9 @@ public class AcquireTokenHandlerBase {
     AuthenticationResult run() throws IOException {
         boolean notifiedBeforeAccessCache = false;
         try {
-            synchronized (cacheLock) {
+            synchronized (getAuthorityLock(authenticator.getAuthority())) {
                 preRun();
+                final long generation = (tokenCache != null) ? tokenCache.getGeneration() : 0;
                 AuthenticationResult result = null;
                 long start = System.currentTimeMillis();
                 if (loadFromCache) {
@@ -84,7 +87,7 @@ public class AcquireTokenHandlerBase {
                         //result = refreshAccessTokenAsync(result).get();
                         result = refreshAccessToken(result);
                         if (result != null) {
-                            tokenCache.storeToCache(result, authenticator.getAuthority(), resource, clientKey.clientId, tokenSubjectType);
+                            tokenCache.storeToCache(result, authenticator.getAuthority(), resource, clientKey.clientId, tokenSubjectType, generation);
                         }
                     }
                 }
@@ -98,7 +101,7 @@ public class AcquireTokenHandlerBase {
                             notifyBeforeAccessCache();
                             notifiedBeforeAccessCache = true;
                         }
-                        tokenCache.storeToCache(result, authenticator.getAuthority(), resource, clientKey.clientId, tokenSubjectType);
+                        tokenCache.storeToCache(result, authenticator.getAuthority(), resource, clientKey.clientId, tokenSubjectType, generation);
                     }
                 }
                 postRunAsync(result);
@@ -113,6 +116,19 @@ public class AcquireTokenHandlerBase {
         }
     }
     
+    private static Object getAuthorityLock(String authority) {
+        String key = authority.toLowerCase();
+        Object lock = authorityLocks.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = authorityLocks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
     Future<AuthenticationResult> runAsync() {
         return service.submit(new Callable<AuthenticationResult>() {
             @Override
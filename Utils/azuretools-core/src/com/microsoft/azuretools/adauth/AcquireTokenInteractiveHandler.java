@@ -33,6 +33,8 @@ import java.util.logging.Logger;
 
 public class AcquireTokenInteractiveHandler extends AcquireTokenHandlerBase {
     final static Logger log = Logger.getLogger(AcquireTokenInteractiveHandler.class.getName());
+    // tenants are signed in to in parallel, but only one sign in window is shown at a time
+    private final static Object webUiLock = new Object();
     private AuthorizationResult authorizationResult;
     private URI redirectUri;
     private String redirectUriRequestParameter;
@@ -92,7 +94,10 @@ public class AcquireTokenInteractiveHandler extends AcquireTokenHandlerBase {
 
             URI authorizationUri = this.createAuthorizationUri(false);
             log.log(Level.FINEST, "Starting web ui...");
-            String resultUri = webUi.authenticate(authorizationUri, redirectUri);
+            String resultUri;
+            synchronized (webUiLock) {
+                resultUri = webUi.authenticate(authorizationUri, redirectUri);
+            }
             if(resultUri == null) {
                 String message = "Interactive sign in is unsuccessful or canceled.";
                 log.log(Level.SEVERE, message);
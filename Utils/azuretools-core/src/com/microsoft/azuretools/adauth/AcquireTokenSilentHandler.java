@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Microsoft Corporation
+ *   <p/>
+ *  All rights reserved.
+ *   <p/>
+ *  MIT License
+ *   <p/>
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ *  to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *  <p/>
+ *  The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ *  the Software.
+ *   <p/>
+ *  THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ *  THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ *  TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.microsoft.azuretools.adauth;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/// <summary>
+/// Acquires a token from the cache, redeeming the cached refresh token if needed, and never prompts the user.
+/// A cached access token that expires within refreshAheadInMillis is renewed as if it had already expired.
+/// </summary>
+class AcquireTokenSilentHandler extends AcquireTokenHandlerBase {
+    final static Logger log = Logger.getLogger(AcquireTokenSilentHandler.class.getName());
+    private final long refreshAheadInMillis;
+
+    AcquireTokenSilentHandler(Authenticator authenticator, TokenCache tokenCache, String resource,
+                              String clientId, UserIdentifier userId, long refreshAheadInMillis) {
+        super(authenticator, tokenCache, resource, new ClientKey(clientId), TokenSubjectType.User);
+        if (userId == null) {
+            throw new IllegalArgumentException("userId: " +  AuthErrorMessage.SpecifyAnyUser);
+        }
+        if (tokenCache == null) {
+            throw new IllegalArgumentException("tokenCache");
+        }
+        this.uniqueId = userId.uniqueId();
+        this.displayableId = userId.displayableId();
+        this.userIdentifierType = userId.type;
+        this.refreshAheadInMillis = refreshAheadInMillis;
+    }
+
+    @Override
+    protected AuthenticationResult validateResult(AuthenticationResult result) {
+        if (result != null && result.accessToken != null && result.refreshToken != null
+                && TimeUnit.SECONDS.toMillis(result.expiresOn) < System.currentTimeMillis() + refreshAheadInMillis) {
+            log.log(Level.FINEST, "The cached token expires within the refresh ahead interval and will be refreshed");
+            AuthenticationResult newResult = new AuthenticationResult(result.accessTokenType, null, result.refreshToken, result.expiresOn);
+            newResult.updateTenantAndUserInfo(result.tenantId, result.idToken, result.userInfo);
+            newResult.isMultipleResourceRefreshToken = result.isMultipleResourceRefreshToken;
+            return newResult;
+        }
+        return result;
+    }
+
+    @Override
+    protected AuthenticationResult acquireToken() throws IOException {
+        // nothing usable in the cache and the user must not be prompted
+        throw new AuthException(AuthError.FailedToAcquireTokenSilently);
+    }
+}
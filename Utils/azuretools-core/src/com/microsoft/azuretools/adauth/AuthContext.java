@@ -58,6 +58,17 @@ public class AuthContext {
         return handler.run();
     }
 
+    /// <summary>
+    /// Acquires a token from the cache without prompting, redeeming the cached refresh token if the access token
+    /// has expired or expires within refreshAheadInMillis. Fails with AuthError.FailedToAcquireTokenSilently when
+    /// the user would have to sign in again.
+    /// </summary>
+    public AuthenticationResult acquireTokenSilent(String resource, String clientId, UserIdentifier userIdentifier, long refreshAheadInMillis) throws IOException {
+        AcquireTokenSilentHandler handler = new AcquireTokenSilentHandler(this.authenticator, this.tokenCache,
+                resource, clientId, (userIdentifier != null) ? userIdentifier : UserIdentifier.anyUser, refreshAheadInMillis);
+        return handler.run();
+    }
+
     public Future<AuthenticationResult> acquireTokenAsync(String resource, String clientId, String redirectUri, PromptBehavior promptBehavior, UserIdentifier userIdentifier) throws IOException {
     	AcquireTokenInteractiveHandler handler = new AcquireTokenInteractiveHandler(this.authenticator, this.tokenCache,
     			resource, clientId, redirectUri, promptBehavior, (userIdentifier != null) ? userIdentifier : UserIdentifier.anyUser,
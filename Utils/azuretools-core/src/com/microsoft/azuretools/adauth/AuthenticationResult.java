@@ -118,6 +118,13 @@ public class AuthenticationResult {
         return accessToken;
     }
 
+    /// <summary>
+    /// Gets the time, in seconds since the epoch, at which the access token expires.
+    /// </summary>
+    public long getExpiresOn() {
+        return expiresOn;
+    }
+
     /// <summary>
     /// Serializes the object to a JSON String
     /// </summary>
@@ -22,13 +22,12 @@
 
 package com.microsoft.azuretools.adauth;
 
-import com.microsoft.azuretools.Constants;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.annotate.JsonProperty;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,23 +73,28 @@ class AuthenticatorTemplate {
         instanceDiscoveryEndpoint = instanceDiscoveryEndpoint.replace("{tenant}", tenant);
 
         // send a request
-        URL url = new URL(instanceDiscoveryEndpoint);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        HttpURLConnection connection = HttpHelper.openConnection(instanceDiscoveryEndpoint, callState);
         connection.setRequestMethod("GET");
-        connection.setReadTimeout(Constants.connection_read_timeout_ms);
         //connection.setRequestProperty("User-Agent", "AzureToolkit4");
-        HttpHelper.addCorrelationIdToRequestHeader(connection, callState);
         
         // process a response
         int responseCode = connection.getResponseCode();
         if(responseCode != 200) {
+            // close the error body so the connection can be reused
+            InputStream errorStream = connection.getErrorStream();
+            if (errorStream != null) {
+                errorStream.close();
+            }
         	String message = AuthError.AuthorityNotInValidList;
         	log.log(Level.SEVERE, message);
             throw new AuthException(message);
         }
         
         HttpHelper.verifyCorrelationIdInReponseHeader(connection, callState);
-        InstanceDiscoveryResponse discoveryResponse = JsonHelper.deserialize(InstanceDiscoveryResponse.class, connection.getInputStream());
+        InstanceDiscoveryResponse discoveryResponse;
+        try (InputStream input = connection.getInputStream()) {
+            discoveryResponse = JsonHelper.deserialize(InstanceDiscoveryResponse.class, input);
+        }
         if (discoveryResponse.tenantDiscoveryEndpoint == null) {
         	String message = AuthError.AuthorityNotInValidList;
         	log.log(Level.SEVERE, message);
@@ -22,119 +22,597 @@
 
 package com.microsoft.azuretools.adauth;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
-import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
+/**
+ * Token cache kept in a journal file that is shared by all IDE processes of the user.
+ * <p>
+ * Every change is appended as a checksummed record, so a write costs only the entries that changed. Before the
+ * cache is read the file stamp (size, modification time and file key) is compared with the one this process saw
+ * last. An unchanged file is not read at all, and records appended by another process are read from where this
+ * process stopped. Once the journal holds many more records than live entries it is rewritten in the background.
+ * <p>
+ * Processes coordinate through a lock on a separate lock file. Waiting for it is bounded, and a waiter wakes up as
+ * soon as the lock is released. A cache file in the old blob format (schema version 1) is migrated on first use.
+ */
 public class FileTokenCache extends TokenCache {
     final static Logger log = Logger.getLogger(AcquireTokenHandlerBase.class.getName());
-    private final Object lock = new Object();
     private static final String CacheDir = ".msauth4j";
     private static final String CacheFileName = "msauth4j.cache";
-    private Path filePath;
-    
+    private static final String LockFileSuffix = ".lock";
+    private static final int JournalMagic = 0x4d534a4c;
+    private static final int JournalVersion = 1;
+    private static final int HeaderLength = 16;
+    private static final byte PutRecord = 1;
+    private static final byte RemoveRecord = 2;
+    private static final byte ClearRecord = 3;
+    private static final int MinRecordsToCompact = 64;
+    private static final long DefaultLockTimeoutMillis = 5000;
+    private static final AuthenticationResult Removed = new AuthenticationResult();
+    // FileChannel locks are held per JVM, so threads and caches of the same process queue on this lock first
+    private static final Map<Path, ReentrantLock> processLocks = new ConcurrentHashMap<>();
+    private static final ExecutorService compactionService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "FileTokenCache compaction");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // lock order: lock, then the file lock, then the TokenCache lock, then pendingLock, which is only held to copy
+    // or swap pending and never while taking another lock
+    private final Object lock = new Object();
+    private final Object pendingLock = new Object();
+    private final Path filePath;
+    private final Path lockFilePath;
+    private final long lockTimeoutMillis;
+    private final AtomicBoolean isCompactionScheduled = new AtomicBoolean();
+    // changes not written yet, in order; Removed marks a removal
+    private Map<TokenCacheKey, AuthenticationResult> pending = new LinkedHashMap<>();
+    private boolean isClearPending = false;
+    // what this process knows about the file, guarded by lock
+    private FileStamp stamp = null;
+    private long generation = 0;
+    private long offset = 0;
+    private int recordCount = 0;
+
     public FileTokenCache() throws IOException {
-        String homeDir = System.getProperty("user.home");
+        this(null);
+    }
+
+    public FileTokenCache(String baseDirPath) throws IOException {
+        this(baseDirPath, DefaultLockTimeoutMillis);
+    }
 
-        Path dirPath = Paths.get(homeDir, CacheDir);
+    public FileTokenCache(String baseDirPath, long lockTimeoutMillis) throws IOException {
+        String baseDir = System.getProperty("user.home");
+        if (!StringUtils.isNullOrEmpty(baseDirPath) && Files.exists(Paths.get(baseDirPath))) {
+            baseDir = baseDirPath;
+        }
+
+        Path dirPath = Paths.get(baseDir, CacheDir);
 
         if (!Files.exists(dirPath)) {
             Files.createDirectory(dirPath);
         }
-        
-        filePath = Paths.get(homeDir, CacheDir, CacheFileName);
+
+        filePath = Paths.get(baseDir, CacheDir, CacheFileName).toAbsolutePath();
+        lockFilePath = Paths.get(baseDir, CacheDir, CacheFileName + LockFileSuffix).toAbsolutePath();
+        this.lockTimeoutMillis = lockTimeoutMillis;
         if (!Files.exists(filePath)) {
             Files.createFile(filePath);
         }
-    }
-    
-    private FileLock acquireLock(RandomAccessFile raf) throws IOException, InterruptedException {
-        // in case of multiprocess file access
-        FileLock lock = null;
-        int tryCount = 3;
-        long sleepSec = 10;
-        while(tryCount > 0) {
+        synchronized (lock) {
+            CacheLock cacheLock = lockFile();
             try {
-                lock = raf.getChannel().tryLock();
-                break;
-            } catch(OverlappingFileLockException ex) {
-                log.log(Level.WARNING, String.format("The file has been locked by another process - waiting %s sec to release [%d attempt(s) left].", sleepSec, tryCount));
-                Thread.sleep(sleepSec*1000);
-                tryCount--;
+                sync();
+            } finally {
+                cacheLock.close();
             }
         }
-        return lock;
     }
-    
-    private void read() throws IOException, InterruptedException {
-        RandomAccessFile in = new RandomAccessFile(filePath.toString(), "rw");
+
+    @Override
+    void onBeforeAccess() {
+        try {
+            refresh();
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Can't read file token cache: " + ex.getMessage());
+        }
+        super.onBeforeAccess();
+    }
+
+    @Override
+    void onAfterAccess() {
         try {
-            // in case of multiprocess file access
-            FileLock lock = acquireLock(in);
-            if(lock != null) {
-                log.log(Level.FINEST, "Locking file cache for reading...");
+            flush();
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Can't write file token cache: " + ex.getMessage());
+        }
+        super.onAfterAccess();
+    }
+
+    @Override
+    void onEntryChanged(TokenCacheKey key, AuthenticationResult result) {
+        synchronized (pendingLock) {
+            pending.remove(key);
+            pending.put(key, (result != null) ? result : Removed);
+        }
+    }
+
+    @Override
+    void onCleared() {
+        synchronized (pendingLock) {
+            pending.clear();
+            isClearPending = true;
+        }
+    }
+
+    /// <summary>
+    /// Reads what other processes have written since the last access. Does nothing if the file is unchanged.
+    /// </summary>
+    public void refresh() throws IOException {
+        synchronized (lock) {
+            if (FileStamp.of(filePath).equals(stamp)) {
+                return;
+            }
+            CacheLock cacheLock = lockFile();
+            try {
+                sync();
+            } finally {
+                cacheLock.close();
+            }
+        }
+    }
+
+    /// <summary>
+    /// Appends the changes made since the last flush to the file.
+    /// </summary>
+    public void flush() throws IOException {
+        synchronized (lock) {
+            Map<TokenCacheKey, AuthenticationResult> changes;
+            boolean isClear;
+            synchronized (pendingLock) {
+                if (pending.isEmpty() && !isClearPending) {
+                    return;
+                }
+                changes = pending;
+                isClear = isClearPending;
+                pending = new LinkedHashMap<>();
+                isClearPending = false;
+            }
+            boolean isWritten = false;
+            try {
+                CacheLock cacheLock = lockFile();
                 try {
-                    int length = (int)new File(filePath.toString()).length();
-                    byte[] data = new byte[length];
-                    log.log(Level.FINEST, "Reading data...");
-                    in.read(data);
-                    deserialize(data);
+                    sync();
+                    // records other processes wrote for the same keys lose against the changes made here
+                    if (isClear) {
+                        unloadEntries();
+                    }
+                    reapply(changes);
+                    ByteArrayOutputStream records = new ByteArrayOutputStream();
+                    if (isClear) {
+                        writeRecord(records, ClearRecord, null, null);
+                    }
+                    for (Map.Entry<TokenCacheKey, AuthenticationResult> change : changes.entrySet()) {
+                        writeRecord(records, change.getValue() == Removed ? RemoveRecord : PutRecord, change.getKey(),
+                                change.getValue());
+                    }
+                    append(records.toByteArray(), (isClear ? 1 : 0) + changes.size());
+                    isWritten = true;
+                    setHasStateChanged(false);
                 } finally {
-                    log.log(Level.FINEST, "Unocking file cache");
-                    lock.release();
+                    cacheLock.close();
+                }
+            } finally {
+                if (!isWritten) {
+                    restorePending(changes, isClear);
                 }
-            } else {
-                throw new IOException("Can't lock file token cache for reading");
             }
-        } finally {
-            in.close();
+            if (recordCount >= MinRecordsToCompact && recordCount > 2 * getCount()
+                    && isCompactionScheduled.compareAndSet(false, true)) {
+                compactionService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        isCompactionScheduled.set(false);
+                        try {
+                            compact();
+                        } catch (IOException ex) {
+                            log.log(Level.WARNING, "Can't compact file token cache: " + ex.getMessage());
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /// <summary>
+    /// Rewrites the file with one record per live entry.
+    /// </summary>
+    public void compact() throws IOException {
+        synchronized (lock) {
+            CacheLock cacheLock = lockFile();
+            try {
+                sync();
+                rewrite();
+            } finally {
+                cacheLock.close();
+            }
         }
     }
-    
-    private void write() throws IOException, InterruptedException {
-        RandomAccessFile out = new RandomAccessFile(filePath.toString(), "rw");
+
+    private CacheLock lockFile() throws IOException {
+        ReentrantLock processLock = acquireProcessLock();
+        AsynchronousFileChannel channel = null;
         try {
-            // in case of multiprocess file access
-            FileLock lock = acquireLock(out);
-            if(lock != null) {
-                log.log(Level.FINEST, "Locking file cache for writing");
-                try {
-                    byte[] data = serialize();
-                    log.log(Level.FINEST, "Writing file...");
-                    out.write(data);
-                } finally {
-                    log.log(Level.FINEST, "Unocking file cache");
-                    lock.release();
+            channel = AsynchronousFileChannel.open(lockFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            acquireLock(channel);
+            return new CacheLock(processLock, channel);
+        } catch (IOException | RuntimeException ex) {
+            if (channel != null) {
+                channel.close();
+            }
+            processLock.unlock();
+            throw ex;
+        }
+    }
+
+    private ReentrantLock acquireProcessLock() throws IOException {
+        ReentrantLock processLock = processLocks.get(filePath);
+        if (processLock == null) {
+            ReentrantLock newLock = new ReentrantLock();
+            processLock = processLocks.putIfAbsent(filePath, newLock);
+            if (processLock == null) {
+                processLock = newLock;
+            }
+        }
+        try {
+            if (processLock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return processLock;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the file token cache");
+        }
+        throw new IOException(String.format("Timed out after %d ms waiting for the file token cache", lockTimeoutMillis));
+    }
+
+    private FileLock acquireLock(AsynchronousFileChannel channel) throws IOException {
+        // in case of multiprocess file access; the lock is released when the channel is closed
+        Future<FileLock> future = channel.lock();
+        try {
+            return future.get(lockTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw new IOException(String.format(
+                    "The file token cache has been locked by another process for more than %d ms", lockTimeoutMillis));
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the file token cache lock");
+        } catch (ExecutionException ex) {
+            throw new IOException("Can't lock file token cache", ex.getCause());
+        }
+    }
+
+    // The methods below must be called holding lock and the file lock.
+
+    private void sync() throws IOException {
+        FileStamp current = FileStamp.of(filePath);
+        if (current.equals(stamp)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HeaderLength);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (size == 0) {
+                unloadEntries();
+                reapplyPending();
+                rewrite();
+                return;
+            }
+            if (header.remaining() < HeaderLength || header.getInt() != JournalMagic) {
+                migrate();
+                return;
+            }
+            if (header.getInt() != JournalVersion) {
+                throw new IOException("Unknown file token cache version");
+            }
+            long fileGeneration = header.getLong();
+            if (fileGeneration != generation || size < offset) {
+                log.log(Level.FINEST, "Reloading file token cache...");
+                unloadEntries();
+                generation = fileGeneration;
+                offset = HeaderLength;
+                recordCount = 0;
+            }
+            channel.position(offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int count = 0;
+            while (offset < size) {
+                long length = readRecord(in, size - offset);
+                if (length < 0) {
+                    log.log(Level.WARNING, String.format("Ignoring %d bytes of incomplete file token cache records", size - offset));
+                    break;
                 }
-            } else {
-                throw new IOException("Can't lock file token cache for writing");
+                offset += length;
+                count++;
             }
+            recordCount += count;
+            log.log(Level.FINEST, String.format("Read %d records from the file token cache", count));
+        }
+        reapplyPending();
+        stamp = FileStamp.of(filePath);
+    }
+
+    private void migrate() throws IOException {
+        log.log(Level.INFO, "Migrating file token cache to the journal format");
+        byte[] data = Files.readAllBytes(filePath);
+        try {
+            deserialize(data);
+        } catch (IOException | RuntimeException ex) {
+            log.log(Level.WARNING, "Can't read old file token cache, starting empty: " + ex.getMessage());
+            unloadEntries();
+        }
+        reapplyPending();
+        rewrite();
+    }
+
+    private void rewrite() throws IOException {
+        List<Map.Entry<TokenCacheKey, AuthenticationResult>> entries = getEntries();
+        long newGeneration = new SecureRandom().nextLong();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(HeaderLength);
+        header.putInt(JournalMagic).putInt(JournalVersion).putLong(newGeneration);
+        out.write(header.array());
+        for (Map.Entry<TokenCacheKey, AuthenticationResult> entry : entries) {
+            writeRecord(out, PutRecord, entry.getKey(), entry.getValue());
+        }
+        Path tempPath = Files.createTempFile(filePath.getParent(), CacheFileName, ".tmp");
+        try {
+            Files.write(tempPath, out.toByteArray());
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } finally {
-            out.close();
-        }
-    }
-//
-//    @Override
-//    void onBeforeAccess() throws IOException, InterruptedException {
-//        synchronized (lock) {
-//            read();
-//        }
-//    }
-//
-//    @Override
-//    void onAfterAccess() {
-//        synchronized (lock) {
-//            if(getHasStateChanged()) {
-//                write();
-//                setHasStateChanged(false);
-//            }
-//        }
-//    }
+            Files.deleteIfExists(tempPath);
+        }
+        generation = newGeneration;
+        offset = out.size();
+        recordCount = entries.size();
+        stamp = FileStamp.of(filePath);
+        log.log(Level.FINEST, String.format("Compacted file token cache to %d records", recordCount));
+    }
+
+    private void append(byte[] records, int count) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.WRITE)) {
+            // drop an incomplete record left by a process that died while writing
+            if (channel.size() > offset) {
+                channel.truncate(offset);
+            }
+            channel.position(offset);
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        offset += records.length;
+        recordCount += count;
+        stamp = FileStamp.of(filePath);
+    }
+
+    private long readRecord(DataInputStream in, long available) throws IOException {
+        if (available < 8) {
+            return -1;
+        }
+        int length = in.readInt();
+        if (length <= 0 || length > available - 8) {
+            return -1;
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        int checksum = in.readInt();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            return -1;
+        }
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = record.readByte();
+        if (type == ClearRecord) {
+            unloadEntries();
+        } else {
+            TokenCacheKey key = new TokenCacheKey(record.readUTF(), record.readUTF(), record.readUTF(),
+                    TokenSubjectType.valueOf(record.readUTF()), readNullableUTF(record), readNullableUTF(record));
+            if (type == PutRecord) {
+                int jsonLength = record.readInt();
+                if (jsonLength < 0 || jsonLength > record.available()) {
+                    log.log(Level.WARNING, "Skipping a file token cache record that can't be read");
+                    return 8 + length;
+                }
+                // parsed on the first lookup, so most records of a refresh are never parsed
+                loadEntry(key, payload, length - record.available(), jsonLength);
+            } else {
+                loadEntry(key, null);
+            }
+        }
+        return 8 + length;
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, byte type, TokenCacheKey key,
+            AuthenticationResult result) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream writer = new DataOutputStream(payload);
+        writer.writeByte(type);
+        if (type != ClearRecord) {
+            writer.writeUTF(key.authority);
+            writer.writeUTF(key.resource);
+            writer.writeUTF(key.clientId);
+            writer.writeUTF(key.tokenSubjectType.name());
+            writeNullableUTF(writer, key.uniqueId);
+            writeNullableUTF(writer, key.displayableId);
+            if (type == PutRecord) {
+                byte[] json = result.serialize().getBytes(StandardCharsets.UTF_8);
+                writer.writeInt(json.length);
+                writer.write(json);
+            }
+        }
+        writer.flush();
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        DataOutputStream framed = new DataOutputStream(out);
+        framed.writeInt(payload.size());
+        payload.writeTo(framed);
+        framed.writeInt((int) crc.getValue());
+        framed.flush();
+    }
+
+    private static void writeNullableUTF(DataOutputStream writer, String value) throws IOException {
+        writer.writeBoolean(value != null);
+        if (value != null) {
+            writer.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream reader) throws IOException {
+        return reader.readBoolean() ? reader.readUTF() : null;
+    }
+
+    private void reapplyPending() {
+        // under the TokenCache lock, so a change made meanwhile is not overwritten by the older copy
+        runLocked(new Runnable() {
+            @Override
+            public void run() {
+                Map<TokenCacheKey, AuthenticationResult> changes;
+                boolean isClear;
+                synchronized (pendingLock) {
+                    changes = new LinkedHashMap<>(pending);
+                    isClear = isClearPending;
+                }
+                if (isClear) {
+                    unloadEntries();
+                }
+                reapply(changes);
+            }
+        });
+    }
+
+    private void reapply(Map<TokenCacheKey, AuthenticationResult> changes) {
+        for (Map.Entry<TokenCacheKey, AuthenticationResult> change : changes.entrySet()) {
+            loadEntry(change.getKey(), change.getValue() == Removed ? null : change.getValue());
+        }
+    }
+
+    private void restorePending(Map<TokenCacheKey, AuthenticationResult> changes, boolean isClear) {
+        synchronized (pendingLock) {
+            // changes made after the failed flush are newer, so they stay on top
+            Map<TokenCacheKey, AuthenticationResult> merged = new LinkedHashMap<>(changes);
+            if (isClearPending) {
+                merged.clear();
+            }
+            for (Map.Entry<TokenCacheKey, AuthenticationResult> change : pending.entrySet()) {
+                merged.remove(change.getKey());
+                merged.put(change.getKey(), change.getValue());
+            }
+            pending = merged;
+            isClearPending = isClearPending || isClear;
+        }
+    }
+
+    private static final class CacheLock {
+        private final ReentrantLock processLock;
+        private final AsynchronousFileChannel channel;
+
+        CacheLock(ReentrantLock processLock, AsynchronousFileChannel channel) {
+            this.processLock = processLock;
+            this.channel = channel;
+        }
+
+        void close() throws IOException {
+            try {
+                // closing the channel releases the file lock
+                channel.close();
+            } finally {
+                processLock.unlock();
+            }
+        }
+    }
+
+    private static final class FileStamp {
+        private final long size;
+        private final FileTime lastModifiedTime;
+        private final Object fileKey;
+
+        private FileStamp(long size, FileTime lastModifiedTime, Object fileKey) {
+            this.size = size;
+            this.lastModifiedTime = lastModifiedTime;
+            this.fileKey = fileKey;
+        }
+
+        static FileStamp of(Path path) throws IOException {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileStamp(attributes.size(), attributes.lastModifiedTime(), attributes.fileKey());
+            } catch (NoSuchFileException ex) {
+                return new FileStamp(0, null, null);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp) obj;
+            return size == other.size && Objects.equals(lastModifiedTime, other.lastModifiedTime)
+                    && Objects.equals(fileKey, other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModifiedTime, fileKey);
+        }
+    }
 }
@@ -31,24 +31,23 @@ import java.io.InputStream;
 
 public class JsonHelper {
 //	private static final Logger log = Logger.getLogger(JsonHelper.class.getName());
+    // thread safe once configured, and far cheaper to share than to build per call
+    private static final ObjectMapper mapper = new ObjectMapper();
 	
     public static <T> T deserialize(Class<T> cls, String json) throws IOException {
 //    	log.log(Level.FINEST, "structure: " + cls.getName());
 //    	log.log(Level.FINEST, "json string: " + json);
         if(json == null) return null;
-        ObjectMapper mapper = new ObjectMapper();
         return mapper.readValue(json, cls);
     }
     
     public static <T> T deserialize(Class<T> cls,InputStream is) throws IOException {
         if(is == null) return null;
-        ObjectMapper mapper = new ObjectMapper();
         return mapper.readValue(is, cls);
     }
     
     public static <T> String serialize(T jsonObject) throws IOException {
     	if(jsonObject == null) return null;
-    	ObjectMapper mapper = new ObjectMapper();
     	return mapper.writeValueAsString(jsonObject);
     }
 }
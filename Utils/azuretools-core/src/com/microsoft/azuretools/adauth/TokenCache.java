@@ -23,18 +23,31 @@
 package com.microsoft.azuretools.adauth;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class TokenCache {
     private final static Logger log = Logger.getLogger(TokenCache.class.getName());
-    private final int SchemaVersion = 1;
+    private final int SchemaVersion = 2;
+    private final int LegacySchemaVersion = 1;
     private final static String Delimiter = ":::";
-    private final Map<TokenCacheKey, AuthenticationResult> tokenCacheDictionary;
+    private final static String UniqueIdPrefix = "uid:";
+    private final static String DisplayableIdPrefix = "upn:";
+    private final static long ExpirationMarginInMillis = TimeUnit.MINUTES.toMillis(5);
+    private final Map<TokenCacheKey, CachedResult> tokenCacheDictionary;
+    // Secondary indexes over the keys of tokenCacheDictionary. The key sets are immutable and replaced under the
+    // lock on every write, so lookups read them without locking.
+    private final ConcurrentMap<String, Set<TokenCacheKey>> clientIndex = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<TokenCacheKey>> resourceIndex = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<TokenCacheKey>> userIndex = new ConcurrentHashMap<>();
     private volatile boolean hasStateChanged = false;
+    // bumped by clear(), so a token acquired before the cache was cleared is not stored after it
+    private volatile long generation = 0;
     private final Object lock = new Object();
     private static TokenCache defaultShared = null;
 
@@ -42,7 +55,7 @@ public class TokenCache {
     /// Default constructor.
     /// </summary>
     public TokenCache() {
-        this.tokenCacheDictionary = new ConcurrentHashMap<TokenCacheKey, AuthenticationResult>();
+        this.tokenCacheDictionary = new ConcurrentHashMap<TokenCacheKey, CachedResult>();
     }
 
     /// <summary>
@@ -58,15 +71,11 @@ public class TokenCache {
     /// the flag after serializing and persisting the state of the cache.
     /// </summary>
     public boolean getHasStateChanged() {
-       synchronized (lock) {
-          return hasStateChanged;
-       }
+        return hasStateChanged;
     }
 
     public void setHasStateChanged(boolean val) {
-       synchronized (lock) {
-          hasStateChanged = val;
-       }
+        hasStateChanged = val;
     }
 
     /// <summary>
@@ -83,13 +92,14 @@ public class TokenCache {
     /// Gets the number of items in the cache.
     /// </summary>
     public int getCount() {
-       synchronized (lock) {
-          return this.tokenCacheDictionary.size();
-        }
+        return this.tokenCacheDictionary.size();
     }
 
     /// <summary>
-    /// Serializes current state of the cache as a blob. Caller application can persist the blob and update the state of the cache later by
+    /// Serializes current state of the cache as a blob. Since schema version 2 the blob starts with an index of all
+    /// keys and the length of each serialized result, followed by the results, so that deserializing it only parses
+    /// the keys. Each result is parsed the first time a lookup needs it.
+    /// Caller application can persist the blob and update the state of the cache later by
     /// passing that blob back in constructor or by calling method Deserialize.
     /// </summary>
     /// <returns>Current state of the cache as a blob</returns>
@@ -102,19 +112,28 @@ public class TokenCache {
           // stream writer
           DataOutputStream writer = new DataOutputStream(outputStream);
 
+          List<TokenCacheKey> keys = new ArrayList<>(tokenCacheDictionary.keySet());
+          List<byte[]> values = new ArrayList<>(keys.size());
+          for (TokenCacheKey key : keys) {
+             values.add(tokenCacheDictionary.get(key).getBytes());
+          }
+
           writer.writeInt(SchemaVersion);
-          writer.writeInt(tokenCacheDictionary.size());
-          for(TokenCacheKey key : tokenCacheDictionary.keySet()) {
-             AuthenticationResult res = tokenCacheDictionary.get(key);
-             writer.writeUTF(String.format(
-                   "%s%s%s%s%s%s%s",
-                   key.authority, Delimiter,
-                   key.resource, Delimiter,
-                   key.clientId, Delimiter,
-                   key.tokenSubjectType));
-             writer.writeUTF(res.serialize());
+          writer.writeInt(keys.size());
+          for (int n = 0; n < keys.size(); n++) {
+             TokenCacheKey key = keys.get(n);
+             writer.writeUTF(key.authority);
+             writer.writeUTF(key.resource);
+             writer.writeUTF(key.clientId);
+             writer.writeUTF(key.tokenSubjectType.name());
+             writeNullableUTF(writer, key.uniqueId);
+             writeNullableUTF(writer, key.displayableId);
+             writer.writeInt(values.get(n).length);
           }
-          log.log(Level.FINEST, String.format("Serialized %d items to the output stream.", tokenCacheDictionary.size()));
+          for (byte[] value : values) {
+             writer.write(value);
+          }
+          log.log(Level.FINEST, String.format("Serialized %d items to the output stream.", keys.size()));
           return outputStream.toByteArray();
        }
     }
@@ -127,7 +146,7 @@ public class TokenCache {
        synchronized(lock) {
           log.log(Level.FINEST, "Deserializing...");
             if (state.length == 0) {
-                this.tokenCacheDictionary.clear();
+                clearEntries();
                 return;
             }
           // memory stream
@@ -135,11 +154,16 @@ public class TokenCache {
           // stream reader
           DataInputStream reader = new DataInputStream(inputStream);
             int schemaVersion = reader.readInt();
-            if (schemaVersion != SchemaVersion) {
+            if (schemaVersion == SchemaVersion) {
+                deserializeIndexed(state, reader);
+                return;
+            }
+            if (schemaVersion != LegacySchemaVersion) {
                 log.log(Level.WARNING, "The version of the persistent state of the cache does not match the current schema, so skipping deserialization.");
                 return;
             }
-            tokenCacheDictionary.clear();
+            // schema version 1 is read eagerly, the next serialize writes the current schema
+            clearEntries();
             int count = reader.readInt();
             for (int n = 0; n < count; n++) {
                 String keyString = reader.readUTF();
@@ -150,11 +174,48 @@ public class TokenCache {
                     TokenSubjectType.valueOf(TokenSubjectType.class,kvpElements[3]), result.userInfo);
 
                 log.log(Level.FINEST, String.format("Putting key into the dictionary [hash: '%x']", key.hashCode()));
-                tokenCacheDictionary.put(key, result);
+                storeEntry(key, result);
             }
             log.log(Level.FINEST, String.format("Deserialized %d items to token cache.", count));
         }
     }
+
+    private void deserializeIndexed(byte[] state, DataInputStream reader) throws IOException {
+        int count = reader.readInt();
+        TokenCacheKey[] keys = new TokenCacheKey[count];
+        int[] lengths = new int[count];
+        for (int n = 0; n < count; n++) {
+            keys[n] = new TokenCacheKey(reader.readUTF(), reader.readUTF(), reader.readUTF(),
+                    TokenSubjectType.valueOf(reader.readUTF()), readNullableUTF(reader), readNullableUTF(reader));
+            lengths[n] = reader.readInt();
+        }
+        // the results follow the index and are only parsed when they are looked up
+        int offset = state.length - reader.available();
+        for (int n = 0; n < count; n++) {
+            if (lengths[n] < 0 || offset + lengths[n] > state.length) {
+                throw new IOException("The persistent state of the cache is truncated");
+            }
+            offset += lengths[n];
+        }
+        clearEntries();
+        offset = state.length - reader.available();
+        for (int n = 0; n < count; n++) {
+            storeEntry(keys[n], new CachedResult(state, offset, lengths[n]));
+            offset += lengths[n];
+        }
+        log.log(Level.FINEST, String.format("Deserialized %d items to token cache.", count));
+    }
+
+    private static void writeNullableUTF(DataOutputStream writer, String value) throws IOException {
+        writer.writeBoolean(value != null);
+        if (value != null) {
+            writer.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream reader) throws IOException {
+        return reader.readBoolean() ? reader.readUTF() : null;
+    }
 /*
     /// <summary>
     /// Reads a copy of the list of all items in the cache.
@@ -206,14 +267,17 @@ public class TokenCache {
     /// impact all the instances of <see cref="AuthenticationContext"/> which share that cache.
     /// </summary>
     public void clear() {
-       synchronized(lock) {
-            onBeforeAccess();
+        // a persistent cache locks its storage in the access callbacks, which must not run holding the lock
+        onBeforeAccess();
+        synchronized(lock) {
             log.log(Level.FINEST, String.format("Clearing Cache :- %d items to be removed", tokenCacheDictionary.size()));
-            this.tokenCacheDictionary.clear();
+            clearEntries();
+            generation++;
+            onCleared();
             log.log(Level.FINEST, "Successfully Cleared Cache");
             this.setHasStateChanged(true);
-            onAfterAccess();
         }
+        onAfterAccess();
     }
 
     void onAfterAccess() {
@@ -227,6 +291,67 @@ public class TokenCache {
         }
     }
 
+    /// <summary>
+    /// Called holding the cache lock after an entry was stored or, with a null result, removed. A persistent
+    /// cache overrides it and onCleared to write only what has changed. Neither may take a lock that is held
+    /// while calling into this cache.
+    /// </summary>
+    void onEntryChanged(TokenCacheKey key, AuthenticationResult result) {
+    }
+
+    void onCleared() {
+    }
+
+    /// <summary>
+    /// Applies an entry read from persistent storage without reporting it as a change. A null result removes it.
+    /// </summary>
+    void loadEntry(TokenCacheKey key, AuthenticationResult result) {
+        synchronized (lock) {
+            if (result != null) {
+                storeEntry(key, result);
+            } else {
+                deleteEntry(key);
+            }
+        }
+    }
+
+    /// <summary>
+    /// Applies an entry read from persistent storage in its serialized form, which is only parsed when it is looked up.
+    /// </summary>
+    void loadEntry(TokenCacheKey key, byte[] state, int offset, int length) {
+        synchronized (lock) {
+            storeEntry(key, new CachedResult(state, offset, length));
+        }
+    }
+
+    /// <summary>
+    /// Runs an action holding the cache lock, so that no entry changes while it runs.
+    /// </summary>
+    void runLocked(Runnable action) {
+        synchronized (lock) {
+            action.run();
+        }
+    }
+
+    void unloadEntries() {
+        synchronized (lock) {
+            clearEntries();
+        }
+    }
+
+    List<Map.Entry<TokenCacheKey, AuthenticationResult>> getEntries() {
+        synchronized (lock) {
+            List<Map.Entry<TokenCacheKey, AuthenticationResult>> entries = new ArrayList<>();
+            for (Map.Entry<TokenCacheKey, CachedResult> entry : tokenCacheDictionary.entrySet()) {
+                AuthenticationResult result = entry.getValue().get();
+                if (result != null) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), result));
+                }
+            }
+            return entries;
+        }
+    }
+
     private Runnable  onBeforeAccessCallback = null;
     private Runnable  onAfterAccessCallback = null;
 
@@ -239,56 +364,73 @@ public class TokenCache {
     }
 
     AuthenticationResult loadFromCache(String authority, String resource, String clientId, TokenSubjectType subjectType, String uniqueId, String displayableId) throws IOException {
-       synchronized(lock) {
-            log.log(Level.FINEST, "Looking up cache for a token...");
-            AuthenticationResult result = null;
-            Map.Entry<TokenCacheKey, AuthenticationResult> kvp = loadSingleItemFromCache(authority,
-                resource, clientId, subjectType, uniqueId, displayableId);
-            if (kvp != null) {
-                TokenCacheKey cacheKey = kvp.getKey();
-                result = kvp.getValue();
-
-                Calendar now = new GregorianCalendar();
-                now.setTimeInMillis(System.currentTimeMillis());
-                int expirationMarginInMinutes = 5;
-                now.add(Calendar.MINUTE, expirationMarginInMinutes);
-                Calendar expiresOn = new GregorianCalendar();
-                expiresOn.setTimeInMillis(TimeUnit.SECONDS.toMillis(result.expiresOn));
-                boolean tokenNearExpiry = expiresOn.before(now);
-
-                if (tokenNearExpiry) {
-                    result.accessToken = null;
-                    log.log(Level.FINEST, "An expired or near expiry token was found in the cache");
-                } else if (!cacheKey.resource.equals(resource)) {
-                    log.log(Level.FINEST, String.format(
-                            "Multi resource refresh token for resource '%s' will be used to acquire token for '%s'",
-                            cacheKey.resource, resource));
-                    AuthenticationResult newResult = new AuthenticationResult(null, null, result.refreshToken, 0);
-                    newResult.updateTenantAndUserInfo(result.tenantId, result.idToken, result.userInfo);
-                    result = newResult;
-                } else {
-                   long nowSec = System.currentTimeMillis()/1000;
-                    log.log(Level.FINEST,
-                        String.format("%d minutes left until token in cache expires", TimeUnit.SECONDS.toMinutes(result.expiresOn - nowSec)));
+        log.log(Level.FINEST, "Looking up cache for a token...");
+        AuthenticationResult result = null;
+        Map.Entry<TokenCacheKey, AuthenticationResult> kvp = loadSingleItemFromCache(authority,
+            resource, clientId, subjectType, uniqueId, displayableId);
+        if (kvp != null) {
+            TokenCacheKey cacheKey = kvp.getKey();
+            final AuthenticationResult cachedResult = kvp.getValue();
+            result = cachedResult;
+
+            long nowMillis = System.currentTimeMillis();
+            boolean tokenNearExpiry = TimeUnit.SECONDS.toMillis(result.expiresOn) < nowMillis + ExpirationMarginInMillis;
+
+            if (tokenNearExpiry) {
+                // the cached item is shared with concurrent lookups, so drop the access token from a copy
+                AuthenticationResult newResult = new AuthenticationResult(result.accessTokenType, null, result.refreshToken, result.expiresOn);
+                newResult.updateTenantAndUserInfo(result.tenantId, result.idToken, result.userInfo);
+                newResult.isMultipleResourceRefreshToken = result.isMultipleResourceRefreshToken;
+                result = newResult;
+                log.log(Level.FINEST, "An expired or near expiry token was found in the cache");
+            } else if (!cacheKey.resource.equals(resource)) {
+                log.log(Level.FINEST, String.format(
+                        "Multi resource refresh token for resource '%s' will be used to acquire token for '%s'",
+                        cacheKey.resource, resource));
+                AuthenticationResult newResult = new AuthenticationResult(null, null, result.refreshToken, 0);
+                newResult.updateTenantAndUserInfo(result.tenantId, result.idToken, result.userInfo);
+                result = newResult;
+            } else {
+                log.log(Level.FINEST,
+                    String.format("%d minutes left until token in cache expires", TimeUnit.MILLISECONDS.toMinutes(TimeUnit.SECONDS.toMillis(result.expiresOn) - nowMillis)));
+            }
+            if (result.accessToken == null && result.refreshToken == null) {
+                boolean isRemoved;
+                synchronized (lock) {
+                    isRemoved = removeEntry(cacheKey, cachedResult);
                 }
-                if (result.accessToken == null && result.refreshToken == null) {
-                    this.tokenCacheDictionary.remove(cacheKey);
+                if (isRemoved) {
                     log.log(Level.FINEST,  "An old item was removed from the cache");
                     this.setHasStateChanged(true);
-                    result = null;
-                }
-                if (result != null) {
-                    log.log(Level.FINEST, String.format("A matching item (access token or refresh token or both) was found in the cache [hashCode: '%x']", cacheKey.hashCode() ));
                 }
-            } else {
-                log.log(Level.FINEST,  "No matching token was found in the cache");
+                result = null;
+            }
+            if (result != null) {
+                log.log(Level.FINEST, String.format("A matching item (access token or refresh token or both) was found in the cache [hashCode: '%x']", cacheKey.hashCode() ));
             }
-            return result;
+        } else {
+            log.log(Level.FINEST,  "No matching token was found in the cache");
         }
+        return result;
     }
 
-    void storeToCache(AuthenticationResult result, String authority, String resource, String clientId, TokenSubjectType subjectType) {
+    /// <summary>
+    /// Identifies the contents of the cache between two calls to clear; pass it to storeToCache.
+    /// </summary>
+    long getGeneration() {
+        return generation;
+    }
+
+    /// <summary>
+    /// Stores a token acquired while the cache was at the given generation. It is dropped if the cache has been
+    /// cleared since, e.g. by a sign out while the token was being acquired.
+    /// </summary>
+    void storeToCache(AuthenticationResult result, String authority, String resource, String clientId, TokenSubjectType subjectType, long generation) {
         synchronized(lock) {
+            if (generation != this.generation) {
+                log.log(Level.FINEST, "The cache was cleared while the token was acquired, not storing it");
+                return;
+            }
             log.log(Level.FINEST, "Storing token in the cache...");
             TokenCacheKey tokenCacheKey = new TokenCacheKey(authority, resource, clientId, subjectType, result.userInfo);
             log.log(Level.FINEST, String.format("\n==> tokenCacheKey:\n \t%s\n\t%s\n\t%s\n\t%s\n\t%s\n\t%s\n",
@@ -298,7 +440,7 @@ public class TokenCache {
                   , result.userInfo.uniqueId
                   , result.userInfo.displayableId
                   , subjectType));
-            tokenCacheDictionary.put(tokenCacheKey, result);
+            putEntry(tokenCacheKey, result);
             log.log(Level.FINEST, String.format("==> hashCode: '%x'", tokenCacheKey.hashCode()));
 
             log.log(Level.FINEST, "An item was stored in the cache");
@@ -328,7 +470,7 @@ public class TokenCache {
                 for (Map.Entry<TokenCacheKey, AuthenticationResult> mrrtItem : mrrtItems) {
                     AuthenticationResult update = mrrtItem.getValue();
                     update.refreshToken = result.refreshToken;
-                    tokenCacheDictionary.put(mrrtItem.getKey(), update);
+                    putEntry(mrrtItem.getKey(), update);
                 }
             }
         }
@@ -336,47 +478,48 @@ public class TokenCache {
 
     private Map.Entry<TokenCacheKey, AuthenticationResult> loadSingleItemFromCache(String authority, String resource, String clientId,
           TokenSubjectType subjectType, String uniqueId, String displayableId) throws IOException {
-        synchronized(lock) {
-            // First identify all potential tokens.
-            List<Map.Entry<TokenCacheKey, AuthenticationResult>> items = queryCache(authority, clientId,
-                subjectType, uniqueId, displayableId);
-
-            List<Map.Entry<TokenCacheKey, AuthenticationResult>> resourceSpecificItems = new LinkedList<>();
-            for (Map.Entry<TokenCacheKey, AuthenticationResult> item : items) {
-                if (item.getKey().resource.equals(resource)) {
-                    resourceSpecificItems.add(item);
-                }
+        // The resource index narrows the lookup down to the tokens issued for this resource.
+        List<Map.Entry<TokenCacheKey, AuthenticationResult>> resourceSpecificItems = new ArrayList<>();
+        Collection<TokenCacheKey> resourceKeys = StringUtils.isNullOrWhiteSpace(clientId)
+                ? getCandidates(authority, clientId, uniqueId, displayableId)
+                : getIndexed(resourceIndex, authority, clientId, resource);
+        for (Map.Entry<TokenCacheKey, AuthenticationResult> item : queryCache(resourceKeys, authority, clientId,
+                subjectType, uniqueId, displayableId)) {
+            if (item.getKey().resource.equals(resource)) {
+                resourceSpecificItems.add(item);
             }
+        }
 
 //            List<Map.Entry<TokenCacheKey, AuthenticationResult>> resourceSpecificItems =
 //                items.stream().filter(p -> p.getKey().resource.equals(resource)).collect(Collectors.toList());
 
-            int resourceValuesCount = resourceSpecificItems.size();
-            Map.Entry<TokenCacheKey, AuthenticationResult> returnValue = null;
-            if (resourceValuesCount == 1) {
-                log.log(Level.FINEST,  "An item matching the requested resource was found in the cache");
-                returnValue = resourceSpecificItems.get(0);
-            } else if (resourceValuesCount == 0) {
-                // There are no resource specific tokens.  Choose any of the MRRT tokens if there are any.
+        int resourceValuesCount = resourceSpecificItems.size();
+        Map.Entry<TokenCacheKey, AuthenticationResult> returnValue = null;
+        if (resourceValuesCount == 1) {
+            log.log(Level.FINEST,  "An item matching the requested resource was found in the cache");
+            returnValue = resourceSpecificItems.get(0);
+        } else if (resourceValuesCount == 0) {
+            // There are no resource specific tokens.  Choose any of the MRRT tokens if there are any.
+            List<Map.Entry<TokenCacheKey, AuthenticationResult>> items = queryCache(authority, clientId,
+                subjectType, uniqueId, displayableId);
 //                items.stream().filter(p -> p.getValue().isMultipleResourceRefreshToken).collect(Collectors.toList());
-                List<Map.Entry<TokenCacheKey, AuthenticationResult>> mrrtItems = new LinkedList<>();
-                for (Map.Entry<TokenCacheKey, AuthenticationResult> item : items) {
-                    if (item.getValue().isMultipleResourceRefreshToken) {
-                        mrrtItems.add(item);
-                    }
+            List<Map.Entry<TokenCacheKey, AuthenticationResult>> mrrtItems = new LinkedList<>();
+            for (Map.Entry<TokenCacheKey, AuthenticationResult> item : items) {
+                if (item.getValue().isMultipleResourceRefreshToken) {
+                    mrrtItems.add(item);
                 }
+            }
 
-                if (!mrrtItems.isEmpty()) {
-                    returnValue = mrrtItems.get(0);
-                    log.log(Level.FINEST, "A Multi Resource Refresh Token for a different resource was found which can be used");
-                }
-            } else {
-                String message = AuthError.MultipleTokensMatched;
-                log.log(Level.SEVERE, message);
-                throw new IOException(message);
+            if (!mrrtItems.isEmpty()) {
+                returnValue = mrrtItems.get(0);
+                log.log(Level.FINEST, "A Multi Resource Refresh Token for a different resource was found which can be used");
             }
-            return returnValue;
+        } else {
+            String message = AuthError.MultipleTokensMatched;
+            log.log(Level.SEVERE, message);
+            throw new IOException(message);
         }
+        return returnValue;
     }
 
     /// <summary>
@@ -386,18 +529,183 @@ public class TokenCache {
     /// </summary>
     private List<Map.Entry<TokenCacheKey, AuthenticationResult>> queryCache(String authority, String clientId,
         TokenSubjectType subjectType, String uniqueId, String displayableId) {
-       synchronized(lock) {
-          List<Map.Entry<TokenCacheKey, AuthenticationResult>> res = new LinkedList<>();
-          for(Map.Entry<TokenCacheKey, AuthenticationResult> p : tokenCacheDictionary.entrySet()) {
-             if(p.getKey().authority.equals(authority)
-                        && (StringUtils.isNullOrWhiteSpace(clientId) || p.getKey().clientId.equals(clientId))
-                        && (StringUtils.isNullOrWhiteSpace(uniqueId) || p.getKey().uniqueId.equals(uniqueId))
-                        && (StringUtils.isNullOrWhiteSpace(displayableId) || p.getKey().displayableId.equals(displayableId))
-                        && p.getKey().tokenSubjectType.equals(subjectType)) {
-                res.add(p);
-             }
-          }
-          return res;
+        return queryCache(getCandidates(authority, clientId, uniqueId, displayableId), authority, clientId,
+                subjectType, uniqueId, displayableId);
+    }
+
+    private List<Map.Entry<TokenCacheKey, AuthenticationResult>> queryCache(Collection<TokenCacheKey> candidates,
+        String authority, String clientId, TokenSubjectType subjectType, String uniqueId, String displayableId) {
+        List<Map.Entry<TokenCacheKey, AuthenticationResult>> res = new ArrayList<>();
+        for (TokenCacheKey key : candidates) {
+            if (key.authority.equals(authority)
+                    && (StringUtils.isNullOrWhiteSpace(clientId) || key.clientId.equals(clientId))
+                    && (StringUtils.isNullOrWhiteSpace(uniqueId) || key.uniqueId.equals(uniqueId))
+                    && (StringUtils.isNullOrWhiteSpace(displayableId) || key.displayableId.equals(displayableId))
+                    && key.tokenSubjectType.equals(subjectType)) {
+                // the key may have been removed since the index was read
+                CachedResult value = tokenCacheDictionary.get(key);
+                AuthenticationResult result = (value != null) ? value.get() : null;
+                if (result != null) {
+                    res.add(new AbstractMap.SimpleImmutableEntry<>(key, result));
+                }
+            }
+        }
+        return res;
+    }
+
+    /// <summary>
+    /// Picks the narrowest index for a query. Only a lookup without client or user scans the whole cache.
+    /// </summary>
+    private Collection<TokenCacheKey> getCandidates(String authority, String clientId, String uniqueId, String displayableId) {
+        if (!StringUtils.isNullOrWhiteSpace(clientId)) {
+            return getIndexed(clientIndex, authority, clientId);
+        }
+        if (!StringUtils.isNullOrWhiteSpace(uniqueId)) {
+            return getIndexed(userIndex, authority, UniqueIdPrefix + uniqueId);
+        }
+        if (!StringUtils.isNullOrWhiteSpace(displayableId)) {
+            return getIndexed(userIndex, authority, DisplayableIdPrefix + displayableId);
+        }
+        return tokenCacheDictionary.keySet();
+    }
+
+    private static Collection<TokenCacheKey> getIndexed(Map<String, Set<TokenCacheKey>> index, String... parts) {
+        Set<TokenCacheKey> keys = index.get(indexKey(parts));
+        return (keys != null) ? keys : Collections.<TokenCacheKey>emptySet();
+    }
+
+    private static String indexKey(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            sb.append(part).append(Delimiter);
+        }
+        return sb.toString();
+    }
+
+    // The methods below change the cache and must be called holding the lock.
+
+    private void putEntry(TokenCacheKey key, AuthenticationResult result) {
+        storeEntry(key, result);
+        onEntryChanged(key, result);
+    }
+
+    // key must be the instance stored in the map, as returned by a query
+    private void removeEntry(TokenCacheKey key) {
+        deleteEntry(key);
+        onEntryChanged(key, null);
+    }
+
+    // removes the entry only if it still holds the result a lookup read without the lock; a token stored for the
+    // key since then is kept
+    private boolean removeEntry(TokenCacheKey key, AuthenticationResult expected) {
+        CachedResult current = tokenCacheDictionary.get(key);
+        if (current == null || current.get() != expected) {
+            return false;
+        }
+        removeEntry(key);
+        return true;
+    }
+
+    private void storeEntry(TokenCacheKey key, AuthenticationResult result) {
+        storeEntry(key, new CachedResult(result));
+    }
+
+    private void storeEntry(TokenCacheKey key, CachedResult result) {
+        // an equal key keeps the instance already in the map, which is the one indexed
+        if (tokenCacheDictionary.put(key, result) == null) {
+            addToIndex(clientIndex, indexKey(key.authority, key.clientId), key);
+            addToIndex(resourceIndex, indexKey(key.authority, key.clientId, key.resource), key);
+            if (key.uniqueId != null) {
+                addToIndex(userIndex, indexKey(key.authority, UniqueIdPrefix + key.uniqueId), key);
+            }
+            if (key.displayableId != null) {
+                addToIndex(userIndex, indexKey(key.authority, DisplayableIdPrefix + key.displayableId), key);
+            }
+        }
+    }
+
+    private void deleteEntry(TokenCacheKey key) {
+        if (tokenCacheDictionary.remove(key) != null) {
+            removeFromIndex(clientIndex, indexKey(key.authority, key.clientId), key);
+            removeFromIndex(resourceIndex, indexKey(key.authority, key.clientId, key.resource), key);
+            removeFromIndex(userIndex, indexKey(key.authority, UniqueIdPrefix + key.uniqueId), key);
+            removeFromIndex(userIndex, indexKey(key.authority, DisplayableIdPrefix + key.displayableId), key);
+        }
+    }
+
+    private void clearEntries() {
+        tokenCacheDictionary.clear();
+        clientIndex.clear();
+        resourceIndex.clear();
+        userIndex.clear();
+    }
+
+    private static void addToIndex(Map<String, Set<TokenCacheKey>> index, String indexKey, TokenCacheKey key) {
+        Set<TokenCacheKey> keys = index.get(indexKey);
+        Set<TokenCacheKey> updated = (keys != null) ? new HashSet<>(keys) : new HashSet<TokenCacheKey>();
+        updated.add(key);
+        index.put(indexKey, Collections.unmodifiableSet(updated));
+    }
+
+    private static void removeFromIndex(Map<String, Set<TokenCacheKey>> index, String indexKey, TokenCacheKey key) {
+        Set<TokenCacheKey> keys = index.get(indexKey);
+        if (keys == null || !keys.contains(key)) {
+            return;
+        }
+        if (keys.size() == 1) {
+            index.remove(indexKey);
+            return;
+        }
+        Set<TokenCacheKey> updated = new HashSet<>(keys);
+        updated.remove(key);
+        index.put(indexKey, Collections.unmodifiableSet(updated));
+    }
+
+    /// <summary>
+    /// A cached result that may still be in its serialized form.
+    /// </summary>
+    private static final class CachedResult {
+        private final byte[] state;
+        private final int offset;
+        private final int length;
+        private volatile AuthenticationResult result;
+
+        CachedResult(AuthenticationResult result) {
+            this(null, 0, 0);
+            this.result = result;
+        }
+
+        CachedResult(byte[] state, int offset, int length) {
+            this.state = state;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        AuthenticationResult get() {
+            AuthenticationResult value = result;
+            if (value == null && state != null) {
+                synchronized (this) {
+                    value = result;
+                    if (value == null) {
+                        try {
+                            value = AuthenticationResult.deserialize(new String(state, offset, length, StandardCharsets.UTF_8));
+                            result = value;
+                        } catch (IOException | RuntimeException ex) {
+                            log.log(Level.WARNING, "Skipping a token cache item that can't be read: " + ex.getMessage());
+                        }
+                    }
+                }
+            }
+            return value;
+        }
+
+        byte[] getBytes() throws IOException {
+            AuthenticationResult value = result;
+            if (value == null && state != null) {
+                // not looked up since it was loaded, so it is written back unchanged
+                return Arrays.copyOfRange(state, offset, offset + length);
+            }
+            return value.serialize().getBytes(StandardCharsets.UTF_8);
         }
     }
 }
@@ -29,22 +29,42 @@ import com.microsoft.azuretools.Constants;
 import com.microsoft.azuretools.adauth.*;
 import com.microsoft.azuretools.authmanage.models.AdAuthDetails;
 import com.microsoft.azuretools.sdkmanage.AccessTokenAzureManager;
+import com.microsoft.azuretools.utils.IProgressIndicator;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AdAuthManager {
     private final static Logger LOGGER = Logger.getLogger(AdAuthManager.class.getName());
+    private final static long CancelPollIntervalInMillis = 200;
     private final TokenCache cache;
-    private TokenFileStorage tokenFileStorage;
+    private final TokenRefreshScheduler tokenRefreshScheduler;
+    private final ConcurrentMap<String, AuthContext> tidToAuthContextMap = new ConcurrentHashMap<>();
     private static AdAuthManager instance = null;
     //private static String adAuthSettingsFileName = "AdAuthDetails.json";
     private static AdAuthDetails adAuthDetails = new AdAuthDetails();
     //private static Map<String, List<String>> tidToSidsMap = new HashMap<>();
+    private volatile Map<String, Throwable> tidToErrorMap = Collections.emptyMap();
 
     public static AdAuthManager getInstance() throws IOException {
         if( instance == null) {
@@ -61,39 +81,116 @@ public class AdAuthManager {
     }
 
     public String getAccessToken(String tid, String resource, PromptBehavior promptBehavior) throws IOException {
-        AuthContext ac = new AuthContext(String.format("%s/%s", Constants.authority, tid), cache);
-        AuthenticationResult result = ac.acquireToken(resource, Constants.clientId, Constants.redirectUri, promptBehavior, null);
+        if (promptBehavior == PromptBehavior.Auto) {
+            // served from the cache, which the scheduler keeps fresh for the tokens in use
+            return tokenRefreshScheduler.getAccessToken(tid, resource);
+        }
+        AuthenticationResult result = getAuthContext(tid).acquireToken(resource, Constants.clientId, Constants.redirectUri, promptBehavior, null);
         return result.getAccessToken();
     }
 
+    /**
+     * How access token requests were served, including how many shared an acquisition already in flight
+     */
+    public TokenAcquisitionStatistics getTokenAcquisitionStatistics() {
+        return tokenRefreshScheduler.getStatistics();
+    }
+
+    /**
+     * Gets the context of a tenant. It lives as long as the manager, so the authority is resolved once per tenant
+     * and not on every token request; token requests for one tenant run one at a time, which keeps sharing it safe.
+     */
+    AuthContext getAuthContext(String tid) throws IOException {
+        AuthContext ac = tidToAuthContextMap.get(tid);
+        if (ac == null) {
+            AuthContext newAc = new AuthContext(String.format("%s/%s", Constants.authority, tid), cache);
+            ac = tidToAuthContextMap.putIfAbsent(tid, newAc);
+            if (ac == null) {
+                ac = newAc;
+            }
+        }
+        return ac;
+    }
+
     public AuthenticationResult signIn() throws IOException {
+        return signIn(null);
+    }
+
+    /**
+     * Signs in interactively, then gets the tokens and subscriptions of every tenant of the account, up to
+     * {@link CommonSettings#getSignInParallelism()} tenants at a time. A tenant that fails is left out of
+     * {@link #getAccountTenantsAndSubscriptions()} and its error is kept in {@link #getTenantSignInErrors()};
+     * sign in only fails as a whole when it is canceled or when every tenant fails.
+     */
+    public AuthenticationResult signIn(IProgressIndicator progressIndicator) throws IOException {
 
         // build token cache for azure and graph api
         // using azure sdk directly
 
         cleanCache();
         String commonTid = "common";
-        AuthContext ac = new AuthContext(String.format("%s/%s", Constants.authority, commonTid), cache);
+        AuthContext ac = getAuthContext(commonTid);
 
         AuthenticationResult result = ac.acquireToken(AzureEnvironment.AZURE.resourceManagerEndpoint(), Constants.clientId, Constants.redirectUri, PromptBehavior.Always, null);
         String displayableId = result.getUserInfo().getDisplayableId();
-        UserIdentifier uid = new UserIdentifier(displayableId, UserIdentifierType.RequiredDisplayableId);
+        final UserIdentifier uid = new UserIdentifier(displayableId, UserIdentifierType.RequiredDisplayableId);
 
         Map<String, List<String>> tidToSidsMap = new HashMap<>();
+        Map<String, Throwable> tidToErrorMap = new LinkedHashMap<>();
 //        List<Tenant> tenants = AccessTokenAzureManager.authTid(commonTid).tenants().list();
         List<Tenant> tenants = AccessTokenAzureManager.getTenants(commonTid);
-        for (Tenant t : tenants) {
-            String tid = t.tenantId();
-            AuthContext ac1 = new AuthContext(String.format("%s/%s", Constants.authority, tid), cache);
-            // put tokens into the cache
-            ac1.acquireToken(AzureEnvironment.AZURE.resourceManagerEndpoint(), Constants.clientId, Constants.redirectUri, PromptBehavior.Auto, uid);
-            ac1.acquireToken(AzureEnvironment.AZURE.graphEndpoint(), Constants.clientId, Constants.redirectUri, PromptBehavior.Auto, uid);
-            ac1.acquireToken(Constants.resourceVault, Constants.clientId, Constants.redirectUri, PromptBehavior.Auto, uid);
-            List<String> sids = new LinkedList<>();
-            for (Subscription s : AccessTokenAzureManager.getSubscriptions(tid)) {
-                sids.add(s.subscriptionId());
+        if (!tenants.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(CommonSettings.getSignInParallelism(), tenants.size()), new SignInThreadFactory());
+            try {
+                CompletionService<List<String>> completionService = new ExecutorCompletionService<>(executor);
+                Map<Future<List<String>>, String> futureToTidMap = new HashMap<>();
+                for (Tenant t : tenants) {
+                    final String tid = t.tenantId();
+                    futureToTidMap.put(completionService.submit(new Callable<List<String>>() {
+                        @Override
+                        public List<String> call() throws IOException {
+                            return signInTenant(tid, uid);
+                        }
+                    }), tid);
+                }
+                int completed = 0;
+                while (completed < tenants.size()) {
+                    if (progressIndicator != null && progressIndicator.isCanceled()) {
+                        throw new AuthCanceledException("Canceled by user");
+                    }
+                    Future<List<String>> future = completionService.poll(CancelPollIntervalInMillis, TimeUnit.MILLISECONDS);
+                    if (future == null) {
+                        continue;
+                    }
+                    completed++;
+                    String tid = futureToTidMap.get(future);
+                    try {
+                        tidToSidsMap.put(tid, future.get());
+                    } catch (ExecutionException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof AuthCanceledException) {
+                            throw (AuthCanceledException) cause;
+                        }
+                        LOGGER.log(Level.WARNING, String.format("signIn: failed to sign in to tenant %s", tid), cause);
+                        tidToErrorMap.put(tid, cause);
+                    }
+                    if (progressIndicator != null) {
+                        progressIndicator.setText2(String.format("Signed in to %d of %d tenants", completed, tenants.size()));
+                        progressIndicator.setFraction((double) completed / tenants.size());
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Sign in was interrupted");
+            } finally {
+                executor.shutdownNow();
             }
-            tidToSidsMap.put(t.tenantId(), sids);
+        }
+        this.tidToErrorMap = Collections.unmodifiableMap(tidToErrorMap);
+        if (tidToSidsMap.isEmpty() && !tidToErrorMap.isEmpty()) {
+            Throwable error = tidToErrorMap.values().iterator().next();
+            throw (error instanceof IOException) ? (IOException) error : new IOException(error);
         }
 
         // save account email
@@ -109,6 +206,26 @@ public class AdAuthManager {
         return result;
     }
 
+    private List<String> signInTenant(String tid, UserIdentifier uid) throws IOException {
+        AuthContext ac = getAuthContext(tid);
+        // put tokens into the cache
+        ac.acquireToken(AzureEnvironment.AZURE.resourceManagerEndpoint(), Constants.clientId, Constants.redirectUri, PromptBehavior.Auto, uid);
+        ac.acquireToken(AzureEnvironment.AZURE.graphEndpoint(), Constants.clientId, Constants.redirectUri, PromptBehavior.Auto, uid);
+        ac.acquireToken(Constants.resourceVault, Constants.clientId, Constants.redirectUri, PromptBehavior.Auto, uid);
+        List<String> sids = new LinkedList<>();
+        for (Subscription s : AccessTokenAzureManager.getSubscriptions(tid)) {
+            sids.add(s.subscriptionId());
+        }
+        return sids;
+    }
+
+    /**
+     * Tenants the last sign in could not get tokens or subscriptions for, with the error of each
+     */
+    public Map<String, Throwable> getTenantSignInErrors() {
+        return tidToErrorMap;
+    }
+
     public Map<String, List<String>>  getAccountTenantsAndSubscriptions() {
         return adAuthDetails.getTidToSidsMap();
     }
@@ -117,6 +234,7 @@ public class AdAuthManager {
         cleanCache();
         adAuthDetails.setAccountEmail(null);
         adAuthDetails.setTidToSidsMap(null);
+        tidToErrorMap = Collections.emptyMap();
 //        saveSettings();
     }
 
@@ -128,28 +246,25 @@ public class AdAuthManager {
 
     // logout
     public void cleanCache() {
+        LOGGER.log(Level.FINE, "Token acquisitions: " + tokenRefreshScheduler.getStatistics());
+        tokenRefreshScheduler.clear();
         cache.clear();
     }
 
     private AdAuthManager(boolean useFileCache) throws IOException {
-        cache = new TokenCache();
-        if (useFileCache) {
-            tokenFileStorage = new TokenFileStorage(CommonSettings.settingsBaseDir);
-            byte[] data = tokenFileStorage.read();
-            cache.deserialize(data);
-
-            cache.setOnAfterAccessCallback(new Runnable() {
-                public void run() {
-                    try {
-                        if(cache.getHasStateChanged()) {
-                            tokenFileStorage.write(cache.serialize());
-                            cache.setHasStateChanged(false);
-                        }
-                    } catch (IOException ex) {
-                        System.out.println(ex.getMessage());
-                    }
-                }
-            });
+        // the file cache persists its own changes and picks up those of other IDE processes
+        cache = useFileCache ? new FileTokenCache(CommonSettings.settingsBaseDir) : new TokenCache();
+        tokenRefreshScheduler = new TokenRefreshScheduler(this);
+    }
+
+    private static class SignInThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AdAuthManager-signIn-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 
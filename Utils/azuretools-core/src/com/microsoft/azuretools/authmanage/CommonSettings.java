@@ -39,6 +39,61 @@ public class CommonSettings {
         CommonSettings.uiFactory = uiFactory;
     }
 
+    private static int signInParallelism = 4;
+    /**
+     * Number of tenants {@link AdAuthManager#signIn()} signs in to at the same time
+     */
+    public static int getSignInParallelism() {
+        return signInParallelism;
+    }
+    public static void setSignInParallelism(int signInParallelism) {
+        if (signInParallelism < 1) {
+            throw new IllegalArgumentException("signInParallelism must be positive");
+        }
+        CommonSettings.signInParallelism = signInParallelism;
+    }
+
+    private static int tenantQueryParallelism = 4;
+    private static long tenantQueryTimeoutMillis = 30000;
+    /**
+     * Number of tenants whose subscriptions are listed at the same time
+     */
+    public static int getTenantQueryParallelism() {
+        return tenantQueryParallelism;
+    }
+    public static void setTenantQueryParallelism(int tenantQueryParallelism) {
+        if (tenantQueryParallelism < 1) {
+            throw new IllegalArgumentException("tenantQueryParallelism must be positive");
+        }
+        CommonSettings.tenantQueryParallelism = tenantQueryParallelism;
+    }
+    /**
+     * Time a single tenant may take to list its subscriptions before it is left out
+     */
+    public static long getTenantQueryTimeoutMillis() {
+        return tenantQueryTimeoutMillis;
+    }
+    public static void setTenantQueryTimeoutMillis(long tenantQueryTimeoutMillis) {
+        if (tenantQueryTimeoutMillis < 1) {
+            throw new IllegalArgumentException("tenantQueryTimeoutMillis must be positive");
+        }
+        CommonSettings.tenantQueryTimeoutMillis = tenantQueryTimeoutMillis;
+    }
+
+    private static int subscriptionQueryParallelism = 8;
+    /**
+     * Number of subscriptions whose resource groups and locations are read at the same time
+     */
+    public static int getSubscriptionQueryParallelism() {
+        return subscriptionQueryParallelism;
+    }
+    public static void setSubscriptionQueryParallelism(int subscriptionQueryParallelism) {
+        if (subscriptionQueryParallelism < 1) {
+            throw new IllegalArgumentException("subscriptionQueryParallelism must be positive");
+        }
+        CommonSettings.subscriptionQueryParallelism = subscriptionQueryParallelism;
+    }
+
     public static String USER_AGENT = "Azure Toolkit";
     /**
      * Need this as a static method when we call this class directly from Eclipse or IntelliJ plugin to know plugin version
@@ -33,41 +33,67 @@ import com.microsoft.azuretools.utils.Pair;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by shch on 10/3/2016.
+ *
+ * The subscription details are published as immutable snapshots, so reads never wait for a writer or a listener.
+ * Callers get their own copies of the details. Listeners are notified once per change, on the thread that made it,
+ * outside the lock.
  */
 public class SubscriptionManager {
-    private Set<ISubscriptionSelectionListener> listeners = new HashSet<>();
-    protected AzureManager azureManager;
+    private static final Logger LOGGER = Logger.getLogger(SubscriptionManager.class.getName());
 
-    // for user to select subscr to work with
-    private List<SubscriptionDetail> subscriptionDetails;
+    private final Set<ISubscriptionSelectionListener> listeners = new CopyOnWriteArraySet<>();
+    // serializes writers; readers only look at the snapshot
+    private final Object lock = new Object();
+    protected AzureManager azureManager;
 
-    // to get tid for sid
-    private Map<String, String> sidToTid = new HashMap<String, String>();
+    private volatile Snapshot snapshot = Snapshot.Empty;
 
     public SubscriptionManager(AzureManager azureManager) {
         this.azureManager = azureManager;
     }
 
-    public synchronized List<SubscriptionDetail> getSubscriptionDetails() throws AuthException, IOException {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManager.getSubscriptionDetails()");
-        if (subscriptionDetails == null) {
-            List<SubscriptionDetail> sdl = updateAccountSubscriptionList();
-            doSetSubscriptionDetails(sdl);;
+    /**
+     * @return a copy of the subscriptions of the account; pass it to {@link #setSubscriptionDetails(List)} after
+     * changing the selection
+     */
+    public List<SubscriptionDetail> getSubscriptionDetails() throws AuthException, IOException {
+        Snapshot current = snapshot;
+        if (current.subscriptionDetails == null) {
+            synchronized (lock) {
+                if (snapshot.subscriptionDetails == null) {
+                    LOGGER.log(Level.FINE, "getSubscriptionDetails: loading the subscription list");
+                    doSetSubscriptionDetails(updateAccountSubscriptionList());
+                }
+                current = snapshot;
+            }
         }
-        return subscriptionDetails;
+        return copyOf(current.subscriptionDetails);
     }
 
-    protected List<SubscriptionDetail> updateAccountSubscriptionList() throws IOException {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManager.updateAccountSubscriptionList()");
+    private static List<SubscriptionDetail> copyOf(List<SubscriptionDetail> subscriptionDetails) {
+        List<SubscriptionDetail> copy = new ArrayList<>(subscriptionDetails.size());
+        for (SubscriptionDetail sd : subscriptionDetails) {
+            copy.add(new SubscriptionDetail(
+                    sd.getSubscriptionId(),
+                    sd.getSubscriptionName(),
+                    sd.getTenantId(),
+                    sd.isSelected()));
+        }
+        return copy;
+    }
 
+    protected List<SubscriptionDetail> updateAccountSubscriptionList() throws IOException {
         if (azureManager == null) {
             throw new IllegalArgumentException("azureManager is null");
         }
 
-        System.out.println("Getting subscription list from Azure");
+        LOGGER.log(Level.FINE, "updateAccountSubscriptionList: getting subscription list from Azure");
         List<SubscriptionDetail> sdl = new ArrayList<>();
         List<Pair<Subscription, Tenant>> stpl = azureManager.getSubscriptionsWithTenant();
         for (Pair<Subscription, Tenant> stp : stpl) {
@@ -81,70 +107,82 @@ public class SubscriptionManager {
         return sdl;
     }
 
-    private synchronized void doSetSubscriptionDetails(List<SubscriptionDetail> subscriptionDetails) throws AuthException {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManager.doSetSubscriptionDetails()");
+    private void doSetSubscriptionDetails(List<SubscriptionDetail> subscriptionDetails) throws AuthException {
         if (subscriptionDetails.isEmpty()) {
             throw new AuthException("No subscription found in the account");
         }
-
-        this.subscriptionDetails = subscriptionDetails;
-        updateSidToTidMap();
+        synchronized (lock) {
+            snapshot = new Snapshot(subscriptionDetails);
+        }
     }
 
     public void setSubscriptionDetails(List<SubscriptionDetail> subscriptionDetails) throws AuthException, IOException {
-        System.out.println("SubscriptionManager.setSubscriptionDetails() " + Thread.currentThread().getId());
+        LOGGER.log(Level.FINE, "setSubscriptionDetails: " + subscriptionDetails.size() + " subscriptions");
         doSetSubscriptionDetails(subscriptionDetails);
-        notifyAllListeners();
+        notifyAllListeners(false);
     }
 
-    public synchronized void addListener(ISubscriptionSelectionListener l) {
-        if (!listeners.contains(l)) {
-            listeners.add(l);
-        }
+    public void addListener(ISubscriptionSelectionListener l) {
+        listeners.add(l);
     }
 
-    public synchronized void removeListener(ISubscriptionSelectionListener l) {
+    public void removeListener(ISubscriptionSelectionListener l) {
         listeners.remove(l);
     }
 
-    private void notifyAllListeners() {
+    private void notifyAllListeners(boolean isRefresh) {
         for (ISubscriptionSelectionListener l : listeners) {
-            l.update(subscriptionDetails == null);
+            try {
+                l.update(isRefresh);
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "notifyAllListeners: listener failed", ex);
+            }
         }
         if (AzureUIRefreshCore.listeners != null) {
             AzureUIRefreshCore.execute(new AzureUIRefreshEvent(AzureUIRefreshEvent.EventType.UPDATE, null));
         }
     }
 
-    public synchronized String getSubscriptionTenant(String sid) {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManager.getSubscriptionTenant()");
-        String tid = sidToTid.get(sid);
-        return tid;
+    public String getSubscriptionTenant(String sid) {
+        return snapshot.sidToTid.get(sid);
     }
 
-    public synchronized Set<String> getAccountSidList() {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManager.getAccountSidList()");
-        return sidToTid.keySet();
+    public Set<String> getAccountSidList() {
+        return snapshot.sidToTid.keySet();
     }
 
     public void cleanSubscriptions() throws IOException {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManager.cleanSubscriptions()");
-        synchronized (this) {
-            if (subscriptionDetails != null) {
-                subscriptionDetails.clear();
-                subscriptionDetails = null;
-                sidToTid.clear();
-            }
+        LOGGER.log(Level.FINE, "cleanSubscriptions");
+        synchronized (lock) {
+            snapshot = Snapshot.Empty;
         }
-        notifyAllListeners();
+        notifyAllListeners(true);
     }
 
-    private void updateSidToTidMap() {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManager.updateSidToTidMap()");
-        sidToTid.clear();
-        for (SubscriptionDetail sd : subscriptionDetails) {
-            if (sd.isSelected())
-                sidToTid.put(sd.getSubscriptionId(), sd.getTenantId());
+    private static final class Snapshot {
+        static final Snapshot Empty = new Snapshot(null);
+
+        // null until the list has been loaded
+        final List<SubscriptionDetail> subscriptionDetails;
+        // to get tid for sid, selected subscriptions only
+        final Map<String, String> sidToTid;
+
+        Snapshot(List<SubscriptionDetail> subscriptionDetails) {
+            if (subscriptionDetails == null) {
+                this.subscriptionDetails = null;
+                this.sidToTid = Collections.emptyMap();
+                return;
+            }
+            // copied so a caller toggling the selection of its list can't change the snapshot
+            List<SubscriptionDetail> copy = copyOf(subscriptionDetails);
+            Map<String, String> sidToTid = new HashMap<>();
+            for (SubscriptionDetail sd : copy) {
+                if (sd.isSelected()) {
+                    sidToTid.put(sd.getSubscriptionId(), sd.getTenantId());
+                }
+            }
+            this.subscriptionDetails = Collections.unmodifiableList(copy);
+            this.sidToTid = Collections.unmodifiableMap(sidToTid);
         }
     }
 }
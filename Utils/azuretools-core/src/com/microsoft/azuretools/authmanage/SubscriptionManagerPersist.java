@@ -32,11 +32,14 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by vlashch on 11/15/16.
  */
 public class SubscriptionManagerPersist extends SubscriptionManager {
+    private static final Logger LOGGER = Logger.getLogger(SubscriptionManagerPersist.class.getName());
 
     public SubscriptionManagerPersist(AzureManager azureManager) {
         super(azureManager);
@@ -44,7 +47,6 @@ public class SubscriptionManagerPersist extends SubscriptionManager {
 
     @Override
     public void setSubscriptionDetails(List<SubscriptionDetail> subscriptionDetails) throws AuthException, IOException {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManagerPersist.setSubscriptionDetails()");
         synchronized (this) {
             String subscriptionsDetailsFileName = azureManager.getSettings().getSubscriptionsDetailsFileName();
             saveSubscriptions(subscriptionDetails, subscriptionsDetailsFileName);
@@ -54,7 +56,6 @@ public class SubscriptionManagerPersist extends SubscriptionManager {
 
     @Override
     protected List<SubscriptionDetail> updateAccountSubscriptionList() throws IOException {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManagerPersist.updateAccountSubscriptionList()");
         List<SubscriptionDetail> sdl = null;
         synchronized (this) {
             String subscriptionsDetailsFileName = azureManager.getSettings().getSubscriptionsDetailsFileName();
@@ -68,29 +69,28 @@ public class SubscriptionManagerPersist extends SubscriptionManager {
     }
 
     @Override
-    public synchronized void cleanSubscriptions() throws IOException {
-        System.out.println(Thread.currentThread().getId() + " SubscriptionManagerPersist.cleanSubscriptions()");
-        String subscriptionsDetailsFileName = azureManager.getSettings().getSubscriptionsDetailsFileName();
-        deleteSubscriptions(subscriptionsDetailsFileName);
+    public void cleanSubscriptions() throws IOException {
+        synchronized (this) {
+            String subscriptionsDetailsFileName = azureManager.getSettings().getSubscriptionsDetailsFileName();
+            deleteSubscriptions(subscriptionsDetailsFileName);
+        }
         super.cleanSubscriptions();
     }
 
     public synchronized static void deleteSubscriptions(String subscriptionsDetailsFileName) throws IOException {
-        System.out.println("cleaning " + subscriptionsDetailsFileName + " file");
+        LOGGER.log(Level.FINE, "cleaning " + subscriptionsDetailsFileName + " file");
         //String subscriptionsDetailsFileName = azureManager.getSettings().getSubscriptionsDetailsFileName();
         FileStorage fs = new FileStorage(subscriptionsDetailsFileName, CommonSettings.settingsBaseDir);
         fs.cleanFile();
     }
 
     private static List<SubscriptionDetail> loadSubscriptions(String subscriptionsDetailsFileName) throws IOException {
-        System.out.println("SubscriptionManagerPersist.loadSubscriptions()");
-
         //subscriptionDetails.clear();
         FileStorage subscriptionsDetailsFileStorage = new FileStorage(subscriptionsDetailsFileName, CommonSettings.settingsBaseDir);
         byte[] data = subscriptionsDetailsFileStorage.read();
         String json = new String(data, StandardCharsets.UTF_8);
         if (json.isEmpty()) {
-            System.out.println(subscriptionsDetailsFileName + " file is empty");
+            LOGGER.log(Level.FINE, subscriptionsDetailsFileName + " file is empty");
             return null;
         }
         SubscriptionDetail[] sda = JsonHelper.deserialize(SubscriptionDetail[].class, json);
@@ -102,7 +102,6 @@ public class SubscriptionManagerPersist extends SubscriptionManager {
     }
 
     private static void saveSubscriptions(List<SubscriptionDetail> sdl, String subscriptionsDetailsFileName) throws IOException {
-        System.out.println("SubscriptionManagerPersist.saveSubscriptions()");
         String sd = JsonHelper.serialize(sdl);
         //String subscriptionsDetailsFileName = azureManager.getSettings().getSubscriptionsDetailsFileName();
         FileStorage subscriptionsDetailsFileStorage = new FileStorage(subscriptionsDetailsFileName, CommonSettings.settingsBaseDir);
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Microsoft Corporation
+ *   <p/>
+ *  All rights reserved.
+ *   <p/>
+ *  MIT License
+ *   <p/>
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ *  to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *  <p/>
+ *  The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ *  the Software.
+ *   <p/>
+ *  THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ *  THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ *  TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.microsoft.azuretools.authmanage;
+
+/**
+ * Snapshot of how {@link AdAuthManager} served access token requests. Requests that arrived while the same
+ * (tenant, resource) was already being acquired waited for that acquisition instead of starting their own, so
+ * {@link #getCoalescedCount()} is the number of acquisitions saved.
+ */
+public final class TokenAcquisitionStatistics {
+    private final long requestCount;
+    private final long acquisitionCount;
+    private final long coalescedCount;
+    private final long refreshCount;
+    private final long refreshFailureCount;
+
+    TokenAcquisitionStatistics(long requestCount, long acquisitionCount, long coalescedCount,
+                               long refreshCount, long refreshFailureCount) {
+        this.requestCount = requestCount;
+        this.acquisitionCount = acquisitionCount;
+        this.coalescedCount = coalescedCount;
+        this.refreshCount = refreshCount;
+        this.refreshFailureCount = refreshFailureCount;
+    }
+
+    /**
+     * Access tokens asked for
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Acquisitions run on a caller's thread, from the cache or from the token endpoint
+     */
+    public long getAcquisitionCount() {
+        return acquisitionCount;
+    }
+
+    /**
+     * Requests that shared an acquisition already in flight
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Background refreshes run ahead of expiry
+     */
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    /**
+     * Background refreshes that failed
+     */
+    public long getRefreshFailureCount() {
+        return refreshFailureCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests: %d, acquisitions: %d, coalesced: %d, refreshes: %d, failed refreshes: %d",
+                requestCount, acquisitionCount, coalescedCount, refreshCount, refreshFailureCount);
+    }
+}
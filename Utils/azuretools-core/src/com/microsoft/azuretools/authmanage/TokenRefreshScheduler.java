@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) Microsoft Corporation
+ *   <p/>
+ *  All rights reserved.
+ *   <p/>
+ *  MIT License
+ *   <p/>
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ *  to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *  <p/>
+ *  The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ *  the Software.
+ *   <p/>
+ *  THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ *  THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ *  TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.microsoft.azuretools.authmanage;
+
+import com.microsoft.azuretools.Constants;
+import com.microsoft.azuretools.adauth.AuthContext;
+import com.microsoft.azuretools.adauth.AuthenticationResult;
+import com.microsoft.azuretools.adauth.PromptBehavior;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands out access tokens per (tenant, resource) and keeps the recently used ones fresh.
+ * <p>
+ * The token cache treats a token as expired 5 minutes before it expires, and the caller that finds it so
+ * redeems the refresh token on its own thread. To keep that off the callers, every token handed out gets a
+ * background refresh scheduled {@link #RefreshAheadInMillis} before it expires. A pair is only refreshed while
+ * it is in use; after {@link #IdleTimeoutInMillis} without a request it is dropped. Concurrent requests for
+ * the same pair, including a background refresh, share a single acquisition on the tenant's long-lived
+ * {@link AuthContext}.
+ */
+final class TokenRefreshScheduler {
+    private final static Logger LOGGER = Logger.getLogger(TokenRefreshScheduler.class.getName());
+    private final static long RefreshAheadInMillis = TimeUnit.MINUTES.toMillis(10);
+    private final static long IdleTimeoutInMillis = TimeUnit.MINUTES.toMillis(30);
+    private final static long RetryDelayInMillis = TimeUnit.MINUTES.toMillis(1);
+
+    private final AdAuthManager authManager;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong acquisitionCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshFailureCount = new AtomicLong();
+    private final ConcurrentMap<TokenKey, Acquisition> acquisitions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<TokenKey, Refresh> refreshes = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor executor;
+    // bumped by clear(), so a token acquired before it does not get a refresh scheduled after it
+    private volatile long generation = 0;
+
+    TokenRefreshScheduler(AdAuthManager authManager) {
+        this.authManager = authManager;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TokenRefreshScheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    String getAccessToken(String tid, String resource) throws IOException {
+        requestCount.incrementAndGet();
+        TokenKey key = new TokenKey(tid, resource);
+        long generation = this.generation;
+        AuthenticationResult result = acquire(key, false);
+        touch(key, result, generation);
+        return result.getAccessToken();
+    }
+
+    TokenAcquisitionStatistics getStatistics() {
+        return new TokenAcquisitionStatistics(requestCount.get(), acquisitionCount.get(), coalescedCount.get(),
+                refreshCount.get(), refreshFailureCount.get());
+    }
+
+    /**
+     * Cancels all scheduled refreshes, e.g. when the cache is cleared on sign out. An acquisition already running
+     * finishes, but later requests don't share it, the token cache drops what it acquired once the cache has been
+     * cleared, and no refresh is scheduled for it.
+     */
+    void clear() {
+        synchronized (refreshes) {
+            generation++;
+            acquisitions.clear();
+            for (Refresh refresh : refreshes.values()) {
+                if (refresh.future != null) {
+                    refresh.future.cancel(false);
+                }
+            }
+            refreshes.clear();
+        }
+    }
+
+    private AuthenticationResult acquire(TokenKey key, boolean silent) throws IOException {
+        for (;;) {
+            Acquisition acquisition = new Acquisition(key, silent);
+            Acquisition current = acquisitions.putIfAbsent(key, acquisition);
+            if (current == null) {
+                (silent ? refreshCount : acquisitionCount).incrementAndGet();
+                try {
+                    acquisition.run();
+                } finally {
+                    acquisitions.remove(key, acquisition);
+                }
+                return acquisition.await();
+            }
+            if (silent) {
+                // a caller is already getting this token and will schedule the next refresh
+                return null;
+            }
+            coalescedCount.incrementAndGet();
+            try {
+                return current.await();
+            } catch (IOException ex) {
+                if (!current.silent) {
+                    throw ex;
+                }
+                // the background refresh could not renew the token without the user; acquire it here instead
+            }
+        }
+    }
+
+    private void touch(TokenKey key, AuthenticationResult result, long generation) {
+        long expiresOnMillis = TimeUnit.SECONDS.toMillis(result.getExpiresOn());
+        Refresh refresh = refreshes.get(key);
+        if (refresh != null) {
+            refresh.lastUsedMillis = System.currentTimeMillis();
+            if (refresh.expiresOnMillis == expiresOnMillis) {
+                return;
+            }
+        }
+        synchronized (refreshes) {
+            if (generation != this.generation) {
+                // cleared while the token was acquired
+                return;
+            }
+            refresh = refreshes.get(key);
+            if (refresh == null) {
+                refresh = new Refresh();
+                refreshes.put(key, refresh);
+            }
+            refresh.lastUsedMillis = System.currentTimeMillis();
+            schedule(key, refresh, expiresOnMillis, expiresOnMillis - RefreshAheadInMillis);
+        }
+    }
+
+    // must hold the refreshes lock
+    private void schedule(final TokenKey key, Refresh refresh, long expiresOnMillis, long refreshAtMillis) {
+        if (refresh.future != null) {
+            refresh.future.cancel(false);
+            refresh.future = null;
+        }
+        refresh.expiresOnMillis = expiresOnMillis;
+        long delay = refreshAtMillis - System.currentTimeMillis();
+        if (delay <= 0) {
+            // the token does not live longer than the refresh ahead interval; leave it to the callers
+            return;
+        }
+        refresh.future = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refresh(key);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(TokenKey key) {
+        Refresh refresh;
+        synchronized (refreshes) {
+            refresh = refreshes.get(key);
+            if (refresh == null) {
+                return;
+            }
+            refresh.future = null;
+            if (System.currentTimeMillis() - refresh.lastUsedMillis > IdleTimeoutInMillis) {
+                LOGGER.log(Level.FINEST, String.format("refresh: %s has not been used recently, not refreshing", key));
+                refreshes.remove(key);
+                return;
+            }
+        }
+        AuthenticationResult result = null;
+        try {
+            result = acquire(key, true);
+        } catch (IOException | RuntimeException ex) {
+            refreshFailureCount.incrementAndGet();
+            LOGGER.log(Level.WARNING, String.format("refresh: failed to refresh %s", key), ex);
+        }
+        synchronized (refreshes) {
+            if (refreshes.get(key) != refresh) {
+                return;
+            }
+            if (result != null) {
+                long expiresOnMillis = TimeUnit.SECONDS.toMillis(result.getExpiresOn());
+                schedule(key, refresh, expiresOnMillis, expiresOnMillis - RefreshAheadInMillis);
+            } else if (refresh.future == null) {
+                // failed, or somebody else was acquiring it at the time; try again while the token is still valid
+                schedule(key, refresh, refresh.expiresOnMillis,
+                        Math.min(System.currentTimeMillis() + RetryDelayInMillis, refresh.expiresOnMillis - RetryDelayInMillis));
+            }
+        }
+    }
+
+    private final class Acquisition extends FutureTask<AuthenticationResult> {
+        private final boolean silent;
+
+        Acquisition(final TokenKey key, final boolean silent) {
+            super(new Callable<AuthenticationResult>() {
+                @Override
+                public AuthenticationResult call() throws IOException {
+                    AuthContext ac = authManager.getAuthContext(key.tid);
+                    return silent
+                            ? ac.acquireTokenSilent(key.resource, Constants.clientId, null, RefreshAheadInMillis)
+                            : ac.acquireToken(key.resource, Constants.clientId, Constants.redirectUri, PromptBehavior.Auto, null);
+                }
+            });
+            this.silent = silent;
+        }
+
+        AuthenticationResult await() throws IOException {
+            try {
+                return get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an access token");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private static final class Refresh {
+        volatile long lastUsedMillis;
+        volatile long expiresOnMillis;
+        ScheduledFuture<?> future;
+    }
+
+    private static final class TokenKey {
+        final String tid;
+        final String resource;
+
+        TokenKey(String tid, String resource) {
+            this.tid = tid;
+            this.resource = resource;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TokenKey)) {
+                return false;
+            }
+            TokenKey other = (TokenKey) o;
+            return tid.equals(other.tid) && resource.equals(other.resource);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tid.hashCode() + resource.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (tenant %s)", resource, tid);
+        }
+    }
+}
@@ -39,8 +39,20 @@ import com.microsoft.azuretools.utils.Pair;
 import com.microsoft.rest.credentials.ServiceClientCredentials;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AccessTokenAzureManager extends AzureManagerBase {
@@ -77,7 +89,7 @@ public class AccessTokenAzureManager extends AzureManagerBase {
         String tid = subscriptionManager.getSubscriptionTenant(sid);
         Azure azure = authTid(tid).withSubscription(sid);
         // TODO: remove this call after Azure SDK properly implements handling of unregistered provider namespaces
-        AzureRegisterProviderNamespaces.registerAzureNamespaces(azure);
+        AzureRegisterProviderNamespaces.registerAzureNamespacesAsync(azure, sid);
         sidToAzureMap.put(sid, azure);
         return azure;
     }
@@ -86,21 +98,63 @@ public class AccessTokenAzureManager extends AzureManagerBase {
     public List<Subscription> getSubscriptions() throws IOException {
         List<Subscription> sl = new LinkedList<Subscription>();
         // could be multi tenant - return all subscriptions for the current account
-        List<Tenant> tl = getTenants("common");
-        for (Tenant t : tl) {
-            sl.addAll(getSubscriptions(t.tenantId()));
+        for (Pair<Subscription, Tenant> st : getSubscriptionsWithTenant()) {
+            sl.add(st.first());
         }
         return sl;
     }
 
+    /**
+     * Lists the subscriptions of every tenant of the account, up to {@link CommonSettings#getTenantQueryParallelism()}
+     * tenants at a time. The result is in the order of the tenants, whichever finishes first. A tenant that fails, or
+     * takes longer than {@link CommonSettings#getTenantQueryTimeoutMillis()} once started, is logged and left out, as
+     * is a tenant still queued when every batch of tenants could have used up its timeout; the call only fails if
+     * every tenant does.
+     */
     @Override
     public List<Pair<Subscription, Tenant>> getSubscriptionsWithTenant() throws IOException {
+        List<Tenant> tl = getTenants("common");
+        List<TenantQuery> queries = new ArrayList<>(tl.size());
+        for (Tenant t : tl) {
+            queries.add(new TenantQuery(t));
+        }
+        if (queries.isEmpty()) {
+            return new LinkedList<>();
+        }
+        int parallelism = Math.min(CommonSettings.getTenantQueryParallelism(), queries.size());
+        long timeoutMillis = CommonSettings.getTenantQueryTimeoutMillis();
+        // queries hung past their timeout may keep their threads, so the queued ones must not wait for them forever
+        long queuedDeadline = System.currentTimeMillis() + (queries.size() + parallelism - 1) / parallelism * timeoutMillis;
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new TenantQueryThreadFactory());
         List<Pair<Subscription, Tenant>> stl = new LinkedList<>();
-        for (Tenant t : getTenants("common")) {
-            String tid = t.tenantId();
-            for (Subscription s : getSubscriptions(tid)) {
-                stl.add(new Pair<Subscription, Tenant>(s, t));
+        Exception error = null;
+        int succeeded = 0;
+        try {
+            for (TenantQuery query : queries) {
+                executor.execute(query);
             }
+            for (TenantQuery query : queries) {
+                try {
+                    for (Subscription s : query.await(timeoutMillis, queuedDeadline)) {
+                        stl.add(new Pair<Subscription, Tenant>(s, query.tenant));
+                    }
+                    succeeded++;
+                } catch (ExecutionException ex) {
+                    LOGGER.log(Level.WARNING, String.format("getSubscriptionsWithTenant: failed to list the subscriptions of tenant %s", query.tenant.tenantId()), ex.getCause());
+                    error = (error == null && ex.getCause() instanceof Exception) ? (Exception) ex.getCause() : error;
+                } catch (TimeoutException ex) {
+                    LOGGER.log(Level.WARNING, String.format("getSubscriptionsWithTenant: tenant %s timed out", query.tenant.tenantId()));
+                    error = (error == null) ? ex : error;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Listing subscriptions was interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        if (succeeded == 0 && error != null) {
+            throw (error instanceof IOException) ? (IOException) error : new IOException(error);
         }
         return stl;
     }
@@ -169,4 +223,56 @@ public class AccessTokenAzureManager extends AzureManagerBase {
     public String getStorageEndpointSuffix() {
         return AzureEnvironment.AZURE.storageEndpointSuffix();
     }
+
+    private static class TenantQuery extends FutureTask<List<Subscription>> {
+        private final Tenant tenant;
+        private volatile long startedAt;
+
+        TenantQuery(final Tenant tenant) {
+            super(new Callable<List<Subscription>>() {
+                @Override
+                public List<Subscription> call() throws IOException {
+                    return getSubscriptions(tenant.tenantId());
+                }
+            });
+            this.tenant = tenant;
+        }
+
+        @Override
+        public void run() {
+            startedAt = System.currentTimeMillis();
+            super.run();
+        }
+
+        /**
+         * Waits for the subscriptions; the timeout counts from when the query started, not from when it was queued.
+         * A query that has not started by the queued deadline is cancelled.
+         */
+        List<Subscription> await(long timeoutMillis, long queuedDeadline) throws InterruptedException, ExecutionException, TimeoutException {
+            for (;;) {
+                long started = startedAt;
+                long wait = ((started == 0) ? queuedDeadline : started + timeoutMillis) - System.currentTimeMillis();
+                if (wait <= 0) {
+                    cancel(true);
+                    throw new TimeoutException();
+                }
+                try {
+                    return get(wait, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ex) {
+                    // check again: it may only just have started
+                }
+            }
+        }
+    }
+
+    private static class TenantQueryThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AccessTokenAzureManager-tenant-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -24,13 +24,13 @@ package com.microsoft.azuretools.sdkmanage;
 
 import com.microsoft.azure.management.Azure;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by vlashch on 1/27/17.
  */
 public abstract class AzureManagerBase implements AzureManager {
-    protected Map<String, Azure> sidToAzureMap = new HashMap<>();
+    protected Map<String, Azure> sidToAzureMap = new ConcurrentHashMap<>();
 
 }
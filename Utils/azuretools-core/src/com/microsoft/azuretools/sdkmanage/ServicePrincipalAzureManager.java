@@ -107,7 +107,7 @@ public class ServicePrincipalAzureManager extends AzureManagerBase {
         }
         Azure azure = auth().withSubscription(sid);
         // TODO: remove this call after Azure SDK properly implements handling of unregistered provider namespaces
-        AzureRegisterProviderNamespaces.registerAzureNamespaces(azure);
+        AzureRegisterProviderNamespaces.registerAzureNamespacesAsync(azure, sid);
         sidToAzureMap.put(sid, azure);
         return azure;
     }
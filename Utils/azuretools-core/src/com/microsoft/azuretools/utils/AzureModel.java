@@ -29,7 +29,6 @@ import com.microsoft.azure.management.resources.ResourceGroup;
 import com.microsoft.azure.management.resources.Subscription;
 import com.microsoft.azuretools.authmanage.models.SubscriptionDetail;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,10 +38,12 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class AzureModel {
     private Map<SubscriptionDetail, List<ResourceGroup>> subscriptionToResourceGroupMap = null;
-    private Map<SubscriptionDetail, List<Location>> subscriptionToLocationMap = null;
+    private volatile Map<SubscriptionDetail, List<Location>> subscriptionToLocationMap = null;
     private Map<ResourceGroup, List<WebApp>> resourceGroupToWebAppMap = null;
     private Map<ResourceGroup, List<AppServicePlan>> resourceGroupToAppServicePlanMap = null;
-    private Map<String, Subscription> sidToSubscriptionMap = null;
+    private volatile Map<String, Subscription> sidToSubscriptionMap = null;
+    // the subscription maps are published while they are still being filled
+    private volatile boolean isSubscriptionMapsLoaded = false;
 
 
     private static AzureModel instance = null;
@@ -61,7 +62,7 @@ public class AzureModel {
     }
 
     public Map<String, Subscription> createSidToSubscriptionMap() {
-        return new HashMap<String, Subscription>();
+        return new ConcurrentHashMap<String, Subscription>();
     }
 
     public void setSidToSubscriptionMap(Map<String, Subscription> sidToSubscriptionMap) {
@@ -75,13 +76,24 @@ public class AzureModel {
     }
 
     public Map<SubscriptionDetail, List<Location>> createSubscriptionToRegionMap() {
-        return new HashMap<SubscriptionDetail, List<Location>>();
+        return new ConcurrentHashMap<SubscriptionDetail, List<Location>>();
     }
 
     public void setSubscriptionToLocationMap(Map<SubscriptionDetail, List<Location>> subscriptionToLocationMap) {
         this.subscriptionToLocationMap = subscriptionToLocationMap;
     }
 
+    /**
+     * @return true once every selected subscription is in the location and resource group maps
+     */
+    public boolean isSubscriptionMapsLoaded() {
+        return isSubscriptionMapsLoaded;
+    }
+
+    public void setSubscriptionMapsLoaded(boolean isSubscriptionMapsLoaded) {
+        this.isSubscriptionMapsLoaded = isSubscriptionMapsLoaded;
+    }
+
     // == subscriptionToResourceGroupMap
 
     public synchronized Map<SubscriptionDetail, List<ResourceGroup>> getSubscriptionToResourceGroupMap() {
@@ -93,7 +105,7 @@ public class AzureModel {
     }
 
     public synchronized Map<SubscriptionDetail, List<ResourceGroup>> createSubscriptionToResourceGroupMap() {
-        return new HashMap<SubscriptionDetail, List<ResourceGroup>>();
+        return new ConcurrentHashMap<SubscriptionDetail, List<ResourceGroup>>();
     }
 
     // == resourceGroupToWebAppMap
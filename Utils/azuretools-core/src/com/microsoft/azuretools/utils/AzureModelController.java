@@ -42,7 +42,18 @@ import rx.functions.Func1;
 import rx.schedulers.Schedulers;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -53,6 +64,7 @@ import static com.microsoft.azuretools.utils.WebAppUtils.WebAppDetails;
  */
 public class AzureModelController {
     private final static Logger LOGGER = Logger.getLogger(AzureModelController.class.getName());
+    private final static long CancelPollIntervalInMillis = 200;
     private static ISubscriptionSelectionListener subscriptionSelectionListener = new ISubscriptionSelectionListener() {
         @Override
         public void update(boolean isRefresh) {
@@ -84,6 +96,7 @@ public class AzureModelController {
     private static synchronized void clearAll() {
         System.out.println("AzureModelController.clearAll: set null to all the maps.");
         AzureModel azureModel = AzureModel.getInstance();
+        azureModel.setSubscriptionMapsLoaded(false);
         azureModel.setSubscriptionToResourceGroupMap(null);
         azureModel.setResourceGroupToWebAppMap(null);
         azureModel.setResourceGroupToAppServicePlanMap(null);
@@ -250,38 +263,117 @@ public class AzureModelController {
         azureModel.setSidToSubscriptionMap(sidToSubscriptionMap);
 
 
+        // published up front, so that readers see each subscription as soon as it is loaded; isSubscriptionMapsLoaded
+        // tells them when all are
         Map<SubscriptionDetail, List<Location>> sdlocMap = azureModel.createSubscriptionToRegionMap();
         Map<SubscriptionDetail, List<ResourceGroup>> sdrgMap = azureModel.createSubscriptionToResourceGroupMap();
+        azureModel.setSubscriptionMapsLoaded(false);
+        azureModel.setSubscriptionToLocationMap(sdlocMap);
+        azureModel.setSubscriptionToResourceGroupMap(sdrgMap);
 
         SubscriptionManager subscriptionManager = azureManager.getSubscriptionManager();
         subscriptionManager.addListener(subscriptionSelectionListener);
 
-        List<SubscriptionDetail> sdl = subscriptionManager.getSubscriptionDetails();
-        for (SubscriptionDetail sd : sdl) {
-            if (!sd.isSelected()) continue;
-            if (progressIndicator != null && progressIndicator.isCanceled()) {
-                clearAll();
-                throw new CanceledByUserException();
+        List<SubscriptionDetail> sdl = new ArrayList<>();
+        for (SubscriptionDetail sd : subscriptionManager.getSubscriptionDetails()) {
+            if (sd.isSelected()) {
+                sdl.add(sd);
             }
+        }
+        if (sdl.isEmpty()) {
+            azureModel.setSubscriptionMapsLoaded(true);
+            return;
+        }
 
-            System.out.println("sn : " + sd.getSubscriptionName());
-            if (progressIndicator != null) progressIndicator.setText("Reading subscription '" + sd.getSubscriptionName() + "'");
-            Azure azure = azureManager.getAzure(sd.getSubscriptionId());
+        if (progressIndicator != null) progressIndicator.setText("Reading subscriptions...");
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(CommonSettings.getSubscriptionQueryParallelism(), sdl.size()), new LoaderThreadFactory());
+        Throwable error = null;
+        try {
+            CompletionService<SubscriptionDetail> completionService = new ExecutorCompletionService<>(executor);
+            for (SubscriptionDetail sd : sdl) {
+                completionService.submit(new Callable<SubscriptionDetail>() {
+                    @Override
+                    public SubscriptionDetail call() throws IOException {
+                        loadSubscription(azureManager, sd, sidToSubscriptionMap.get(sd.getSubscriptionId()), sdlocMap, sdrgMap);
+                        return sd;
+                    }
+                });
+            }
+            int completed = 0;
+            while (completed < sdl.size()) {
+                if (progressIndicator != null && progressIndicator.isCanceled()) {
+                    clearAll();
+                    throw new CanceledByUserException();
+                }
+                Future<SubscriptionDetail> future = completionService.poll(CancelPollIntervalInMillis, TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    continue;
+                }
+                completed++;
+                try {
+                    SubscriptionDetail sd = future.get();
+                    if (progressIndicator != null) progressIndicator.setText2("Read subscription '" + sd.getSubscriptionName() + "'");
+                } catch (ExecutionException ex) {
+                    LOGGER.log(Level.WARNING, "updateSubscriptionMaps: failed to read a subscription", ex.getCause());
+                    error = (error == null) ? ex.getCause() : error;
+                }
+                if (progressIndicator != null) progressIndicator.setFraction((double) completed / sdl.size());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading subscriptions was interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        if (error == null) {
+            azureModel.setSubscriptionMapsLoaded(true);
+            return;
+        }
+        // an incomplete model must not be mistaken for a loaded one, so the next caller loads it again
+        clearAll();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else {
+            throw new IOException(error);
+        }
+    }
+
+    private static void loadSubscription(AzureManager azureManager,
+            SubscriptionDetail sd,
+            Subscription subscription,
+            Map<SubscriptionDetail, List<Location>> sdlocMap,
+            Map<SubscriptionDetail, List<ResourceGroup>> sdrgMap) throws IOException {
+        Azure azure = azureManager.getAzure(sd.getSubscriptionId());
+        List<ResourceGroup> rgList = azure.resourceGroups().list();
+
+        if (subscription == null) {
+            // not in the account's list, e.g. its tenant did not answer in time
+            subscription = azure.getCurrentSubscription();
+        }
+        List<Location> locl = subscription.listLocations();
+        Collections.sort(locl, new Comparator<Location>() {
+            @Override
+            public int compare(Location lhs, Location rhs) {
+                return lhs.displayName().compareTo(rhs.displayName());
+            }
+        });
+        // locations first: a subscription is complete once it is in the resource group map
+        sdlocMap.put(sd, locl);
+        sdrgMap.put(sd, rgList);
+    }
 
-            List<ResourceGroup> rgList = azure.resourceGroups().list();
-            sdrgMap.put(sd, rgList);
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
 
-            List<Location> locl = sidToSubscriptionMap.get(sd.getSubscriptionId()).listLocations();
-            Collections.sort(locl, new Comparator<Location>() {
-                @Override
-                public int compare(Location lhs, Location rhs) {
-                    return lhs.displayName().compareTo(rhs.displayName());
-                }
-            });
-            sdlocMap.put(sd, locl);
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AzureModelController-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
-        azureModel.setSubscriptionToResourceGroupMap(sdrgMap);
-        azureModel.setSubscriptionToLocationMap(sdlocMap);
     }
 
     public static synchronized void updateResourceGroupMaps(IProgressIndicator progressIndicator) throws IOException, CanceledByUserException, AuthException {
@@ -22,15 +22,73 @@
 package com.microsoft.azuretools.utils;
 
 import com.microsoft.azure.management.Azure;
+import com.microsoft.azuretools.adauth.JsonHelper;
+import com.microsoft.azuretools.authmanage.CommonSettings;
+import com.microsoft.azuretools.authmanage.FileStorage;
 import rx.Observable;
 import rx.schedulers.Schedulers;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class AzureRegisterProviderNamespaces {
+  private static final Logger LOGGER = Logger.getLogger(AzureRegisterProviderNamespaces.class.getName());
+  private static final String RegistrationsFileName = "RegisteredProviderNamespaces.json";
+  // registration is effectively permanent; only check now and then that nobody unregistered a namespace
+  private static final long RevalidateAfterInMillis = 7L * 24 * 60 * 60 * 1000;
+  private static final String[] namespaces = new String[] {"Microsoft.Resources", "Microsoft.Network", "Microsoft.Compute",
+      "Microsoft.KeyVault", "Microsoft.Storage", "Microsoft.Web", "Microsoft.Authorization", "Microsoft.HDInsight"};
+
+  private static ConcurrentMap<String, Registration> sidToRegistrationMap;
+  private static final ConcurrentMap<String, Boolean> pendingSids = new ConcurrentHashMap<>();
+
+  /**
+   * Persisted record of the namespaces registered for a subscription, and when
+   */
+  public static class Registration {
+    public String subscriptionId;
+    public long registeredOn;
+    public List<String> namespaces;
+  }
+
   public static void registerAzureNamespaces(Azure azureInstance) {
-    String[] namespaces = new String[] {"Microsoft.Resources", "Microsoft.Network", "Microsoft.Compute",
-        "Microsoft.KeyVault", "Microsoft.Storage", "Microsoft.Web", "Microsoft.Authorization", "Microsoft.HDInsight"};
+    register(azureInstance);
+  }
+
+  /**
+   * Makes sure the provider namespaces are registered for the subscription without blocking the caller.
+   * Subscriptions registered by an earlier session are skipped until the record is older than
+   * {@link #RevalidateAfterInMillis}; anything else is registered in the background, once at a time per subscription.
+   */
+  public static void registerAzureNamespacesAsync(final Azure azureInstance, final String sid) {
+    if (isRegistered(sid) || pendingSids.putIfAbsent(sid, Boolean.TRUE) != null) {
+      return;
+    }
+    Observable.fromCallable(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return register(azureInstance);
+      }
+    }).subscribeOn(Schedulers.io()).subscribe(registered -> {
+      pendingSids.remove(sid);
+      if (registered) {
+        saveRegistration(sid);
+      }
+    }, ex -> {
+      pendingSids.remove(sid);
+      LOGGER.log(Level.WARNING, "registerAzureNamespacesAsync@Observable: failed to register namespaces for " + sid, ex);
+    });
+  }
+
+  private static boolean register(Azure azureInstance) {
     try {
       Observable.from(namespaces).flatMap(namespace -> {
         return Observable.fromCallable(new Callable<Object>() {
@@ -41,17 +99,54 @@ public class AzureRegisterProviderNamespaces {
           }
         }).subscribeOn(Schedulers.io());
       }).toBlocking().subscribe();
-//      azureInstance.providers().register("Microsoft.Resources");
-//      azureInstance.providers().register("Microsoft.Network");
-//      azureInstance.providers().register("Microsoft.Compute");
-//      azureInstance.providers().register("Microsoft.KeyVault");
-//      azureInstance.providers().register("Microsoft.Storage");
-//      azureInstance.providers().register("Microsoft.Web");
-//      azureInstance.providers().register("Microsoft.Authorization");
-//      azureInstance.providers().register("Microsoft.HDInsight");
+      return true;
     } catch (Exception ignored) {
       // No need to handle this for now since this functionality will be eventually removed once the Azure SDK
       //  something similar
+      return false;
+    }
+  }
+
+  private static boolean isRegistered(String sid) {
+    Registration registration = getRegistrations().get(sid);
+    return registration != null
+        && registration.namespaces != null
+        && registration.namespaces.containsAll(Arrays.asList(namespaces))
+        && System.currentTimeMillis() - registration.registeredOn < RevalidateAfterInMillis;
+  }
+
+  private static synchronized ConcurrentMap<String, Registration> getRegistrations() {
+    if (sidToRegistrationMap == null) {
+      sidToRegistrationMap = new ConcurrentHashMap<>();
+      try {
+        FileStorage fs = new FileStorage(RegistrationsFileName, CommonSettings.settingsBaseDir);
+        String json = new String(fs.read(), StandardCharsets.UTF_8);
+        if (!json.isEmpty()) {
+          for (Registration registration : JsonHelper.deserialize(Registration[].class, json)) {
+            sidToRegistrationMap.put(registration.subscriptionId, registration);
+          }
+        }
+      } catch (IOException | RuntimeException ex) {
+        // a lost record only costs one more registration
+        LOGGER.log(Level.WARNING, "getRegistrations: failed to read " + RegistrationsFileName, ex);
+      }
+    }
+    return sidToRegistrationMap;
+  }
+
+  private static synchronized void saveRegistration(String sid) {
+    Registration registration = new Registration();
+    registration.subscriptionId = sid;
+    registration.registeredOn = System.currentTimeMillis();
+    registration.namespaces = Arrays.asList(namespaces);
+    ConcurrentMap<String, Registration> registrations = getRegistrations();
+    registrations.put(sid, registration);
+    try {
+      FileStorage fs = new FileStorage(RegistrationsFileName, CommonSettings.settingsBaseDir);
+      String json = JsonHelper.serialize(new ArrayList<>(registrations.values()));
+      fs.write(json.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "saveRegistration: failed to write " + RegistrationsFileName, ex);
     }
   }
 }